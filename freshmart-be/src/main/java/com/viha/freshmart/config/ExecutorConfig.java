@@ -0,0 +1,90 @@
+package com.viha.freshmart.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Dedicated thread pools for background work, kept apart from the Tomcat
+ * request threads and from each other.
+ */
+@Configuration
+public class ExecutorConfig {
+
+    @Value("${app.import.threads:4}")
+    private int importThreads;
+
+    @Value("${app.import.jobs.concurrent:2}")
+    private int concurrentImportJobs;
+
+    @Value("${app.import.jobs.queue-capacity:20}")
+    private int importJobQueueCapacity;
+
+    @Value("${app.image.renditions.threads:2}")
+    private int imageThreads;
+
+    @Value("${app.image.renditions.queue-capacity:100}")
+    private int imageQueueCapacity;
+
+    /**
+     * Converts and writes import chunks. Each import limits its own in-flight
+     * chunks, so the queue only ever holds a few chunks per running import.
+     */
+    @Bean(name = "importExecutor")
+    public ThreadPoolTaskExecutor importExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(importThreads);
+        executor.setMaxPoolSize(importThreads);
+        executor.setThreadNamePrefix("import-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * Runs background import jobs. A job reads its sheet here and hands chunks to
+     * the import executor, so the two pools must stay separate. Jobs beyond the
+     * queue capacity are rejected instead of piling up.
+     */
+    @Bean(name = "importJobExecutor")
+    public ThreadPoolTaskExecutor importJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(concurrentImportJobs);
+        executor.setMaxPoolSize(concurrentImportJobs);
+        executor.setQueueCapacity(importJobQueueCapacity);
+        executor.setThreadNamePrefix("import-job-");
+        return executor;
+    }
+
+    /**
+     * Generates image renditions. Decoding is memory hungry, so the pool is kept
+     * small; when the queue is full the uploading thread does the work itself,
+     * which slows uploads down instead of dropping renditions.
+     */
+    @Bean(name = "imageExecutor")
+    public ThreadPoolTaskExecutor imageExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(imageThreads);
+        executor.setMaxPoolSize(imageThreads);
+        executor.setQueueCapacity(imageQueueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("image-");
+        return executor;
+    }
+
+    /**
+     * Rebuilds in-memory catalog indexes after bulk changes. One thread is
+     * enough, since a rebuild that is already queued covers later requests.
+     */
+    @Bean(name = "catalogIndexExecutor")
+    public ThreadPoolTaskExecutor catalogIndexExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setThreadNamePrefix("catalog-index-");
+        return executor;
+    }
+}
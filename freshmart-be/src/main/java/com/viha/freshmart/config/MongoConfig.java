@@ -0,0 +1,37 @@
+package com.viha.freshmart.config;
+
+import com.mongodb.DBRef;
+import com.viha.freshmart.dao.entity.ProductSnapshot;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+
+import java.util.List;
+
+/**
+ * Conversions between stored documents and entities beyond Spring Data's defaults.
+ */
+@Configuration
+public class MongoConfig {
+
+    @Bean
+    public MongoCustomConversions mongoCustomConversions() {
+        return new MongoCustomConversions(List.of(new ProductReferenceToSnapshotConverter()));
+    }
+
+    /**
+     * Cart lines used to refer to their product by DBRef. Such a line reads as
+     * a snapshot holding only the product id; the next price refresh fills in
+     * the rest and stores the line as a full snapshot.
+     */
+    @ReadingConverter
+    static class ProductReferenceToSnapshotConverter implements Converter<DBRef, ProductSnapshot> {
+
+        @Override
+        public ProductSnapshot convert(DBRef reference) {
+            return new ProductSnapshot(reference.getId().toString());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.viha.freshmart.config;
+
+import com.viha.freshmart.dao.entity.Cart;
+import com.viha.freshmart.dao.entity.Customer;
+import com.viha.freshmart.dao.entity.Image;
+import com.viha.freshmart.dao.entity.Order;
+import com.viha.freshmart.dao.entity.Product;
+import com.viha.freshmart.dao.entity.StockReservation;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ConvertOperators;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Creates the indexes behind the paginated listings: the listing filter
+ * followed by the sort field and _id, so each page is a single index range
+ * scan in sort order. Index creation is idempotent and runs in the background
+ * after startup, so neither a slow build nor a missing database holds up the
+ * application; failures are logged and retried on the next start.
+ *
+ * Carts get a unique index on their customer; it fails to build while a
+ * customer still has several carts, which is logged like any other failure.
+ *
+ * Products get a unique sparse index on their SKU, so parallel import chunks
+ * and concurrent creates cannot add a second product for one SKU. Blank SKUs
+ * are removed first; like the cart index, it fails to build while two
+ * products share a SKU, which is logged.
+ *
+ * Orders get a unique index on their number. Numbers used to be the creation
+ * time to the second, so orders placed in the same second share one; all but
+ * the first of such orders get a "-2", "-3", ... suffix before the index is built.
+ *
+ * Prices used to be stored as strings, which sort as text ("10.00" before
+ * "9.00"). They are converted to Decimal128 before the price indexes are built.
+ */
+@Component
+public class MongoIndexInitializer {
+
+    // Fields the product listings may be sorted on besides id
+    private static final List<String> PRODUCT_SORT_FIELDS = List.of("price", "rating", "createdAt", "name");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initializeInBackground() {
+        Thread thread = new Thread(this::initialize, "mongo-indexes");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Helper methods
+
+    private void initialize() {
+        try {
+            convertToDecimal(Product.class, "price");
+            convertToDecimal(Product.class, "discountPrice");
+
+            // Each product listing, sorted by id and by every other sort field
+            createIndex(Product.class, "isActive");
+            createIndex(Product.class, "categoryId", "isActive");
+            createIndex(Product.class, "brand", "isActive");
+            createIndex(Product.class, "isFeatured");
+            createIndex(Product.class, "isOrganic", "isActive");
+            for (String sortField : PRODUCT_SORT_FIELDS) {
+                createIndex(Product.class, "isActive", sortField);
+                createIndex(Product.class, "categoryId", "isActive", sortField);
+                createIndex(Product.class, "brand", "isActive", sortField);
+                createIndex(Product.class, "isFeatured", sortField);
+                createIndex(Product.class, "isOrganic", "isActive", sortField);
+            }
+
+            createIndex(Order.class, "orderDate");
+
+            createIndex(Customer.class, "createdAt");
+            createIndex(Customer.class, "name");
+
+            createIndex(Image.class, "isActive", "uploadedAt");
+            createIndex(Image.class, "isActive", "fileSize");
+
+            // Expiry sweep over held stock reservations
+            createIndex(StockReservation.class, "status", "expiresAt");
+
+            // One product per SKU; products without one are left out
+            unsetBlank(Product.class, "sku");
+            createUniqueSparseIndex(Product.class, "sku");
+
+            // One cart per customer, so concurrent first additions cannot create two
+            createUniqueIndex(Cart.class, "customer.$id");
+
+            // Backstop for generated order numbers, which are unique by construction
+            renumberDuplicates(Order.class, "orderNumber");
+            createUniqueIndex(Order.class, "orderNumber");
+
+        } catch (RuntimeException e) {
+            System.err.println("Failed to create MongoDB indexes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Index on the given fields followed by _id, the tie-breaker of every keyset sort
+     */
+    private void createIndex(Class<?> entityClass, String... fields) {
+        Index index = new Index();
+        for (String field : fields) {
+            index.on(field, Sort.Direction.ASC);
+        }
+        index.on("_id", Sort.Direction.ASC);
+        mongoTemplate.indexOps(entityClass).createIndex(index);
+    }
+
+    private void createUniqueIndex(Class<?> entityClass, String field) {
+        mongoTemplate.indexOps(entityClass).createIndex(new Index().on(field, Sort.Direction.ASC).unique());
+    }
+
+    private void createUniqueSparseIndex(Class<?> entityClass, String field) {
+        mongoTemplate.indexOps(entityClass).createIndex(new Index().on(field, Sort.Direction.ASC).unique().sparse());
+    }
+
+    /**
+     * Removes empty and null values of a field, which a sparse index would
+     * otherwise count as values
+     */
+    private void unsetBlank(Class<?> entityClass, String field) {
+        long unset = mongoTemplate.updateMulti(
+                new Query(new Criteria().orOperator(Criteria.where(field).is(""), Criteria.where(field).type(JsonSchemaObject.Type.NULL))),
+                new Update().unset(field), entityClass).getModifiedCount();
+        if (unset > 0) {
+            System.out.println("Removed " + unset + " blank " + field + " values");
+        }
+    }
+
+    /**
+     * Suffixes every repeat of a value, in _id order, with "-2", "-3", ...
+     */
+    private void renumberDuplicates(Class<?> entityClass, String field) {
+        String collection = mongoTemplate.getCollectionName(entityClass);
+        Aggregation duplicates = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where(field).ne(null)),
+                Aggregation.sort(Sort.Direction.ASC, "_id"),
+                Aggregation.group(field).push("_id").as("ids").count().as("count"),
+                Aggregation.match(Criteria.where("count").gt(1)));
+        long renumbered = 0;
+        for (Document duplicate : mongoTemplate.aggregate(duplicates, collection, Document.class)) {
+            List<Object> ids = duplicate.getList("ids", Object.class);
+            for (int i = 1; i < ids.size(); i++) {
+                mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(ids.get(i))),
+                        new Update().set(field, duplicate.get("_id") + "-" + (i + 1)), collection);
+                renumbered++;
+            }
+        }
+        if (renumbered > 0) {
+            System.out.println("Renumbered " + renumbered + " duplicate " + field + " values");
+        }
+    }
+
+    private void convertToDecimal(Class<?> entityClass, String field) {
+        long converted = mongoTemplate.updateMulti(
+                new Query(Criteria.where(field).type(JsonSchemaObject.Type.STRING)),
+                AggregationUpdate.update().set(field).toValue(ConvertOperators.ToDecimal.toDecimal("$" + field)),
+                entityClass).getModifiedCount();
+        if (converted > 0) {
+            System.out.println("Converted " + converted + " " + field + " values to Decimal128");
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.viha.freshmart.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -31,6 +32,8 @@ public class CartController {
         try {
             Cart cart = cartService.addItemToCart(customerId, cartItem);
             return new ResponseEntity<>(cart, HttpStatus.OK);
+        } catch (OptimisticLockingFailureException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
         } catch (RuntimeException e) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
@@ -43,6 +46,8 @@ public class CartController {
         try {
             Cart cart = cartService.updateCartItem(customerId, productId, quantity);
             return new ResponseEntity<>(cart, HttpStatus.OK);
+        } catch (OptimisticLockingFailureException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
         } catch (RuntimeException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
@@ -54,6 +59,8 @@ public class CartController {
         try {
             Cart cart = cartService.removeItemFromCart(customerId, productId);
             return new ResponseEntity<>(cart, HttpStatus.OK);
+        } catch (OptimisticLockingFailureException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
         } catch (RuntimeException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
@@ -74,6 +81,8 @@ public class CartController {
         try {
             Cart cart = cartService.mergeCart(customerId, guestCart);
             return new ResponseEntity<>(cart, HttpStatus.OK);
+        } catch (OptimisticLockingFailureException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
         } catch (RuntimeException e) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
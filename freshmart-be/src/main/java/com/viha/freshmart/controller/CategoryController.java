@@ -4,11 +4,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import com.viha.freshmart.dao.entity.Category;
+import com.viha.freshmart.service.core.CachedResponse;
+import com.viha.freshmart.service.core.CatalogResponseCache;
 import com.viha.freshmart.service.core.CategoryService;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -19,10 +23,15 @@ public class CategoryController {
     @Autowired
     private CategoryService categoryService;
 
+    @Autowired
+    private CatalogResponseCache catalogResponseCache;
+
     @GetMapping
-    public ResponseEntity<List<Category>> getAllCategories() {
-        List<Category> categories = categoryService.getAllActiveCategories();
-        return new ResponseEntity<>(categories, HttpStatus.OK);
+    public ResponseEntity<byte[]> getAllCategories(WebRequest webRequest) {
+        // The tree snapshot is already serialized
+        CachedResponse response = catalogResponseCache.get("categories", Map.of(),
+                () -> categoryService.getCategoryTree().getJson());
+        return CachedResponses.of(response, webRequest);
     }
 
     @GetMapping("/{id}")
@@ -40,15 +49,17 @@ public class CategoryController {
     }
 
     @GetMapping("/parent")
-    public ResponseEntity<List<Category>> getParentCategories() {
-        List<Category> categories = categoryService.getParentCategories();
-        return new ResponseEntity<>(categories, HttpStatus.OK);
+    public ResponseEntity<byte[]> getParentCategories(WebRequest webRequest) {
+        CachedResponse response = catalogResponseCache.get("categories/parent", Map.of(),
+                categoryService::getParentCategories);
+        return CachedResponses.of(response, webRequest);
     }
 
     @GetMapping("/{parentId}/subcategories")
-    public ResponseEntity<List<Category>> getSubCategories(@PathVariable String parentId) {
-        List<Category> categories = categoryService.getSubCategories(parentId);
-        return new ResponseEntity<>(categories, HttpStatus.OK);
+    public ResponseEntity<byte[]> getSubCategories(@PathVariable String parentId, WebRequest webRequest) {
+        CachedResponse response = catalogResponseCache.get("categories/subcategories", Map.of("parentId", parentId),
+                () -> categoryService.getSubCategories(parentId));
+        return CachedResponses.of(response, webRequest);
     }
 
     @GetMapping("/search")
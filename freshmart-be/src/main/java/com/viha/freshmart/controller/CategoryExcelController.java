@@ -1,7 +1,9 @@
 package com.viha.freshmart.controller;
 
-import com.viha.freshmart.dao.entity.Category;
 import com.viha.freshmart.service.core.CategoryExcelService;
+import com.viha.freshmart.service.core.ImportJob;
+import com.viha.freshmart.service.core.ImportJobService;
+import com.viha.freshmart.service.core.ImportResult;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -14,12 +16,13 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/categories/excel")
@@ -30,6 +33,9 @@ public class CategoryExcelController {
     @Autowired
     private CategoryExcelService categoryExcelService;
     
+    @Autowired
+    private ImportJobService importJobService;
+    
     /**
      * Upload Excel file to import categories
      * POST /api/categories/excel/upload
@@ -57,13 +63,17 @@ public class CategoryExcelController {
             }
             
             // Import categories
-            List<Category> importedCategories = categoryExcelService.importCategoriesFromExcel(file);
+            ImportResult result = categoryExcelService.importCategoriesFromExcel(file);
             
             Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("message", "Categories imported successfully");
-            response.put("count", importedCategories.size());
-            response.put("data", importedCategories);
+            response.put("success", result.isSuccess());
+            response.put("message", result.isSuccess() ? "Categories imported successfully"
+                    : "Categories imported with " + result.getFailedRecords() + " failed rows");
+            response.put("count", result.getSuccessfulRecords());
+            response.put("totalRecords", result.getTotalRecords());
+            response.put("successfulRecords", result.getSuccessfulRecords());
+            response.put("failedRecords", result.getFailedRecords());
+            response.put("errors", result.getErrors());
             
             return ResponseEntity.ok(response);
             
@@ -77,6 +87,116 @@ public class CategoryExcelController {
         }
     }
     
+    /**
+     * Upload Excel file to import categories in the background
+     * POST /api/categories/excel/jobs
+     */
+    @Operation(
+        summary = "Start a background categories import",
+        description = "Upload an Excel file and return a job id at once. The import runs in the background; poll the job for progress.",
+        responses = {
+            @ApiResponse(responseCode = "202", description = "Import job accepted"),
+            @ApiResponse(responseCode = "400", description = "Invalid file or format"),
+            @ApiResponse(responseCode = "503", description = "Too many imports queued")
+        }
+    )
+    @PostMapping(value = "/jobs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> startCategoriesImportJob(
+            @Parameter(description = "Excel file containing categories data", required = true)
+            @RequestParam("file") MultipartFile file) {
+        
+        try {
+            // Validate file
+            if (!categoryExcelService.validateCategoryExcelFile(file)) {
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("success", false);
+                errorResponse.put("message", "Invalid Excel file format. Please use the correct template.");
+                return ResponseEntity.badRequest().body(errorResponse);
+            }
+            
+            ImportJob job = importJobService.submitImport(ImportJob.TYPE_CATEGORIES, file);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Import started");
+            response.put("jobId", job.getId());
+            response.put("data", job);
+            
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+            
+        } catch (IllegalStateException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("message", e.getMessage());
+            
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorResponse);
+            
+        } catch (Exception e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("message", "Failed to start import: " + e.getMessage());
+            errorResponse.put("error", e.getClass().getSimpleName());
+            
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+    
+    /**
+     * Get progress of a background categories import
+     * GET /api/categories/excel/jobs/{jobId}
+     */
+    @Operation(
+        summary = "Get categories import job status",
+        description = "Rows processed and failed, throughput in rows per second and estimated seconds remaining",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Job status"),
+            @ApiResponse(responseCode = "404", description = "Job not found")
+        }
+    )
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<?> getCategoriesImportJob(@PathVariable String jobId) {
+        Optional<ImportJob> job = importJobService.getJob(ImportJob.TYPE_CATEGORIES, jobId);
+        if (!job.isPresent()) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("message", "Import job not found: " + jobId);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", job.get());
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * Download the rows that failed in a background categories import
+     * GET /api/categories/excel/jobs/{jobId}/errors
+     */
+    @Operation(
+        summary = "Download categories import errors",
+        description = "Download the failed rows of an import job as an Excel file",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Error sheet generated"),
+            @ApiResponse(responseCode = "404", description = "Job not found")
+        }
+    )
+    @GetMapping("/jobs/{jobId}/errors")
+    public ResponseEntity<StreamingResponseBody> downloadCategoriesImportErrors(@PathVariable String jobId) {
+        Optional<ImportJob> job = importJobService.getJob(ImportJob.TYPE_CATEGORIES, jobId);
+        if (!job.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        String fileName = "categories_import_errors_" + jobId + ".xlsx";
+        StreamingResponseBody body = out -> importJobService.writeErrorSheet(job.get(), out);
+        
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .body(body);
+    }
+    
     /**
      * Download all categories as Excel file
      * GET /api/categories/excel/download
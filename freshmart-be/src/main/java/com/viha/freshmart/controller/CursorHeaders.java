@@ -0,0 +1,37 @@
+package com.viha.freshmart.controller;
+
+import com.viha.freshmart.service.core.CursorPage;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+/**
+ * Response headers pointing at the next page of a keyset-paginated listing.
+ * The body stays a plain list; clients follow the Link header or pass
+ * X-Next-Cursor back as the cursor parameter.
+ */
+final class CursorHeaders {
+
+    static final String NEXT_CURSOR = "X-Next-Cursor";
+
+    private CursorHeaders() {
+    }
+
+    static HttpHeaders of(CursorPage<?> page) {
+        return of(page.getNextCursor());
+    }
+
+    /**
+     * @param nextCursor cursor of the next page, or null on the last page
+     */
+    static HttpHeaders of(String nextCursor) {
+        HttpHeaders headers = new HttpHeaders();
+        if (nextCursor != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("cursor", nextCursor)
+                    .toUriString();
+            headers.set(NEXT_CURSOR, nextCursor);
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return headers;
+    }
+}
@@ -1,11 +1,13 @@
 package com.viha.freshmart.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import com.viha.freshmart.dao.entity.Customer;
+import com.viha.freshmart.service.core.CursorPage;
 import com.viha.freshmart.service.core.CustomerService;
 
 import java.util.List;
@@ -13,16 +15,22 @@ import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/customers")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = {HttpHeaders.LINK, CursorHeaders.NEXT_CURSOR})
 public class CustomerController {
 
     @Autowired
     private CustomerService customerService;
 
     @GetMapping
-    public ResponseEntity<List<Customer>> getAllCustomers() {
-        List<Customer> customers = customerService.getAllCustomers();
-        return new ResponseEntity<>(customers, HttpStatus.OK);
+    public ResponseEntity<List<Customer>> getAllCustomers(@RequestParam(required = false) String sort,
+                                                          @RequestParam(required = false) String cursor,
+                                                          @RequestParam(required = false) Integer limit) {
+        try {
+            CursorPage<Customer> page = customerService.getAllCustomers(sort, cursor, limit);
+            return new ResponseEntity<>(page.getItems(), CursorHeaders.of(page), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @GetMapping("/{id}")
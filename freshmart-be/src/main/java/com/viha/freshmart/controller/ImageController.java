@@ -1,6 +1,8 @@
 package com.viha.freshmart.controller;
 
 import com.viha.freshmart.dao.entity.Image;
+import com.viha.freshmart.service.core.CursorPage;
+import com.viha.freshmart.service.core.ImageResizeService;
 import com.viha.freshmart.service.core.ImageService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -8,29 +10,46 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/images")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = {HttpHeaders.LINK, CursorHeaders.NEXT_CURSOR})
 @Tag(name = "Images", description = "Image upload and management API")
 public class ImageController {
     
     @Autowired
     private ImageService imageService;
     
+    @Autowired
+    private ImageResizeService imageResizeService;
+    
+    @Value("${app.image.cache.max-age-seconds:3600}")
+    private long cacheMaxAgeSeconds;
+    
     /**
      * Upload image with category and metadata
      * POST /api/images/upload
@@ -82,43 +101,108 @@ public class ImageController {
     }
     
     /**
-     * Get image by ID with optional size parameter
+     * Get image by ID with optional size parameter, or resized on demand
      * GET /api/images/{imageId}?size=thumbnail|medium|large|original
+     * GET /api/images/{imageId}?w=320&fmt=webp&q=80
+     *
+     * Responses carry an ETag and Last-Modified and answer conditional requests
+     * with 304 before any file is opened. URLs versioned with v={contentHash}
+     * are cached as immutable. A single Range is answered with 206, and the
+     * body is sent from disk without copying it through the heap.
      */
     @Operation(
         summary = "Get image by ID",
-        description = "Retrieve an image file by its ID with optional size parameter",
+        description = "Retrieve an image file by its ID with optional size parameter. "
+                + "Passing w, fmt or q returns a copy resized to that width, format and quality instead; "
+                + "copies are cached on first request",
         responses = {
             @ApiResponse(responseCode = "200", description = "Image retrieved successfully"),
-            @ApiResponse(responseCode = "404", description = "Image not found")
+            @ApiResponse(responseCode = "206", description = "Requested byte range of the image"),
+            @ApiResponse(responseCode = "304", description = "Image not modified since the cached copy"),
+            @ApiResponse(responseCode = "400", description = "Invalid width or quality"),
+            @ApiResponse(responseCode = "404", description = "Image not found"),
+            @ApiResponse(responseCode = "416", description = "Requested range lies outside the image")
         }
     )
     @GetMapping("/{imageId}")
-    public ResponseEntity<Resource> getImage(
+    public ResponseEntity<Void> getImage(
             @Parameter(description = "Image ID", required = true, example = "64a1b2c3d4e5f6789012345")
             @PathVariable String imageId,
 
             @Parameter(description = "Image size", required = false, example = "thumbnail",
                       schema = @Schema(allowableValues = {"original", "thumbnail", "medium", "large"}))
-            @RequestParam(value = "size", required = false, defaultValue = "original") String size) {
+            @RequestParam(value = "size", required = false, defaultValue = "original") String size,
+
+            @Parameter(description = "Width in pixels to resize to (never upscaled)", required = false, example = "320")
+            @RequestParam(value = "w", required = false) Integer width,
+
+            @Parameter(description = "Output format, falls back to jpg or png when not supported", required = false,
+                      example = "webp", schema = @Schema(allowableValues = {"jpg", "png", "webp"}))
+            @RequestParam(value = "fmt", required = false) String format,
+
+            @Parameter(description = "JPEG quality from 1 to 100", required = false, example = "80")
+            @RequestParam(value = "q", required = false) Integer quality,
+
+            @Parameter(description = "Content version from the image URL; a matching version is cached as immutable",
+                      required = false)
+            @RequestParam(value = "v", required = false) String version,
+
+            WebRequest webRequest, HttpServletRequest request, HttpServletResponse response) {
         
         try {
-            Resource resource;
-            if ("original".equalsIgnoreCase(size)) {
-                resource = imageService.getImageResource(imageId);
-            } else {
-                resource = imageService.getImageResourceBySize(imageId, size);
+            Optional<Image> imageOpt = imageService.getImageById(imageId);
+            if (!imageOpt.isPresent()) {
+                return ResponseEntity.notFound().build();
             }
+            Image image = imageOpt.get();
             
-            // Get image metadata for content type
-            Optional<Image> imageOpt = imageService.getImageById(imageId);
-            String contentType = imageOpt.map(Image::getContentType).orElse("application/octet-stream");
+            // A versioned URL only ever refers to these bytes, unless the rendition is still pending
+            boolean immutable = version != null && version.equals(image.getContentHash())
+                    && imageService.isRenditionReady(image, size);
+            CacheControl cacheControl = immutable
+                    ? CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable()
+                    : CacheControl.maxAge(cacheMaxAgeSeconds, TimeUnit.SECONDS).cachePublic();
+            
+            // Sets the ETag and Last-Modified headers, and the 304 status when the client copy is current
+            String etag = imageService.getImageETag(image, size, width, format, quality);
+            LocalDateTime modifiedAt = image.getUpdatedAt() != null ? image.getUpdatedAt() : image.getUploadedAt();
+            long lastModified = modifiedAt != null ? modifiedAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() : -1;
+            if (webRequest.checkNotModified(etag, lastModified)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(cacheControl).build();
+            }
+            
+            Resource resource = imageService.getImageResource(image, size, width, format, quality);
             
-            return ResponseEntity.ok()
-                    .contentType(MediaType.parseMediaType(contentType))
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"")
-                    .body(resource);
-                    
+            // Renditions may be re-encoded (e.g. PNG to JPEG), so prefer the served file's type
+            String contentType = image.getContentType() != null ? image.getContentType() : "application/octet-stream";
+            MediaType mediaType = MediaTypeFactory.getMediaType(resource)
+                    .orElse(MediaType.parseMediaType(contentType));
+            
+            response.setContentType(mediaType.toString());
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeaderValue());
+            // Blob files are named by hash alone, so offer the uploaded name instead
+            String fileName = resource.getFilename();
+            if (fileName != null && fileName.indexOf('.') < 0 && image.getOriginalName() != null) {
+                fileName = image.getOriginalName();
+            }
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + fileName + "\"");
+            Path file = resource.getFile().toPath();
+            try {
+                FileResponseWriter.write(request, response, file, etag, lastModified);
+            } catch (IOException e) {
+                if (response.isCommitted()) {
+                    // The client went away mid-transfer
+                    return null;
+                }
+                // Nothing was sent yet, e.g. the file was evicted: drop the headers set above, caching ones included
+                response.reset();
+                return ResponseEntity.notFound().build();
+            }
+            return null;
+            
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             return ResponseEntity.notFound().build();
         }
@@ -211,20 +295,28 @@ public class ImageController {
     
     /**
      * Get all images with pagination support
-     * GET /api/images/all
+     * GET /api/images/all?sort=uploadedAt,desc&limit=50&cursor={nextCursor}
      */
     @GetMapping("/all")
-    public ResponseEntity<?> getAllImages() {
+    public ResponseEntity<?> getAllImages(@RequestParam(required = false) String sort,
+                                          @RequestParam(required = false) String cursor,
+                                          @RequestParam(required = false) Integer limit) {
         try {
-            List<Image> images = imageService.getAllActiveImages();
+            CursorPage<Image> page = imageService.getActiveImages(sort, cursor, limit);
             
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("data", images);
-            response.put("count", images.size());
+            response.put("data", page.getItems());
+            response.put("count", page.getItems().size());
+            response.put("nextCursor", page.getNextCursor());
             
-            return ResponseEntity.ok(response);
+            return ResponseEntity.ok().headers(CursorHeaders.of(page)).body(response);
             
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(errorResponse);
         } catch (Exception e) {
             Map<String, Object> errorResponse = new HashMap<>();
             errorResponse.put("success", false);
@@ -339,6 +431,18 @@ public class ImageController {
         }
     }
     
+    /**
+     * Get statistics of the on-demand resize cache
+     * GET /api/images/stats/resize-cache
+     */
+    @GetMapping("/stats/resize-cache")
+    public ResponseEntity<?> getResizeCacheStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", imageResizeService.getStats());
+        return ResponseEntity.ok(response);
+    }
+    
     /**
      * Generate thumbnails for existing image
      * POST /api/images/{imageId}/thumbnails
@@ -2,29 +2,57 @@ package com.viha.freshmart.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import com.viha.freshmart.dao.entity.Order;
+import com.viha.freshmart.dao.entity.OrderStats;
+import com.viha.freshmart.dao.entity.OrderSummary;
+import com.viha.freshmart.exception.OrderNotFoundException;
+import com.viha.freshmart.service.core.BulkOrderResult;
+import com.viha.freshmart.service.core.CursorPage;
+import com.viha.freshmart.service.core.InventoryService;
 import com.viha.freshmart.service.core.OrderService;
+import com.viha.freshmart.service.core.OrderStatsService;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/orders")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = {HttpHeaders.LINK, CursorHeaders.NEXT_CURSOR})
 public class OrderController {
 
+    // Values of the view parameter of list endpoints
+    private static final String VIEW_FULL = "full";
+    private static final String VIEW_SUMMARY = "summary";
+
     @Autowired
     private OrderService orderService;
 
+    @Autowired
+    private OrderStatsService orderStatsService;
+
+    @Autowired
+    private InventoryService inventoryService;
+
     @GetMapping
-    public ResponseEntity<List<Order>> getAllOrders() {
-        List<Order> orders = orderService.getAllOrders();
-        return new ResponseEntity<>(orders, HttpStatus.OK);
+    public ResponseEntity<List<?>> getAllOrders(@RequestParam(required = false) String sort,
+                                                @RequestParam(required = false) String cursor,
+                                                @RequestParam(required = false) Integer limit,
+                                                @RequestParam(defaultValue = VIEW_FULL) String view) {
+        try {
+            CursorPage<?> page = orderService.getAllOrders(sort, cursor, limit, viewType(view));
+            return new ResponseEntity<>(page.getItems(), CursorHeaders.of(page), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @GetMapping("/{id}")
@@ -42,36 +70,61 @@ public class OrderController {
     }
 
     @GetMapping("/customer/{customerId}")
-    public ResponseEntity<List<Order>> getOrdersByCustomer(@PathVariable String customerId) {
-        List<Order> orders = orderService.getOrdersByCustomer(customerId);
-        return new ResponseEntity<>(orders, HttpStatus.OK);
+    public ResponseEntity<List<?>> getOrdersByCustomer(@PathVariable String customerId,
+                                                       @RequestParam(defaultValue = VIEW_FULL) String view) {
+        try {
+            List<?> orders = orderService.getOrdersByCustomer(customerId, viewType(view));
+            return new ResponseEntity<>(orders, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @GetMapping("/status/{status}")
-    public ResponseEntity<List<Order>> getOrdersByStatus(@PathVariable String status) {
-        List<Order> orders = orderService.getOrdersByStatus(status);
-        return new ResponseEntity<>(orders, HttpStatus.OK);
+    public ResponseEntity<List<?>> getOrdersByStatus(@PathVariable String status,
+                                                     @RequestParam(defaultValue = VIEW_FULL) String view) {
+        try {
+            List<?> orders = orderService.getOrdersByStatus(status, viewType(view));
+            return new ResponseEntity<>(orders, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @GetMapping("/payment-status/{paymentStatus}")
-    public ResponseEntity<List<Order>> getOrdersByPaymentStatus(@PathVariable String paymentStatus) {
-        List<Order> orders = orderService.getOrdersByPaymentStatus(paymentStatus);
-        return new ResponseEntity<>(orders, HttpStatus.OK);
+    public ResponseEntity<List<?>> getOrdersByPaymentStatus(@PathVariable String paymentStatus,
+                                                            @RequestParam(defaultValue = VIEW_FULL) String view) {
+        try {
+            List<?> orders = orderService.getOrdersByPaymentStatus(paymentStatus, viewType(view));
+            return new ResponseEntity<>(orders, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @GetMapping("/customer/{customerId}/status/{status}")
-    public ResponseEntity<List<Order>> getOrdersByCustomerAndStatus(@PathVariable String customerId, 
-                                                                   @PathVariable String status) {
-        List<Order> orders = orderService.getOrdersByCustomerAndStatus(customerId, status);
-        return new ResponseEntity<>(orders, HttpStatus.OK);
+    public ResponseEntity<List<?>> getOrdersByCustomerAndStatus(@PathVariable String customerId,
+                                                                @PathVariable String status,
+                                                                @RequestParam(defaultValue = VIEW_FULL) String view) {
+        try {
+            List<?> orders = orderService.getOrdersByCustomerAndStatus(customerId, status, viewType(view));
+            return new ResponseEntity<>(orders, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @GetMapping("/date-range")
-    public ResponseEntity<List<Order>> getOrdersByDateRange(
+    public ResponseEntity<List<?>> getOrdersByDateRange(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startDate,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate) {
-        List<Order> orders = orderService.getOrdersByDateRange(startDate, endDate);
-        return new ResponseEntity<>(orders, HttpStatus.OK);
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endDate,
+            @RequestParam(defaultValue = VIEW_FULL) String view) {
+        try {
+            List<?> orders = orderService.getOrdersByDateRange(startDate, endDate, viewType(view));
+            return new ResponseEntity<>(orders, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @GetMapping("/stats/count-by-status/{status}")
@@ -88,6 +141,56 @@ public class OrderController {
         return new ResponseEntity<>(count, HttpStatus.OK);
     }
 
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getOrderStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("total", orderStatsService.getStats(OrderStatsService.DIMENSION_TOTAL, null));
+        stats.put("byStatus", orderStatsService.getStatsByDimension(OrderStatsService.DIMENSION_STATUS));
+        stats.put("byPaymentStatus", orderStatsService.getStatsByDimension(OrderStatsService.DIMENSION_PAYMENT_STATUS));
+        stats.put("byPaymentMethod", orderStatsService.getStatsByDimension(OrderStatsService.DIMENSION_PAYMENT_METHOD));
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    @GetMapping("/stats/status/{status}")
+    public ResponseEntity<OrderStats> getOrderStatsByStatus(@PathVariable String status) {
+        OrderStats stats = orderStatsService.getStats(OrderStatsService.DIMENSION_STATUS, status);
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    @GetMapping("/stats/payment-status/{paymentStatus}")
+    public ResponseEntity<OrderStats> getOrderStatsByPaymentStatus(@PathVariable String paymentStatus) {
+        OrderStats stats = orderStatsService.getStats(OrderStatsService.DIMENSION_PAYMENT_STATUS, paymentStatus);
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    @GetMapping("/stats/payment-method/{paymentMethod}")
+    public ResponseEntity<OrderStats> getOrderStatsByPaymentMethod(@PathVariable String paymentMethod) {
+        OrderStats stats = orderStatsService.getStats(OrderStatsService.DIMENSION_PAYMENT_METHOD, paymentMethod);
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    @GetMapping("/stats/daily")
+    public ResponseEntity<List<OrderStats>> getDailyOrderStats(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate) {
+        if (startDate.isAfter(endDate)) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        List<OrderStats> stats = orderStatsService.getDailyStats(startDate, endDate);
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    @GetMapping("/stats/inventory")
+    public ResponseEntity<Map<String, Object>> getInventoryStats() {
+        return new ResponseEntity<>(inventoryService.getStats(), HttpStatus.OK);
+    }
+
+    @PostMapping("/stats/rebuild")
+    public ResponseEntity<Void> rebuildOrderStats() {
+        orderStatsService.rebuildStats();
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
     @PostMapping
     public ResponseEntity<Order> createOrder(@RequestBody Order order) {
         try {
@@ -104,6 +207,9 @@ public class OrderController {
         try {
             Order createdOrder = orderService.createOrderFromCart(customerId, orderDetails);
             return new ResponseEntity<>(createdOrder, HttpStatus.CREATED);
+        } catch (IllegalStateException e) {
+            // Not enough stock for a line; nothing was reserved
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
         } catch (RuntimeException e) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
@@ -124,8 +230,13 @@ public class OrderController {
         try {
             Order order = orderService.updateOrderStatus(id, status);
             return new ResponseEntity<>(order, HttpStatus.OK);
-        } catch (RuntimeException e) {
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (OrderNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            // The order's current status cannot move to the requested one
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
         }
     }
 
@@ -134,8 +245,12 @@ public class OrderController {
         try {
             Order order = orderService.updatePaymentStatus(id, paymentStatus);
             return new ResponseEntity<>(order, HttpStatus.OK);
-        } catch (RuntimeException e) {
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (OrderNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
         }
     }
 
@@ -144,8 +259,10 @@ public class OrderController {
         try {
             Order order = orderService.confirmOrder(id);
             return new ResponseEntity<>(order, HttpStatus.OK);
-        } catch (RuntimeException e) {
+        } catch (OrderNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
         }
     }
 
@@ -154,8 +271,10 @@ public class OrderController {
         try {
             Order order = orderService.shipOrder(id, trackingNumber);
             return new ResponseEntity<>(order, HttpStatus.OK);
-        } catch (RuntimeException e) {
+        } catch (OrderNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
         }
     }
 
@@ -164,8 +283,10 @@ public class OrderController {
         try {
             Order order = orderService.deliverOrder(id);
             return new ResponseEntity<>(order, HttpStatus.OK);
-        } catch (RuntimeException e) {
+        } catch (OrderNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
         }
     }
 
@@ -174,8 +295,47 @@ public class OrderController {
         try {
             Order order = orderService.cancelOrder(id, reason);
             return new ResponseEntity<>(order, HttpStatus.OK);
-        } catch (RuntimeException e) {
+        } catch (OrderNotFoundException e) {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+    }
+
+    @PutMapping("/bulk/confirm")
+    public ResponseEntity<BulkOrderResult> confirmOrders(@RequestBody List<String> orderIds) {
+        try {
+            return new ResponseEntity<>(orderService.confirmOrders(orderIds), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            // More orders than one call accepts
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @PutMapping("/bulk/ship")
+    public ResponseEntity<BulkOrderResult> shipOrders(@RequestBody Map<String, String> trackingNumbers) {
+        try {
+            return new ResponseEntity<>(orderService.shipOrders(trackingNumbers), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @PutMapping("/bulk/deliver")
+    public ResponseEntity<BulkOrderResult> deliverOrders(@RequestBody List<String> orderIds) {
+        try {
+            return new ResponseEntity<>(orderService.deliverOrders(orderIds), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @PutMapping("/bulk/cancel")
+    public ResponseEntity<BulkOrderResult> cancelOrders(@RequestBody List<String> orderIds, @RequestParam String reason) {
+        try {
+            return new ResponseEntity<>(orderService.cancelOrders(orderIds, reason), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
     }
 
@@ -188,4 +348,20 @@ public class OrderController {
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
         }
     }
+
+    // Helper methods
+
+    /**
+     * The type list endpoints read orders as: whole documents, or summaries
+     * with just the columns of order lists and the customer by id
+     */
+    private static Class<?> viewType(String view) {
+        if (VIEW_FULL.equals(view)) {
+            return Order.class;
+        }
+        if (VIEW_SUMMARY.equals(view)) {
+            return OrderSummary.class;
+        }
+        throw new IllegalArgumentException("Unknown view '" + view + "'; supported: full, summary");
+    }
 }
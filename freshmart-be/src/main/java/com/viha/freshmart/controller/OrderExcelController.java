@@ -6,13 +6,13 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -40,9 +40,10 @@ public class OrderExcelController {
         }
     )
     @GetMapping("/download")
-    public ResponseEntity<ByteArrayResource> downloadOrdersExcel() {
+    public ResponseEntity<StreamingResponseBody> downloadOrdersExcel() {
         try {
-            ByteArrayResource resource = orderExcelService.exportAllOrdersToExcel();
+            // Rows are written to the response as they are read from the cursor
+            StreamingResponseBody body = orderExcelService::writeAllOrdersToExcel;
             
             String fileName = "orders_" + 
                 LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
@@ -50,8 +51,7 @@ public class OrderExcelController {
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
                     .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .contentLength(resource.contentLength())
-                    .body(resource);
+                    .body(body);
                     
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -72,7 +72,7 @@ public class OrderExcelController {
         }
     )
     @GetMapping("/download/date-range")
-    public ResponseEntity<ByteArrayResource> downloadOrdersByDateRangeExcel(
+    public ResponseEntity<StreamingResponseBody> downloadOrdersByDateRangeExcel(
             @Parameter(description = "Start date (YYYY-MM-DD)", required = true, example = "2025-01-01")
             @RequestParam("startDate") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
             
@@ -84,7 +84,7 @@ public class OrderExcelController {
                 return ResponseEntity.badRequest().build();
             }
             
-            ByteArrayResource resource = orderExcelService.exportOrdersByDateRangeToExcel(startDate, endDate);
+            StreamingResponseBody body = out -> orderExcelService.writeOrdersByDateRangeToExcel(startDate, endDate, out);
             
             String fileName = "orders_" + startDate + "_to_" + endDate + "_" + 
                 LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
@@ -92,8 +92,7 @@ public class OrderExcelController {
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
                     .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .contentLength(resource.contentLength())
-                    .body(resource);
+                    .body(body);
                     
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -113,12 +112,12 @@ public class OrderExcelController {
         }
     )
     @GetMapping("/download/status/{status}")
-    public ResponseEntity<ByteArrayResource> downloadOrdersByStatusExcel(
+    public ResponseEntity<StreamingResponseBody> downloadOrdersByStatusExcel(
             @Parameter(description = "Order status", required = true, example = "PENDING")
             @PathVariable String status) {
         
         try {
-            ByteArrayResource resource = orderExcelService.exportOrdersByStatusToExcel(status);
+            StreamingResponseBody body = out -> orderExcelService.writeOrdersByStatusToExcel(status, out);
             
             String fileName = "orders_" + status.toLowerCase() + "_" + 
                 LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
@@ -126,8 +125,7 @@ public class OrderExcelController {
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
                     .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .contentLength(resource.contentLength())
-                    .body(resource);
+                    .body(body);
                     
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -147,12 +145,12 @@ public class OrderExcelController {
         }
     )
     @GetMapping("/download/customer/{customerId}")
-    public ResponseEntity<ByteArrayResource> downloadOrdersByCustomerExcel(
+    public ResponseEntity<StreamingResponseBody> downloadOrdersByCustomerExcel(
             @Parameter(description = "Customer ID", required = true, example = "customer123")
             @PathVariable String customerId) {
         
         try {
-            ByteArrayResource resource = orderExcelService.exportOrdersByCustomerToExcel(customerId);
+            StreamingResponseBody body = out -> orderExcelService.writeOrdersByCustomerToExcel(customerId, out);
             
             String fileName = "orders_customer_" + customerId + "_" + 
                 LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
@@ -160,8 +158,7 @@ public class OrderExcelController {
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
                     .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .contentLength(resource.contentLength())
-                    .body(resource);
+                    .body(body);
                     
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -181,9 +178,9 @@ public class OrderExcelController {
         }
     )
     @GetMapping("/report/summary")
-    public ResponseEntity<ByteArrayResource> downloadOrdersSummaryReport() {
+    public ResponseEntity<StreamingResponseBody> downloadOrdersSummaryReport() {
         try {
-            ByteArrayResource resource = orderExcelService.generateOrdersSummaryReport();
+            StreamingResponseBody body = orderExcelService::writeOrdersSummaryReport;
             
             String fileName = "orders_summary_report_" + 
                 LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
@@ -191,8 +188,7 @@ public class OrderExcelController {
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
                     .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .contentLength(resource.contentLength())
-                    .body(resource);
+                    .body(body);
                     
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -1,28 +1,52 @@
 package com.viha.freshmart.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import com.viha.freshmart.dao.entity.Product;
+import com.viha.freshmart.service.core.CachedResponse;
+import com.viha.freshmart.service.core.CatalogResponseCache;
+import com.viha.freshmart.service.core.CursorPage;
+import com.viha.freshmart.service.core.FacetQuery;
+import com.viha.freshmart.service.core.ProductAutocompleteService;
 import com.viha.freshmart.service.core.ProductService;
 
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/products")
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = {HttpHeaders.LINK, CursorHeaders.NEXT_CURSOR})
 public class ProductController {
 
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private ProductAutocompleteService productAutocompleteService;
+
+    @Autowired
+    private CatalogResponseCache catalogResponseCache;
+
     @GetMapping
-    public ResponseEntity<List<Product>> getAllProducts() {
-        List<Product> products = productService.getAllActiveProducts();
-        return new ResponseEntity<>(products, HttpStatus.OK);
+    public ResponseEntity<List<Product>> getAllProducts(
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            CursorPage<Product> page = productService.getAllActiveProducts(sort, cursor, limit);
+            return new ResponseEntity<>(page.getItems(), CursorHeaders.of(page), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @GetMapping("/{id}")
@@ -40,27 +64,63 @@ public class ProductController {
     }
 
     @GetMapping("/category/{categoryId}")
-    public ResponseEntity<List<Product>> getProductsByCategory(@PathVariable String categoryId) {
-        List<Product> products = productService.getProductsByCategory(categoryId);
-        return new ResponseEntity<>(products, HttpStatus.OK);
+    public ResponseEntity<List<Product>> getProductsByCategory(
+            @PathVariable String categoryId,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            CursorPage<Product> page = productService.getProductsByCategory(categoryId, sort, cursor, limit);
+            return new ResponseEntity<>(page.getItems(), CursorHeaders.of(page), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @GetMapping("/brand/{brand}")
-    public ResponseEntity<List<Product>> getProductsByBrand(@PathVariable String brand) {
-        List<Product> products = productService.getProductsByBrand(brand);
-        return new ResponseEntity<>(products, HttpStatus.OK);
+    public ResponseEntity<List<Product>> getProductsByBrand(
+            @PathVariable String brand,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        try {
+            CursorPage<Product> page = productService.getProductsByBrand(brand, sort, cursor, limit);
+            return new ResponseEntity<>(page.getItems(), CursorHeaders.of(page), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @GetMapping("/featured")
-    public ResponseEntity<List<Product>> getFeaturedProducts() {
-        List<Product> products = productService.getFeaturedProducts();
-        return new ResponseEntity<>(products, HttpStatus.OK);
+    public ResponseEntity<byte[]> getFeaturedProducts(
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            WebRequest webRequest) {
+        try {
+            CachedResponse response = catalogResponseCache.get("products/featured",
+                    CachedResponses.params("sort", sort, "cursor", cursor, "limit", limit),
+                    () -> productService.getFeaturedProducts(sort, cursor, limit));
+            return CachedResponses.of(response, webRequest);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @GetMapping("/organic")
-    public ResponseEntity<List<Product>> getOrganicProducts() {
-        List<Product> products = productService.getOrganicProducts();
-        return new ResponseEntity<>(products, HttpStatus.OK);
+    public ResponseEntity<byte[]> getOrganicProducts(
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            WebRequest webRequest) {
+        try {
+            CachedResponse response = catalogResponseCache.get("products/organic",
+                    CachedResponses.params("sort", sort, "cursor", cursor, "limit", limit),
+                    () -> productService.getOrganicProducts(sort, cursor, limit));
+            return CachedResponses.of(response, webRequest);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @GetMapping("/search")
@@ -69,16 +129,76 @@ public class ProductController {
         return new ResponseEntity<>(products, HttpStatus.OK);
     }
 
+    @GetMapping("/facets")
+    public ResponseEntity<Map<String, Object>> searchFacets(
+            @RequestParam(required = false) Set<String> brand,
+            @RequestParam(required = false) Set<String> category,
+            @RequestParam(required = false) Set<String> unit,
+            @RequestParam(required = false) Boolean organic,
+            @RequestParam(required = false) Boolean featured,
+            @RequestParam(required = false) Boolean inStock,
+            @RequestParam(required = false) BigDecimal minPrice,
+            @RequestParam(required = false) BigDecimal maxPrice,
+            @RequestParam(required = false) String sort,
+            @RequestParam(required = false) Integer offset,
+            @RequestParam(required = false) Integer limit) {
+        FacetQuery query = new FacetQuery();
+        query.setBrands(brand);
+        query.setCategoryIds(category);
+        query.setUnits(unit);
+        query.setIsOrganic(organic);
+        query.setIsFeatured(featured);
+        query.setInStock(inStock);
+        query.setMinPrice(minPrice);
+        query.setMaxPrice(maxPrice);
+        query.setSort(sort);
+        query.setOffset(offset);
+        query.setLimit(limit);
+        try {
+            return new ResponseEntity<>(productService.searchFacets(query), HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+        }
+    }
+
+    @GetMapping("/autocomplete")
+    public ResponseEntity<List<Map<String, Object>>> autocomplete(@RequestParam String prefix,
+                                                                  @RequestParam(defaultValue = "8") Integer limit) {
+        try {
+            List<Map<String, Object>> suggestions = productAutocompleteService.suggest(prefix, limit);
+            return new ResponseEntity<>(suggestions, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @GetMapping("/autocomplete/stats")
+    public ResponseEntity<Map<String, Object>> getAutocompleteStats() {
+        return new ResponseEntity<>(productAutocompleteService.getStats(), HttpStatus.OK);
+    }
+
     @GetMapping("/low-stock")
     public ResponseEntity<List<Product>> getLowStockProducts(@RequestParam(defaultValue = "10") Integer threshold) {
         List<Product> products = productService.getLowStockProducts(threshold);
         return new ResponseEntity<>(products, HttpStatus.OK);
     }
 
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> getCatalogCacheStats() {
+        return new ResponseEntity<>(productService.getCatalogCacheStats(), HttpStatus.OK);
+    }
+
     @PostMapping
     public ResponseEntity<Product> createProduct(@RequestBody Product product) {
-        Product createdProduct = productService.createProduct(product);
-        return new ResponseEntity<>(createdProduct, HttpStatus.CREATED);
+        try {
+            Product createdProduct = productService.createProduct(product);
+            return new ResponseEntity<>(createdProduct, HttpStatus.CREATED);
+        } catch (DuplicateKeyException e) {
+            // Another product has this SKU
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
     }
 
     @PutMapping("/{id}")
@@ -1,6 +1,8 @@
 package com.viha.freshmart.controller;
 
-import com.viha.freshmart.dao.entity.Product;
+import com.viha.freshmart.service.core.ImportJob;
+import com.viha.freshmart.service.core.ImportJobService;
+import com.viha.freshmart.service.core.ImportResult;
 import com.viha.freshmart.service.core.ProductExcelService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -14,12 +16,13 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/products/excel")
@@ -30,6 +33,9 @@ public class ProductExcelController {
     @Autowired
     private ProductExcelService productExcelService;
     
+    @Autowired
+    private ImportJobService importJobService;
+    
     /**
      * Upload Excel file to import products
      * POST /api/products/excel/upload
@@ -57,13 +63,17 @@ public class ProductExcelController {
             }
             
             // Import products
-            List<Product> importedProducts = productExcelService.importProductsFromExcel(file);
+            ImportResult result = productExcelService.importProductsFromExcel(file);
             
             Map<String, Object> response = new HashMap<>();
-            response.put("success", true);
-            response.put("message", "Products imported successfully");
-            response.put("count", importedProducts.size());
-            response.put("data", importedProducts);
+            response.put("success", result.isSuccess());
+            response.put("message", result.isSuccess() ? "Products imported successfully"
+                    : "Products imported with " + result.getFailedRecords() + " failed rows");
+            response.put("count", result.getSuccessfulRecords());
+            response.put("totalRecords", result.getTotalRecords());
+            response.put("successfulRecords", result.getSuccessfulRecords());
+            response.put("failedRecords", result.getFailedRecords());
+            response.put("errors", result.getErrors());
             
             return ResponseEntity.ok(response);
             
@@ -77,6 +87,116 @@ public class ProductExcelController {
         }
     }
     
+    /**
+     * Upload Excel file to import products in the background
+     * POST /api/products/excel/jobs
+     */
+    @Operation(
+        summary = "Start a background products import",
+        description = "Upload an Excel file and return a job id at once. The import runs in the background; poll the job for progress.",
+        responses = {
+            @ApiResponse(responseCode = "202", description = "Import job accepted"),
+            @ApiResponse(responseCode = "400", description = "Invalid file or format"),
+            @ApiResponse(responseCode = "503", description = "Too many imports queued")
+        }
+    )
+    @PostMapping(value = "/jobs", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> startProductsImportJob(
+            @Parameter(description = "Excel file containing products data", required = true)
+            @RequestParam("file") MultipartFile file) {
+        
+        try {
+            // Validate file
+            if (!productExcelService.validateProductExcelFile(file)) {
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("success", false);
+                errorResponse.put("message", "Invalid Excel file format. Please use the correct template.");
+                return ResponseEntity.badRequest().body(errorResponse);
+            }
+            
+            ImportJob job = importJobService.submitImport(ImportJob.TYPE_PRODUCTS, file);
+            
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Import started");
+            response.put("jobId", job.getId());
+            response.put("data", job);
+            
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+            
+        } catch (IllegalStateException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("message", e.getMessage());
+            
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorResponse);
+            
+        } catch (Exception e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("message", "Failed to start import: " + e.getMessage());
+            errorResponse.put("error", e.getClass().getSimpleName());
+            
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+    
+    /**
+     * Get progress of a background products import
+     * GET /api/products/excel/jobs/{jobId}
+     */
+    @Operation(
+        summary = "Get products import job status",
+        description = "Rows processed and failed, throughput in rows per second and estimated seconds remaining",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Job status"),
+            @ApiResponse(responseCode = "404", description = "Job not found")
+        }
+    )
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<?> getProductsImportJob(@PathVariable String jobId) {
+        Optional<ImportJob> job = importJobService.getJob(ImportJob.TYPE_PRODUCTS, jobId);
+        if (!job.isPresent()) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("success", false);
+            errorResponse.put("message", "Import job not found: " + jobId);
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("data", job.get());
+        return ResponseEntity.ok(response);
+    }
+    
+    /**
+     * Download the rows that failed in a background products import
+     * GET /api/products/excel/jobs/{jobId}/errors
+     */
+    @Operation(
+        summary = "Download products import errors",
+        description = "Download the failed rows of an import job as an Excel file",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Error sheet generated"),
+            @ApiResponse(responseCode = "404", description = "Job not found")
+        }
+    )
+    @GetMapping("/jobs/{jobId}/errors")
+    public ResponseEntity<StreamingResponseBody> downloadProductsImportErrors(@PathVariable String jobId) {
+        Optional<ImportJob> job = importJobService.getJob(ImportJob.TYPE_PRODUCTS, jobId);
+        if (!job.isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        
+        String fileName = "products_import_errors_" + jobId + ".xlsx";
+        StreamingResponseBody body = out -> importJobService.writeErrorSheet(job.get(), out);
+        
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .body(body);
+    }
+    
     /**
      * Download all products as Excel file
      * GET /api/products/excel/download
@@ -90,22 +210,17 @@ public class ProductExcelController {
         }
     )
     @GetMapping("/download")
-    public ResponseEntity<ByteArrayResource> downloadProductsExcel() {
-        try {
-            ByteArrayResource resource = productExcelService.exportAllProductsToExcel();
-            
-            String fileName = "products_" + 
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
-            
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
-                    .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
-                    .contentLength(resource.contentLength())
-                    .body(resource);
-                    
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-        }
+    public ResponseEntity<StreamingResponseBody> downloadProductsExcel() {
+        String fileName = "products_" + 
+            LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")) + ".xlsx";
+        
+        // Rows are written to the response as they are read, so there is no content length
+        StreamingResponseBody body = productExcelService::writeAllProductsToExcel;
+        
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                .body(body);
     }
     
     /**
@@ -1,6 +1,7 @@
 package com.viha.freshmart.dao.entity;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 
@@ -21,6 +22,10 @@ public class Cart {
     private Integer totalItems;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    
+    @Version
+    private Long version; // increased by every change, see CartServiceImpl
+    private Long catalogVersion; // catalog version the line prices were last refreshed at
 
     public Cart() {
         this.createdAt = LocalDateTime.now();
@@ -85,4 +90,20 @@ public class Cart {
     public void setUpdatedAt(LocalDateTime updatedAt) {
         this.updatedAt = updatedAt;
     }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Long getCatalogVersion() {
+        return catalogVersion;
+    }
+
+    public void setCatalogVersion(Long catalogVersion) {
+        this.catalogVersion = catalogVersion;
+    }
 }
@@ -2,7 +2,6 @@ package com.viha.freshmart.dao.entity;
 
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
-import org.springframework.data.mongodb.core.mapping.DBRef;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -12,8 +11,7 @@ public class CartItem {
     @Id
     private String id;
     
-    @DBRef
-    private Product product;
+    private ProductSnapshot product; // Embedded, so reading a cart needs no product lookups
     
     private Integer quantity;
     private BigDecimal unitPrice;
@@ -33,11 +31,11 @@ public class CartItem {
         this.id = id;
     }
 
-    public Product getProduct() {
+    public ProductSnapshot getProduct() {
         return product;
     }
 
-    public void setProduct(Product product) {
+    public void setProduct(ProductSnapshot product) {
         this.product = product;
     }
 
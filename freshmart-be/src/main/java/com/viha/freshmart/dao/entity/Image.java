@@ -24,6 +24,13 @@ public class Image {
     
     private String contentType;
     
+    // Hash of the file bytes, used as ETag and as the version in image URLs
+    private String contentHash;
+    
+    // Id of the shared ImageBlob holding the file; null for images stored before blobs
+    @Indexed
+    private String blobId;
+    
     private String filePath;
     
     private String url;
@@ -221,6 +228,22 @@ public class Image {
         this.largePath = largePath;
     }
     
+    public String getContentHash() {
+        return contentHash;
+    }
+    
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+    
+    public String getBlobId() {
+        return blobId;
+    }
+    
+    public void setBlobId(String blobId) {
+        this.blobId = blobId;
+    }
+    
     @Override
     public String toString() {
         return "Image{" +
@@ -0,0 +1,71 @@
+package com.viha.freshmart.dao.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * A stored image file, identified by the hash of its bytes. Images with the
+ * same content share one blob; refCount is the number of active images that
+ * point at it, and the file is deleted when it drops to zero.
+ */
+@Document(collection = "image_blobs")
+public class ImageBlob {
+    
+    @Id
+    private String id;
+    
+    private String path;
+    
+    private long size;
+    
+    private int refCount;
+    
+    private LocalDateTime createdAt;
+    
+    public ImageBlob() {
+        this.createdAt = LocalDateTime.now();
+    }
+    
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+    
+    public void setId(String id) {
+        this.id = id;
+    }
+    
+    public String getPath() {
+        return path;
+    }
+    
+    public void setPath(String path) {
+        this.path = path;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+    
+    public void setSize(long size) {
+        this.size = size;
+    }
+    
+    public int getRefCount() {
+        return refCount;
+    }
+    
+    public void setRefCount(int refCount) {
+        this.refCount = refCount;
+    }
+    
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
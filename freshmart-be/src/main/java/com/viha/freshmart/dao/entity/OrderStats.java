@@ -0,0 +1,92 @@
+package com.viha.freshmart.dao.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Pre-aggregated order counters for one bucket, e.g. "status:PENDING",
+ * "paymentMethod:UPI" or "day:2025-06-01". The "total" bucket covers all orders.
+ * Revenue excludes cancelled orders.
+ */
+@Document(collection = "order_stats")
+public class OrderStats {
+    @Id
+    private String id; // dimension:key
+    private String dimension; // total, status, paymentStatus, paymentMethod, day
+    private String key;
+    private Long orderCount;
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal revenue;
+    private LocalDateTime updatedAt;
+
+    public OrderStats() {
+        this.orderCount = 0L;
+        this.revenue = BigDecimal.ZERO;
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public OrderStats(String dimension, String key) {
+        this();
+        this.id = bucketId(dimension, key);
+        this.dimension = dimension;
+        this.key = key;
+    }
+
+    public static String bucketId(String dimension, String key) {
+        return key == null ? dimension : dimension + ":" + key;
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getDimension() {
+        return dimension;
+    }
+
+    public void setDimension(String dimension) {
+        this.dimension = dimension;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    public Long getOrderCount() {
+        return orderCount;
+    }
+
+    public void setOrderCount(Long orderCount) {
+        this.orderCount = orderCount;
+    }
+
+    public BigDecimal getRevenue() {
+        return revenue;
+    }
+
+    public void setRevenue(BigDecimal revenue) {
+        this.revenue = revenue;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,75 @@
+package com.viha.freshmart.dao.entity;
+
+import com.mongodb.DBRef;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * The columns of an order shown in order lists, read from the orders
+ * collection as a projection. Only these fields are fetched; the customer is
+ * kept as the stored reference, so it is never resolved, and is exposed by id.
+ */
+public class OrderSummary {
+
+    private final String id;
+    private final String orderNumber;
+    private final DBRef customer;
+    private final String orderStatus;
+    private final String paymentStatus;
+    private final String paymentMethod;
+    private final BigDecimal totalAmount;
+    private final String currency;
+    private final LocalDateTime orderDate;
+
+    public OrderSummary(String id, String orderNumber, DBRef customer, String orderStatus, String paymentStatus,
+                        String paymentMethod, BigDecimal totalAmount, String currency, LocalDateTime orderDate) {
+        this.id = id;
+        this.orderNumber = orderNumber;
+        this.customer = customer;
+        this.orderStatus = orderStatus;
+        this.paymentStatus = paymentStatus;
+        this.paymentMethod = paymentMethod;
+        this.totalAmount = totalAmount;
+        this.currency = currency;
+        this.orderDate = orderDate;
+    }
+
+    // Getters
+
+    public String getId() {
+        return id;
+    }
+
+    public String getOrderNumber() {
+        return orderNumber;
+    }
+
+    public String getCustomerId() {
+        return customer != null ? customer.getId().toString() : null;
+    }
+
+    public String getOrderStatus() {
+        return orderStatus;
+    }
+
+    public String getPaymentStatus() {
+        return paymentStatus;
+    }
+
+    public String getPaymentMethod() {
+        return paymentMethod;
+    }
+
+    public BigDecimal getTotalAmount() {
+        return totalAmount;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public LocalDateTime getOrderDate() {
+        return orderDate;
+    }
+}
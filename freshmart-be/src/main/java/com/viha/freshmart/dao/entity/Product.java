@@ -3,6 +3,8 @@ package com.viha.freshmart.dao.entity;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.DBRef;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
@@ -15,7 +17,9 @@ public class Product {
     private String name;
     private String description;
     private String sku;
-    private BigDecimal price;
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal price; // stored as a number so listings can sort by it
+    @Field(targetType = FieldType.DECIMAL128)
     private BigDecimal discountPrice;
     private Integer stockQuantity;
     private String unit; // kg, piece, liter, etc.
@@ -0,0 +1,82 @@
+package com.viha.freshmart.dao.entity;
+
+import java.math.BigDecimal;
+
+/**
+ * The product fields a cart line shows, embedded in the line so reading a
+ * cart needs no product lookups. Prices are refreshed when the catalog changes.
+ */
+public class ProductSnapshot {
+    private String id;
+    private String name;
+    private BigDecimal price;
+    private BigDecimal discountPrice;
+    private String unit; // kg, piece, liter, etc.
+    private String mainImage;
+
+    public ProductSnapshot() {
+    }
+
+    public ProductSnapshot(String id) {
+        this.id = id;
+    }
+
+    public static ProductSnapshot of(Product product) {
+        ProductSnapshot snapshot = new ProductSnapshot(product.getId());
+        snapshot.setName(product.getName());
+        snapshot.setPrice(product.getPrice());
+        snapshot.setDiscountPrice(product.getDiscountPrice());
+        snapshot.setUnit(product.getUnit());
+        snapshot.setMainImage(product.getMainImage());
+        return snapshot;
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public void setPrice(BigDecimal price) {
+        this.price = price;
+    }
+
+    public BigDecimal getDiscountPrice() {
+        return discountPrice;
+    }
+
+    public void setDiscountPrice(BigDecimal discountPrice) {
+        this.discountPrice = discountPrice;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public void setUnit(String unit) {
+        this.unit = unit;
+    }
+
+    public String getMainImage() {
+        return mainImage;
+    }
+
+    public void setMainImage(String mainImage) {
+        this.mainImage = mainImage;
+    }
+}
@@ -0,0 +1,78 @@
+package com.viha.freshmart.dao.entity;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Stock taken off the products for one order. A held reservation waits for
+ * payment and is released when it expires; a committed one is kept unless the
+ * order is cancelled, and a fulfilled one belongs to an order that shipped.
+ * Releasing puts the stock back, and only a held or committed reservation
+ * can be released, so stock is returned at most once and never for goods
+ * that left the warehouse.
+ */
+@Document(collection = "stock_reservations")
+public class StockReservation {
+    @Id
+    private String id; // id of the order
+    private Map<String, Integer> quantities; // product id -> reserved quantity
+    private String status; // HELD, COMMITTED, FULFILLED, RELEASED
+    private LocalDateTime createdAt;
+    private LocalDateTime expiresAt; // set while held
+    private LocalDateTime releasedAt;
+
+    public StockReservation() {
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Map<String, Integer> getQuantities() {
+        return quantities;
+    }
+
+    public void setQuantities(Map<String, Integer> quantities) {
+        this.quantities = quantities;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public LocalDateTime getReleasedAt() {
+        return releasedAt;
+    }
+
+    public void setReleasedAt(LocalDateTime releasedAt) {
+        this.releasedAt = releasedAt;
+    }
+}
@@ -26,6 +26,11 @@ public interface ImageRepository extends MongoRepository<Image, String> {
      */
     Optional<Image> findByFileNameAndIsActiveTrue(String fileName);
     
+    /**
+     * Find an active image sharing the given blob whose renditions have been generated
+     */
+    Optional<Image> findFirstByBlobIdAndIsActiveTrueAndThumbnailPathNotNull(String blobId);
+    
     /**
      * Find images uploaded by specific user
      */
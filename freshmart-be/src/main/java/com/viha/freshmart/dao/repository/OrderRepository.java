@@ -11,18 +11,20 @@ import java.util.Optional;
 
 @Repository
 public interface OrderRepository extends MongoRepository<Order, String> {
+
+    // List queries take the type to read: Order, or OrderSummary to fetch only the listed columns
     
-    List<Order> findByCustomerIdOrderByOrderDateDesc(String customerId);
+    <T> List<T> findByCustomerIdOrderByOrderDateDesc(String customerId, Class<T> type);
     
     Optional<Order> findByOrderNumber(String orderNumber);
     
-    List<Order> findByOrderStatus(String orderStatus);
+    <T> List<T> findByOrderStatus(String orderStatus, Class<T> type);
     
-    List<Order> findByPaymentStatus(String paymentStatus);
+    <T> List<T> findByPaymentStatus(String paymentStatus, Class<T> type);
     
-    List<Order> findByOrderDateBetween(LocalDateTime startDate, LocalDateTime endDate);
+    <T> List<T> findByOrderDateBetween(LocalDateTime startDate, LocalDateTime endDate, Class<T> type);
     
-    List<Order> findByCustomerIdAndOrderStatus(String customerId, String orderStatus);
+    <T> List<T> findByCustomerIdAndOrderStatus(String customerId, String orderStatus, Class<T> type);
     
     Long countByOrderStatus(String orderStatus);
     
@@ -1,5 +1,6 @@
 package com.viha.freshmart.dao.repository;
 
+import org.springframework.data.mongodb.repository.Meta;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -8,6 +9,7 @@ import com.viha.freshmart.dao.entity.Product;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface ProductRepository extends MongoRepository<Product, String> {
@@ -31,4 +33,12 @@ public interface ProductRepository extends MongoRepository<Product, String> {
     List<Product> findByStockQuantityLessThan(Integer threshold);
     
     List<Product> findByIsOrganicTrueAndIsActiveTrue();
+    
+    /**
+     * Cursor over all active products for exports. The category reference is
+     * excluded so no per-product DBRef lookups happen while streaming.
+     */
+    @Meta(cursorBatchSize = 500)
+    @Query(value = "{'isActive': true}", fields = "{'category': 0}")
+    Stream<Product> streamByIsActiveTrue();
 }
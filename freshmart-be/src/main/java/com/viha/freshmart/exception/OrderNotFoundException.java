@@ -0,0 +1,8 @@
+package com.viha.freshmart.exception;
+
+public class OrderNotFoundException extends RuntimeException {
+    
+    public OrderNotFoundException(String id) {
+        super("Order not found: " + id);
+    }
+}
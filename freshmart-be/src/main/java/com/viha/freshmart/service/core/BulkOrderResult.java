@@ -0,0 +1,151 @@
+package com.viha.freshmart.service.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a status change applied to many orders at once: counts and one
+ * result per distinct order id, in the order the ids were given.
+ */
+public class BulkOrderResult {
+
+    public static final String UPDATED = "UPDATED";
+    // The order does not exist
+    public static final String NOT_FOUND = "NOT_FOUND";
+    // The order's status cannot move to the requested one
+    public static final String INVALID_STATUS = "INVALID_STATUS";
+    // The order changed between being read and being updated
+    public static final String CONFLICT = "CONFLICT";
+    // The write failed
+    public static final String FAILED = "FAILED";
+
+    private String status;
+    private int requested;
+    private int updated;
+    private int failed;
+    private long durationMillis;
+    private List<OrderResult> results;
+
+    public BulkOrderResult() {
+        this.results = new ArrayList<>();
+    }
+
+    public BulkOrderResult(String status) {
+        this();
+        this.status = status;
+    }
+
+    public void add(OrderResult result) {
+        results.add(result);
+        requested++;
+        if (UPDATED.equals(result.getOutcome())) {
+            updated++;
+        } else {
+            failed++;
+        }
+    }
+
+    /**
+     * The status the orders were moved to
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public int getRequested() {
+        return requested;
+    }
+
+    public void setRequested(int requested) {
+        this.requested = requested;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(int updated) {
+        this.updated = updated;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public void setFailed(int failed) {
+        this.failed = failed;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public List<OrderResult> getResults() {
+        return results;
+    }
+
+    public void setResults(List<OrderResult> results) {
+        this.results = results;
+    }
+
+    /**
+     * What happened to one order. The previous status is the one the order was
+     * found in, when it was found.
+     */
+    public static class OrderResult {
+        private String orderId;
+        private String outcome;
+        private String previousStatus;
+        private String message;
+
+        public OrderResult() {
+        }
+
+        public OrderResult(String orderId, String outcome, String previousStatus, String message) {
+            this.orderId = orderId;
+            this.outcome = outcome;
+            this.previousStatus = previousStatus;
+            this.message = message;
+        }
+
+        public String getOrderId() {
+            return orderId;
+        }
+
+        public void setOrderId(String orderId) {
+            this.orderId = orderId;
+        }
+
+        public String getOutcome() {
+            return outcome;
+        }
+
+        public void setOutcome(String outcome) {
+            this.outcome = outcome;
+        }
+
+        public String getPreviousStatus() {
+            return previousStatus;
+        }
+
+        public void setPreviousStatus(String previousStatus) {
+            this.previousStatus = previousStatus;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+}
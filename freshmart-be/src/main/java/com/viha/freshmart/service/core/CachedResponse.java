@@ -0,0 +1,45 @@
+package com.viha.freshmart.service.core;
+
+/**
+ * A serialized JSON response body, kept in plain and gzip form together with
+ * its ETag. The byte arrays are shared by every request and must not be modified.
+ */
+public final class CachedResponse {
+
+    private final byte[] body;
+    private final byte[] gzipBody;
+    private final String etag;
+    private final String nextCursor;
+
+    public CachedResponse(byte[] body, byte[] gzipBody, String etag, String nextCursor) {
+        this.body = body;
+        this.gzipBody = gzipBody;
+        this.etag = etag;
+        this.nextCursor = nextCursor;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * The body gzip-compressed, or null when compressing does not make it smaller
+     */
+    public byte[] getGzipBody() {
+        return gzipBody;
+    }
+
+    /**
+     * Weak ETag of the body, shared by the plain and gzip forms
+     */
+    public String getETag() {
+        return etag;
+    }
+
+    /**
+     * Cursor of the next page when the body is a page of a paginated listing
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
@@ -0,0 +1,28 @@
+package com.viha.freshmart.service.core;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+public interface CatalogResponseCache {
+    
+    /**
+     * Get the cached response of an endpoint for the given parameters at the
+     * current catalog version, loading and serializing it on a miss. The loader
+     * may return JSON bytes that are already serialized, or a CursorPage whose
+     * items become the body and whose next cursor is kept with it.
+     */
+    CachedResponse get(String endpoint, Map<String, ?> params, Supplier<?> loader);
+    
+    /**
+     * Version of the catalog, increased on every product or category change.
+     * Carts record it to know when their line prices need refreshing.
+     */
+    long getCatalogVersion();
+    
+    /**
+     * Record a product or category change, dropping every cached response
+     */
+    void catalogChanged();
+    
+    Map<String, Object> getStats();
+}
@@ -4,6 +4,7 @@ import com.viha.freshmart.dao.entity.Category;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.File;
 import java.util.List;
 
 public interface CategoryExcelService {
@@ -11,7 +12,12 @@ public interface CategoryExcelService {
     /**
      * Import categories from Excel file
      */
-    List<Category> importCategoriesFromExcel(MultipartFile file);
+    ImportResult importCategoriesFromExcel(MultipartFile file);
+    
+    /**
+     * Import categories from an Excel file on disk in chunks, reporting progress per chunk
+     */
+    ImportResult importCategoriesFromExcel(File file, ImportProgressListener listener);
     
     /**
      * Export categories to Excel file
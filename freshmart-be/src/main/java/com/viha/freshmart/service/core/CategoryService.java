@@ -9,6 +9,10 @@ public interface CategoryService {
     
     List<Category> getAllActiveCategories();
     
+    CategoryTree getCategoryTree();
+    
+    void refreshCategoryTree();
+    
     Optional<Category> getCategoryById(String id);
     
     Optional<Category> getCategoryBySlug(String slug);
@@ -0,0 +1,38 @@
+package com.viha.freshmart.service.core;
+
+import com.viha.freshmart.dao.entity.Category;
+
+import java.util.List;
+
+/**
+ * Immutable snapshot of the active category tree together with its JSON form
+ * and an ETag of that JSON. The categories are shared by every request and
+ * must not be modified.
+ */
+public final class CategoryTree {
+
+    private final List<Category> categories;
+    private final byte[] json;
+    private final String etag;
+
+    public CategoryTree(List<Category> categories, byte[] json, String etag) {
+        this.categories = categories;
+        this.json = json;
+        this.etag = etag;
+    }
+
+    public List<Category> getCategories() {
+        return categories;
+    }
+
+    /**
+     * The categories serialized as a JSON array; the array is shared, do not modify it
+     */
+    public byte[] getJson() {
+        return json;
+    }
+
+    public String getETag() {
+        return etag;
+    }
+}
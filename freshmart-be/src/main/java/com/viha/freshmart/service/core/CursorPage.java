@@ -0,0 +1,30 @@
+package com.viha.freshmart.service.core;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated listing. The next page is requested by
+ * passing nextCursor back with the same sort; it is null on the last page.
+ */
+public class CursorPage<T> {
+
+    private final List<T> items;
+    private final String nextCursor;
+
+    public CursorPage(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -7,7 +7,7 @@ import java.util.Optional;
 
 public interface CustomerService {
     
-    List<Customer> getAllCustomers();
+    CursorPage<Customer> getAllCustomers(String sort, String cursor, Integer limit);
     
     Optional<Customer> getCustomerById(String id);
     
@@ -0,0 +1,115 @@
+package com.viha.freshmart.service.core;
+
+import java.math.BigDecimal;
+import java.util.Set;
+
+/**
+ * Filters of a faceted product search. Values of one attribute are alternatives
+ * (brand A or brand B), different attributes must all match. Unset filters
+ * match everything.
+ */
+public class FacetQuery {
+
+    private Set<String> brands = Set.of();
+    private Set<String> categoryIds = Set.of();
+    private Set<String> units = Set.of();
+    private Boolean isOrganic;
+    private Boolean isFeatured;
+    private Boolean inStock;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private String sort;
+    private Integer offset;
+    private Integer limit;
+
+    public Set<String> getBrands() {
+        return brands;
+    }
+
+    public void setBrands(Set<String> brands) {
+        this.brands = brands != null ? brands : Set.of();
+    }
+
+    public Set<String> getCategoryIds() {
+        return categoryIds;
+    }
+
+    public void setCategoryIds(Set<String> categoryIds) {
+        this.categoryIds = categoryIds != null ? categoryIds : Set.of();
+    }
+
+    public Set<String> getUnits() {
+        return units;
+    }
+
+    public void setUnits(Set<String> units) {
+        this.units = units != null ? units : Set.of();
+    }
+
+    public Boolean getIsOrganic() {
+        return isOrganic;
+    }
+
+    public void setIsOrganic(Boolean isOrganic) {
+        this.isOrganic = isOrganic;
+    }
+
+    public Boolean getIsFeatured() {
+        return isFeatured;
+    }
+
+    public void setIsFeatured(Boolean isFeatured) {
+        this.isFeatured = isFeatured;
+    }
+
+    public Boolean getInStock() {
+        return inStock;
+    }
+
+    public void setInStock(Boolean inStock) {
+        this.inStock = inStock;
+    }
+
+    public BigDecimal getMinPrice() {
+        return minPrice;
+    }
+
+    public void setMinPrice(BigDecimal minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public BigDecimal getMaxPrice() {
+        return maxPrice;
+    }
+
+    public void setMaxPrice(BigDecimal maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    /**
+     * "name" (the default), "price" or "rating", optionally followed by ",asc" or ",desc"
+     */
+    public String getSort() {
+        return sort;
+    }
+
+    public void setSort(String sort) {
+        this.sort = sort;
+    }
+
+    public Integer getOffset() {
+        return offset;
+    }
+
+    public void setOffset(Integer offset) {
+        this.offset = offset;
+    }
+
+    public Integer getLimit() {
+        return limit;
+    }
+
+    public void setLimit(Integer limit) {
+        this.limit = limit;
+    }
+}
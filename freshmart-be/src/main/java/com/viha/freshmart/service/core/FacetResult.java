@@ -0,0 +1,38 @@
+package com.viha.freshmart.service.core;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of a faceted product search: the ids of the matching products in
+ * the requested order, how many products match in total, and the facet counts.
+ */
+public class FacetResult {
+
+    private final int total;
+    private final List<String> productIds;
+    private final Map<String, Object> facets;
+
+    public FacetResult(int total, List<String> productIds, Map<String, Object> facets) {
+        this.total = total;
+        this.productIds = productIds;
+        this.facets = facets;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public List<String> getProductIds() {
+        return productIds;
+    }
+
+    /**
+     * Counts per attribute value, e.g. "brand" to {"Amul": 12}, and the price range as "price" to {"min", "max"}.
+     * Each attribute is counted with all filters applied except its own, so
+     * the counts say how many products selecting that value would add.
+     */
+    public Map<String, Object> getFacets() {
+        return facets;
+    }
+}
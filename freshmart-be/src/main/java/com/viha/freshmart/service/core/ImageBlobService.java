@@ -0,0 +1,29 @@
+package com.viha.freshmart.service.core;
+
+import com.viha.freshmart.dao.entity.ImageBlob;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+
+public interface ImageBlobService {
+
+    /**
+     * Store image content, or add a reference to the existing blob with the same content
+     */
+    ImageBlob store(InputStream content);
+
+    /**
+     * Drop one reference to a blob, deleting its file when none are left; returns true if it was deleted
+     */
+    boolean release(String blobId);
+
+    /**
+     * Compute the content hash of a file, as used for blob ids
+     */
+    String hash(Path file);
+
+    /**
+     * Get the sharded location of a file named by a blob id under the given root directory
+     */
+    Path shardedPath(Path root, String blobId, String suffix);
+}
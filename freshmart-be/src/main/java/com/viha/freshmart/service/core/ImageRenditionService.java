@@ -0,0 +1,33 @@
+package com.viha.freshmart.service.core;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.file.Path;
+
+public interface ImageRenditionService {
+
+    /**
+     * Queue generation of the thumbnail, medium and large renditions of an image
+     */
+    void generateRenditionsAsync(String imageId);
+
+    /**
+     * Generate the thumbnail, medium and large renditions of an image and record its dimensions
+     */
+    boolean generateRenditions(String imageId);
+
+    /**
+     * Read the pixel size of an image file from its header, or null if the format is not readable
+     */
+    Dimension readDimensions(Path imageFile);
+
+    /**
+     * Render one image file at the given width (never upscaled) in the given format and JPEG quality
+     */
+    void render(Path source, Path target, int width, String format, float quality) throws IOException;
+
+    /**
+     * Whether images can be encoded in the given format
+     */
+    boolean canEncode(String format);
+}
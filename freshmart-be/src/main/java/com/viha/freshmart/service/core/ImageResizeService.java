@@ -0,0 +1,24 @@
+package com.viha.freshmart.service.core;
+
+import com.viha.freshmart.dao.entity.Image;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+public interface ImageResizeService {
+
+    /**
+     * Get a resized copy of an image, rendering and caching it on first request
+     */
+    Path getResized(Image image, Integer width, String format, Integer quality);
+
+    /**
+     * Drop all cached copies of a blob, or of an image stored before blobs
+     */
+    void evict(String ownerId);
+
+    /**
+     * Get cache size and hit statistics
+     */
+    Map<String, Object> getStats();
+}
@@ -29,6 +29,26 @@ public interface ImageService {
      */
     Resource getImageResourceBySize(String imageId, String size);
     
+    /**
+     * Get image resource resized to an arbitrary width, format and quality
+     */
+    Resource getImageResourceBySize(String imageId, Integer width, String format, Integer quality);
+    
+    /**
+     * Get the file resource of an already loaded image, by named size or resized on demand
+     */
+    Resource getImageResource(Image image, String size, Integer width, String format, Integer quality);
+    
+    /**
+     * Get the entity tag of an image variant, derived from the content hash without reading the file
+     */
+    String getImageETag(Image image, String size, Integer width, String format, Integer quality);
+    
+    /**
+     * Check whether the rendition for a named size has been generated
+     */
+    boolean isRenditionReady(Image image, String size);
+    
     /**
      * Get images by category
      */
@@ -70,9 +90,9 @@ public interface ImageService {
     String getImageUrlBySize(String imageId, String size);
     
     /**
-     * Get all active images
+     * Get one page of active images, newest first unless another sort is given
      */
-    List<Image> getAllActiveImages();
+    CursorPage<Image> getActiveImages(String sort, String cursor, Integer limit);
     
     /**
      * Get image count by category
@@ -0,0 +1,177 @@
+package com.viha.freshmart.service.core;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An Excel import running in the background. Counters are updated by the import
+ * threads after every chunk, so status reads always see current progress.
+ */
+public class ImportJob implements ImportProgressListener {
+
+    public static final String TYPE_PRODUCTS = "products";
+    public static final String TYPE_CATEGORIES = "categories";
+
+    public static final String STATUS_QUEUED = "QUEUED";
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private final String id;
+    private final String type;
+    private final String fileName;
+    private final long estimatedTotalRows;
+    private final int maxErrors;
+    private final AtomicLong rowsProcessed = new AtomicLong();
+    private final AtomicLong rowsFailed = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final List<ImportResult.RowError> errors = new ArrayList<>();
+    private final LocalDateTime createdAt;
+    private volatile String status;
+    private volatile String message;
+    private volatile LocalDateTime startedAt;
+    private volatile LocalDateTime finishedAt;
+
+    public ImportJob(String id, String type, String fileName, long estimatedTotalRows, int maxErrors) {
+        this.id = id;
+        this.type = type;
+        this.fileName = fileName;
+        this.estimatedTotalRows = estimatedTotalRows;
+        this.maxErrors = maxErrors;
+        this.createdAt = LocalDateTime.now();
+        this.status = STATUS_QUEUED;
+    }
+
+    @Override
+    public void onChunkCompleted(int rowsProcessed, int rowsFailed, List<ImportResult.RowError> errors) {
+        this.rowsProcessed.addAndGet(rowsProcessed);
+        this.rowsFailed.addAndGet(rowsFailed);
+        this.errorCount.addAndGet(errors.size());
+        synchronized (this.errors) {
+            for (ImportResult.RowError error : errors) {
+                if (this.errors.size() >= maxErrors) {
+                    break;
+                }
+                this.errors.add(error);
+            }
+        }
+    }
+
+    public void markRunning() {
+        this.startedAt = LocalDateTime.now();
+        this.status = STATUS_RUNNING;
+    }
+
+    public void markCompleted(String message) {
+        this.finishedAt = LocalDateTime.now();
+        this.message = message;
+        this.status = STATUS_COMPLETED;
+    }
+
+    public void markFailed(String message) {
+        this.finishedAt = LocalDateTime.now();
+        this.message = message;
+        this.status = STATUS_FAILED;
+    }
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return STATUS_COMPLETED.equals(status) || STATUS_FAILED.equals(status);
+    }
+
+    /** Errors recorded so far, sorted by row, up to the configured limit */
+    @JsonIgnore
+    public List<ImportResult.RowError> getErrors() {
+        List<ImportResult.RowError> copy;
+        synchronized (errors) {
+            copy = new ArrayList<>(errors);
+        }
+        copy.sort((a, b) -> Integer.compare(a.getRow(), b.getRow()));
+        return copy;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /** Data rows declared by the sheet, or -1 when unknown */
+    public long getEstimatedTotalRows() {
+        return estimatedTotalRows;
+    }
+
+    public long getRowsProcessed() {
+        return rowsProcessed.get();
+    }
+
+    public long getRowsFailed() {
+        return rowsFailed.get();
+    }
+
+    public long getRowsSucceeded() {
+        return rowsProcessed.get() - rowsFailed.get();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    /** Rows per second since the job started */
+    public double getThroughput() {
+        long elapsedMillis = getElapsedMillis();
+        return elapsedMillis > 0 ? rowsProcessed.get() * 1000.0 / elapsedMillis : 0.0;
+    }
+
+    /** Estimated seconds until the job finishes, or null when it cannot be estimated */
+    public Long getEtaSeconds() {
+        if (isFinished()) {
+            return 0L;
+        }
+        double throughput = getThroughput();
+        if (estimatedTotalRows < 0 || throughput <= 0) {
+            return null;
+        }
+        long remaining = Math.max(0, estimatedTotalRows - rowsProcessed.get());
+        return (long) Math.ceil(remaining / throughput);
+    }
+
+    public long getElapsedMillis() {
+        if (startedAt == null) {
+            return 0;
+        }
+        LocalDateTime end = finishedAt != null ? finishedAt : LocalDateTime.now();
+        return Duration.between(startedAt, end).toMillis();
+    }
+}
@@ -0,0 +1,19 @@
+package com.viha.freshmart.service.core;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Optional;
+
+public interface ImportJobService {
+
+    /** Queue an import of the uploaded file and return the job at once */
+    ImportJob submitImport(String type, MultipartFile file);
+
+    /** Look up a job of the given type */
+    Optional<ImportJob> getJob(String type, String jobId);
+
+    /** Write the row errors of a job as an Excel file */
+    void writeErrorSheet(ImportJob job, OutputStream outputStream) throws IOException;
+}
@@ -0,0 +1,15 @@
+package com.viha.freshmart.service.core;
+
+import java.util.List;
+
+/**
+ * Receives progress while an import runs. Chunks are written in parallel, so
+ * implementations are called from several threads and must be thread-safe.
+ */
+public interface ImportProgressListener {
+
+    ImportProgressListener NONE = (rowsProcessed, rowsFailed, errors) -> { };
+
+    /** Called after each chunk is written with the counts and row errors of that chunk */
+    void onChunkCompleted(int rowsProcessed, int rowsFailed, List<ImportResult.RowError> errors);
+}
@@ -0,0 +1,106 @@
+package com.viha.freshmart.service.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of an Excel import: row counts and the errors of rows that were not saved.
+ */
+public class ImportResult {
+
+    private long totalRecords;
+    private long successfulRecords;
+    private long failedRecords;
+    private long durationMillis;
+    private List<RowError> errors;
+
+    public ImportResult() {
+        this.errors = new ArrayList<>();
+    }
+
+    public boolean isSuccess() {
+        return failedRecords == 0;
+    }
+
+    public long getTotalRecords() {
+        return totalRecords;
+    }
+
+    public void setTotalRecords(long totalRecords) {
+        this.totalRecords = totalRecords;
+    }
+
+    public long getSuccessfulRecords() {
+        return successfulRecords;
+    }
+
+    public void setSuccessfulRecords(long successfulRecords) {
+        this.successfulRecords = successfulRecords;
+    }
+
+    public long getFailedRecords() {
+        return failedRecords;
+    }
+
+    public void setFailedRecords(long failedRecords) {
+        this.failedRecords = failedRecords;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public void setDurationMillis(long durationMillis) {
+        this.durationMillis = durationMillis;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<RowError> errors) {
+        this.errors = errors;
+    }
+
+    /**
+     * A row that could not be imported. Row numbers are 1-based as shown in Excel.
+     */
+    public static class RowError {
+        private int row;
+        private String field;
+        private String message;
+
+        public RowError() {
+        }
+
+        public RowError(int row, String field, String message) {
+            this.row = row;
+            this.field = field;
+            this.message = message;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public void setRow(int row) {
+            this.row = row;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public void setField(String field) {
+            this.field = field;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public void setMessage(String message) {
+            this.message = message;
+        }
+    }
+}
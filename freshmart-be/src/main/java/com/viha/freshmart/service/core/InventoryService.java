@@ -0,0 +1,35 @@
+package com.viha.freshmart.service.core;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface InventoryService {
+
+    /**
+     * Takes the quantities off product stock for an order, all or nothing.
+     *
+     * @param quantities      product id to quantity
+     * @param awaitingPayment whether the reservation expires unless committed,
+     *                        otherwise it is committed right away
+     * @throws IllegalStateException when a product does not have enough stock;
+     *                               nothing is reserved then
+     */
+    void reserve(String orderId, Map<String, Integer> quantities, boolean awaitingPayment);
+
+    /** Keeps the order's held reservation for good, once it is paid */
+    void commit(String orderId);
+
+    /** Puts the order's reserved stock back, if it was not already and the order did not ship */
+    void release(String orderId);
+
+    /** The orders shipped; their reservations are kept for good and can no longer be released */
+    void fulfil(Collection<String> orderIds);
+
+    /** Stock of the product was set outright; stock taken ahead for it in memory is dropped */
+    void stockOverwritten(String productId);
+
+    /** Like stockOverwritten, for every product */
+    void allStockOverwritten();
+
+    Map<String, Object> getStats();
+}
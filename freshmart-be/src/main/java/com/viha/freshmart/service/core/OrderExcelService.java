@@ -4,6 +4,8 @@ import com.viha.freshmart.dao.entity.Order;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -38,4 +40,29 @@ public interface OrderExcelService {
      * Get orders summary report in Excel
      */
     ByteArrayResource generateOrdersSummaryReport();
+    
+    /**
+     * Stream all orders as an Excel file directly to the output stream
+     */
+    void writeAllOrdersToExcel(OutputStream outputStream) throws IOException;
+    
+    /**
+     * Stream orders by date range as an Excel file directly to the output stream
+     */
+    void writeOrdersByDateRangeToExcel(LocalDate startDate, LocalDate endDate, OutputStream outputStream) throws IOException;
+    
+    /**
+     * Stream orders by status as an Excel file directly to the output stream
+     */
+    void writeOrdersByStatusToExcel(String status, OutputStream outputStream) throws IOException;
+    
+    /**
+     * Stream orders by customer as an Excel file directly to the output stream
+     */
+    void writeOrdersByCustomerToExcel(String customerId, OutputStream outputStream) throws IOException;
+    
+    /**
+     * Stream orders summary report directly to the output stream
+     */
+    void writeOrdersSummaryReport(OutputStream outputStream) throws IOException;
 }
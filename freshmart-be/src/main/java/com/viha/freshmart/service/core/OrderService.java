@@ -4,25 +4,31 @@ import com.viha.freshmart.dao.entity.Order;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface OrderService {
     
-    List<Order> getAllOrders();
+    /*
+     * List queries read orders as the given type: Order for full documents, or
+     * OrderSummary for just the columns of order lists
+     */
+
+    <T> CursorPage<T> getAllOrders(String sort, String cursor, Integer limit, Class<T> type);
     
     Optional<Order> getOrderById(String id);
     
     Optional<Order> getOrderByOrderNumber(String orderNumber);
     
-    List<Order> getOrdersByCustomer(String customerId);
+    <T> List<T> getOrdersByCustomer(String customerId, Class<T> type);
     
-    List<Order> getOrdersByStatus(String status);
+    <T> List<T> getOrdersByStatus(String status, Class<T> type);
     
-    List<Order> getOrdersByPaymentStatus(String paymentStatus);
+    <T> List<T> getOrdersByPaymentStatus(String paymentStatus, Class<T> type);
     
-    List<Order> getOrdersByCustomerAndStatus(String customerId, String status);
+    <T> List<T> getOrdersByCustomerAndStatus(String customerId, String status, Class<T> type);
     
-    List<Order> getOrdersByDateRange(LocalDateTime startDate, LocalDateTime endDate);
+    <T> List<T> getOrdersByDateRange(LocalDateTime startDate, LocalDateTime endDate, Class<T> type);
     
     Long getOrderCountByStatus(String status);
     
@@ -45,6 +51,21 @@ public interface OrderService {
     Order deliverOrder(String id);
     
     Order cancelOrder(String id, String reason);
+
+    /*
+     * Bulk transitions: each order is moved on its own, so one order that cannot
+     * move does not hold up the others; the result says what happened to each.
+     * Too many ids throw IllegalArgumentException.
+     */
+
+    BulkOrderResult confirmOrders(List<String> ids);
+
+    /** Ships each order with its tracking number, keyed by order id */
+    BulkOrderResult shipOrders(Map<String, String> trackingNumbers);
+
+    BulkOrderResult deliverOrders(List<String> ids);
+
+    BulkOrderResult cancelOrders(List<String> ids, String reason);
     
     void deleteOrder(String id);
     
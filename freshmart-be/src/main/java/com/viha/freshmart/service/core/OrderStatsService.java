@@ -0,0 +1,58 @@
+package com.viha.freshmart.service.core;
+
+import com.viha.freshmart.dao.entity.Order;
+import com.viha.freshmart.dao.entity.OrderStats;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+public interface OrderStatsService {
+
+    String DIMENSION_TOTAL = "total";
+    String DIMENSION_STATUS = "status";
+    String DIMENSION_PAYMENT_STATUS = "paymentStatus";
+    String DIMENSION_PAYMENT_METHOD = "paymentMethod";
+    String DIMENSION_DAY = "day";
+
+    /**
+     * Runs an order write together with the recording of its change, so a
+     * rebuild reads the order either before the write or after the change was
+     * recorded, never in between
+     */
+    <T> T recording(Supplier<T> write);
+
+    /** Add a newly saved order to the counters */
+    void recordOrderCreated(Order order);
+
+    /** Move an order between status buckets after its status was changed */
+    void recordStatusChange(Order order, String previousStatus);
+
+    /** Like recordStatusChange for many orders, in one write; previousStatuses line up with orders */
+    void recordStatusChanges(List<Order> orders, List<String> previousStatuses);
+
+    /** Move an order between payment status buckets after its payment status was changed */
+    void recordPaymentStatusChange(Order order, String previousPaymentStatus);
+
+    /** Move an order between payment method buckets after its payment method was changed */
+    void recordPaymentMethodChange(Order order, String previousPaymentMethod);
+
+    /** Remove a deleted order from the counters */
+    void recordOrderDeleted(Order order);
+
+    /** Counters for a single bucket; an empty bucket is returned when nothing was recorded */
+    OrderStats getStats(String dimension, String key);
+
+    /** All buckets of a dimension */
+    List<OrderStats> getStatsByDimension(String dimension);
+
+    /** Daily buckets between two dates, inclusive */
+    List<OrderStats> getDailyStats(LocalDate startDate, LocalDate endDate);
+
+    /** Order count for a date-time range, read from daily buckets when the range covers whole days */
+    Long getOrderCountByDateRange(LocalDateTime startDate, LocalDateTime endDate);
+
+    /** Recompute every bucket from the orders collection */
+    void rebuildStats();
+}
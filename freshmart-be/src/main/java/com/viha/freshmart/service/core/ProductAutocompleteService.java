@@ -0,0 +1,22 @@
+package com.viha.freshmart.service.core;
+
+import java.util.List;
+import java.util.Map;
+
+public interface ProductAutocompleteService {
+
+    /**
+     * Best completions of what has been typed so far: product names, brands,
+     * category names and popular tags, each with its type and weight
+     *
+     * @throws IllegalArgumentException when limit is less than 1
+     */
+    List<Map<String, Object>> suggest(String prefix, int limit);
+
+    /**
+     * Queue a rebuild of the suggestions from the current catalog
+     */
+    void rebuildAsync();
+
+    Map<String, Object> getStats();
+}
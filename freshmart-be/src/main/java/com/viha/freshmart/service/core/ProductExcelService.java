@@ -4,6 +4,9 @@ import com.viha.freshmart.dao.entity.Product;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 public interface ProductExcelService {
@@ -11,7 +14,12 @@ public interface ProductExcelService {
     /**
      * Import products from Excel file
      */
-    List<Product> importProductsFromExcel(MultipartFile file);
+    ImportResult importProductsFromExcel(MultipartFile file);
+    
+    /**
+     * Import products from an Excel file on disk in parallel chunks, reporting progress per chunk
+     */
+    ImportResult importProductsFromExcel(File file, ImportProgressListener listener);
     
     /**
      * Export products to Excel file
@@ -23,6 +31,11 @@ public interface ProductExcelService {
      */
     ByteArrayResource exportAllProductsToExcel();
     
+    /**
+     * Stream all active products as an Excel file directly to the output stream
+     */
+    void writeAllProductsToExcel(OutputStream outputStream) throws IOException;
+    
     /**
      * Validate Excel file format for products
      */
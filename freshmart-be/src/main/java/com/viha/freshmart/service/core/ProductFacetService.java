@@ -0,0 +1,23 @@
+package com.viha.freshmart.service.core;
+
+import java.util.Map;
+
+public interface ProductFacetService {
+
+    /**
+     * Active products matching the filters, with facet counts, or an IllegalStateException before the index is built
+     */
+    FacetResult search(FacetQuery query);
+
+    /**
+     * Whether the index has been built and can answer searches
+     */
+    boolean isReady();
+
+    /**
+     * Queue a rebuild of the index from the current catalog
+     */
+    void rebuildAsync();
+
+    Map<String, Object> getStats();
+}
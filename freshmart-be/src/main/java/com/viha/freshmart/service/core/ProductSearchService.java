@@ -0,0 +1,36 @@
+package com.viha.freshmart.service.core;
+
+import com.viha.freshmart.dao.entity.Product;
+
+import java.util.List;
+import java.util.Map;
+
+public interface ProductSearchService {
+
+    /**
+     * Ids of the active products matching a free text query, best match first
+     */
+    List<String> search(String query, int limit);
+
+    /**
+     * Whether the index has been built and can answer searches
+     */
+    boolean isReady();
+
+    /**
+     * Add a product to the index or refresh it; inactive products are removed
+     */
+    void indexProduct(Product product);
+
+    /**
+     * Remove a product from the index
+     */
+    void removeProduct(String productId);
+
+    /**
+     * Queue a rebuild of the whole index from the database, e.g. after imports or category changes
+     */
+    void rebuildAsync();
+
+    Map<String, Object> getStats();
+}
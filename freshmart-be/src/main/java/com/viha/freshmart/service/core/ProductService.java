@@ -3,26 +3,29 @@ package com.viha.freshmart.service.core;
 import com.viha.freshmart.dao.entity.Product;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public interface ProductService {
     
-    List<Product> getAllActiveProducts();
+    CursorPage<Product> getAllActiveProducts(String sort, String cursor, Integer limit);
     
     Optional<Product> getProductById(String id);
     
     Optional<Product> getProductBySku(String sku);
     
-    List<Product> getProductsByCategory(String categoryId);
+    CursorPage<Product> getProductsByCategory(String categoryId, String sort, String cursor, Integer limit);
     
-    List<Product> getProductsByBrand(String brand);
+    CursorPage<Product> getProductsByBrand(String brand, String sort, String cursor, Integer limit);
     
-    List<Product> getFeaturedProducts();
+    CursorPage<Product> getFeaturedProducts(String sort, String cursor, Integer limit);
     
-    List<Product> getOrganicProducts();
+    CursorPage<Product> getOrganicProducts(String sort, String cursor, Integer limit);
     
     List<Product> searchProducts(String query);
     
+    Map<String, Object> searchFacets(FacetQuery query);
+    
     List<Product> getLowStockProducts(Integer threshold);
     
     Product createProduct(Product product);
@@ -36,4 +39,8 @@ public interface ProductService {
     Product deactivateProduct(String id);
     
     Product updateStock(String id, Integer quantity);
+    
+    void invalidateCatalogCache();
+    
+    Map<String, Object> getCatalogCacheStats();
 }
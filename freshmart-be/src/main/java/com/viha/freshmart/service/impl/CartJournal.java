@@ -0,0 +1,173 @@
+package com.viha.freshmart.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.viha.freshmart.dao.entity.Cart;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Append-only log of the carts changed in memory but not yet written to the
+ * database, one JSON line per change holding the customer and the whole cart
+ * after it (or no cart when it was cleared). Replaying keeps the last line per
+ * customer, so replaying the same journal twice is harmless.
+ *
+ * Lines are written to the operating system before the change returns, which
+ * survives the process dying; with sync they are also forced to disk, which
+ * survives the machine dying at the cost of a disk flush per change.
+ */
+final class CartJournal implements Closeable {
+
+    /**
+     * One line of the journal
+     */
+    static final class Entry {
+        private String customerId;
+        private Cart cart;
+
+        Entry() {
+        }
+
+        Entry(String customerId, Cart cart) {
+            this.customerId = customerId;
+            this.cart = cart;
+        }
+
+        public String getCustomerId() {
+            return customerId;
+        }
+
+        public void setCustomerId(String customerId) {
+            this.customerId = customerId;
+        }
+
+        public Cart getCart() {
+            return cart;
+        }
+
+        public void setCart(Cart cart) {
+            this.cart = cart;
+        }
+    }
+
+    private final Path path;
+    private final ObjectMapper objectMapper;
+    private final boolean sync;
+    private FileChannel channel;
+
+    CartJournal(Path path, ObjectMapper objectMapper, boolean sync) throws IOException {
+        this.path = path;
+        this.objectMapper = objectMapper;
+        this.sync = sync;
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.channel = open(path);
+    }
+
+    /**
+     * The line recording the given cart state; the customer is left out of the
+     * cart, it is stored by id
+     */
+    String line(String customerId, Cart cart) {
+        try {
+            return objectMapper.writeValueAsString(new Entry(customerId, cart)) + "\n";
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not journal cart of customer " + customerId, e);
+        }
+    }
+
+    /**
+     * Appends a line made by line(). The callback runs while no other line can
+     * be written, so it sees the journal exactly as it is after this line.
+     */
+    synchronized void append(String line, Runnable appended) {
+        try {
+            write(channel, line);
+            if (sync) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write cart journal " + path, e);
+        }
+        appended.run();
+    }
+
+    /**
+     * The last entry per customer, in the order the customers were first
+     * journaled. A torn last line from a crash mid-write ends the replay.
+     */
+    synchronized Collection<Entry> read() throws IOException {
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                Entry entry;
+                try {
+                    entry = objectMapper.readValue(line, Entry.class);
+                } catch (JsonProcessingException e) {
+                    System.err.println("Ignoring unreadable end of cart journal " + path + ": " + e.getOriginalMessage());
+                    break;
+                }
+                entries.put(entry.getCustomerId(), entry);
+            }
+        }
+        return entries.values();
+    }
+
+    /**
+     * Replaces the journal with just the given lines, the ones still needed
+     * after a flush. The new journal is complete on disk before it replaces the
+     * old one, so a crash leaves one or the other.
+     *
+     * @param lines supplies the lines; called while no line can be appended
+     */
+    synchronized void compact(Supplier<Collection<String>> lines) throws IOException {
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (String line : lines.get()) {
+                write(out, line);
+            }
+            out.force(false);
+        }
+        channel.close();
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = open(path);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    // Helper methods
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void write(FileChannel channel, String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
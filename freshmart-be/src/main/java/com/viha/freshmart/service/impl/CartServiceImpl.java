@@ -1,174 +1,320 @@
 package com.viha.freshmart.service.impl;
 
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.bson.types.ObjectId;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import com.mongodb.DBRef;
 import com.viha.freshmart.dao.entity.Cart;
 import com.viha.freshmart.dao.entity.CartItem;
 import com.viha.freshmart.dao.entity.Customer;
+import com.viha.freshmart.dao.entity.Product;
+import com.viha.freshmart.dao.entity.ProductSnapshot;
 import com.viha.freshmart.dao.repository.CartRepository;
 import com.viha.freshmart.dao.repository.CustomerRepository;
 import com.viha.freshmart.service.core.CartService;
+import com.viha.freshmart.service.core.CatalogResponseCache;
+import com.viha.freshmart.service.core.ProductService;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Cart changes are single targeted updates instead of rewriting the whole
+ * cart: $inc or $set on the matching line through the positional operator,
+ * $push for a new line and $pull to remove one. The totals are set in the
+ * same update.
+ *
+ * Every update is conditional on the cart's version and increases it, so two
+ * changes racing on the same cart (double clicks, several tabs) cannot both
+ * apply to the same state. The loser re-reads the cart and tries again. The
+ * state is read as a raw document, without resolving the customer reference.
+ *
+ * Lines embed a ProductSnapshot instead of referring to the product, so a cart
+ * is read without product lookups. The cart records the catalog version its
+ * prices were refreshed at; a cart read or changed after the catalog has
+ * changed first refreshes all its lines with a single $in query on products.
+ *
+ * With app.cart.hot-tier.enabled carts in use are instead held and changed in
+ * memory and written behind by a HotCartStore, see there.
+ */
 @Service
 public class CartServiceImpl implements CartService {
 
+    private static final String CARTS = "carts";
+
+    /**
+     * One cart line as stored: the product it refers to, its quantity and unit price
+     */
+    private static final class Line {
+        private final String productId;
+        private int quantity;
+        private final BigDecimal unitPrice;
+
+        Line(String productId, int quantity, BigDecimal unitPrice) {
+            this.productId = productId;
+            this.quantity = quantity;
+            this.unitPrice = unitPrice;
+        }
+    }
+
+    /**
+     * The stored cart a change is computed from
+     */
+    private static final class CartState {
+        private final Object id;
+        private final Long version;
+        private final Long catalogVersion;
+        private final List<Line> lines;
+
+        CartState(Object id, Long version, Long catalogVersion, List<Line> lines) {
+            this.id = id;
+            this.version = version;
+            this.catalogVersion = catalogVersion;
+            this.lines = lines;
+        }
+
+        Line line(String productId) {
+            for (Line line : lines) {
+                if (line.productId.equals(productId)) {
+                    return line;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A change to one line: extra conditions of the update and the update
+     * itself. The lines of the state have already been changed accordingly.
+     */
+    private static final class Change {
+        private final Criteria criteria;
+        private final Update update;
+
+        Change(Criteria criteria, Update update) {
+            this.criteria = criteria;
+            this.update = update;
+        }
+    }
+
+    private interface ChangeFunction {
+        /**
+         * The change to make, or null when the cart stays as it is
+         */
+        Change apply(CartState state);
+    }
+
     @Autowired
     private CartRepository cartRepository;
 
     @Autowired
     private CustomerRepository customerRepository;
 
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private CatalogResponseCache catalogResponseCache;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.cart.max-update-attempts:10}")
+    private int maxUpdateAttempts;
+
+    @Value("${app.cart.hot-tier.enabled:false}")
+    private boolean hotTierEnabled;
+
+    @Value("${app.cart.hot-tier.flush-interval-ms:1000}")
+    private long flushIntervalMillis;
+
+    @Value("${app.cart.hot-tier.journal-path:data/cart-journal.log}")
+    private String journalPath;
+
+    @Value("${app.cart.hot-tier.journal-sync:false}")
+    private boolean journalSync;
+
+    @Value("${app.cart.hot-tier.max-carts:10000}")
+    private int maxHotCarts;
+
+    @Value("${app.cart.hot-tier.idle-minutes:30}")
+    private long idleMinutes;
+
+    // Null unless the hot tier is enabled
+    private HotCartStore hotCarts;
+
+    @PostConstruct
+    public void initHotCarts() throws IOException {
+        if (hotTierEnabled) {
+            CartJournal journal = new CartJournal(Paths.get(journalPath), objectMapper, journalSync);
+            hotCarts = new HotCartStore(new HotCartBackend(), journal, flushIntervalMillis, maxHotCarts,
+                    idleMinutes * 60_000L);
+        }
+    }
+
+    @PreDestroy
+    public void closeHotCarts() throws IOException {
+        if (hotCarts != null) {
+            hotCarts.close();
+        }
+    }
+
     @Override
     public Optional<Cart> getCartByCustomerId(String customerId) {
-        return cartRepository.findByCustomerId(customerId);
+        if (hotCarts != null) {
+            return hotCarts.get(customerId);
+        }
+        return cartRepository.findByCustomerId(customerId).map(this::refreshPrices);
     }
 
     @Override
     public Cart addItemToCart(String customerId, CartItem cartItem) {
-        Optional<Cart> existingCart = cartRepository.findByCustomerId(customerId);
-        Cart cart;
-        
-        if (existingCart.isPresent()) {
-            cart = existingCart.get();
-        } else {
-            cart = new Cart();
-            Optional<Customer> customer = customerRepository.findById(customerId);
-            if (customer.isPresent()) {
-                cart.setCustomer(customer.get());
-            } else {
-                throw new RuntimeException("Customer not found");
-            }
-            cart.setCartItems(new ArrayList<>());
+        if (cartItem == null || cartItem.getProduct() == null || cartItem.getProduct().getId() == null) {
+            throw new IllegalArgumentException("Cart item must refer to a product");
         }
-
-        // Check if item already exists in cart
-        List<CartItem> cartItems = cart.getCartItems();
-        if (cartItems == null) {
-            cartItems = new ArrayList<>();
-            cart.setCartItems(cartItems);
-        }
-
-        boolean itemExists = false;
-        for (CartItem existingItem : cartItems) {
-            if (existingItem.getProduct().getId().equals(cartItem.getProduct().getId())) {
-                existingItem.setQuantity(existingItem.getQuantity() + cartItem.getQuantity());
-                itemExists = true;
-                break;
-            }
+        if (cartItem.getQuantity() == null || cartItem.getQuantity() <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
         }
+        String productId = cartItem.getProduct().getId();
+        int quantity = cartItem.getQuantity();
+        Product product = productService.getProductById(productId)
+                .orElseThrow(() -> new RuntimeException("Product not found"));
 
-        if (!itemExists) {
-            cartItems.add(cartItem);
+        if (hotCarts != null) {
+            return hotCarts.change(customerId, true, cart -> {
+                CartItem item = item(cart, productId);
+                if (item != null) {
+                    setQuantity(item, item.getQuantity() + quantity);
+                } else {
+                    cart.getCartItems().add(newItem(product, quantity));
+                }
+                changed(cart);
+                return true;
+            });
         }
+        return changeCart(customerId, true, state -> {
+            Line line = state.line(productId);
+            if (line != null) {
+                line.quantity += quantity;
+                return new Change(where("cartItems.product.id").is(productId), new Update()
+                        .inc("cartItems.$.quantity", quantity)
+                        .set("cartItems.$.unitPrice", line.unitPrice)
+                        .set("cartItems.$.totalPrice", line.unitPrice.multiply(BigDecimal.valueOf(line.quantity))));
+            }
 
-        cart.setUpdatedAt(LocalDateTime.now());
-        cart = calculateCartTotals(cart);
-        return cartRepository.save(cart);
+            CartItem newItem = newItem(product, quantity);
+            state.lines.add(new Line(productId, quantity, newItem.getUnitPrice()));
+            // Another request may have added the product since the cart was read
+            return new Change(where("cartItems.product.id").ne(productId),
+                    new Update().push("cartItems", newItem));
+        });
     }
 
     @Override
     public Cart updateCartItem(String customerId, String productId, Integer quantity) {
-        Optional<Cart> cartOpt = cartRepository.findByCustomerId(customerId);
-        if (!cartOpt.isPresent()) {
-            throw new RuntimeException("Cart not found");
+        if (quantity == null) {
+            throw new IllegalArgumentException("Quantity is required");
+        }
+        if (quantity <= 0) {
+            return removeItemFromCart(customerId, productId);
         }
 
-        Cart cart = cartOpt.get();
-        List<CartItem> cartItems = cart.getCartItems();
-        
-        if (cartItems != null) {
-            for (CartItem item : cartItems) {
-                if (item.getProduct().getId().equals(productId)) {
-                    if (quantity <= 0) {
-                        cartItems.remove(item);
-                    } else {
-                        item.setQuantity(quantity);
-                    }
-                    break;
+        if (hotCarts != null) {
+            return hotCart(customerId, cart -> {
+                CartItem item = item(cart, productId);
+                if (item == null) {
+                    return false;
                 }
-            }
+                setQuantity(item, quantity);
+                changed(cart);
+                return true;
+            });
         }
-
-        cart.setUpdatedAt(LocalDateTime.now());
-        cart = calculateCartTotals(cart);
-        return cartRepository.save(cart);
+        return changeCart(customerId, false, state -> {
+            Line line = state.line(productId);
+            if (line == null) {
+                return null;
+            }
+            line.quantity = quantity;
+            return new Change(where("cartItems.product.id").is(productId), new Update()
+                    .set("cartItems.$.quantity", quantity)
+                    .set("cartItems.$.unitPrice", line.unitPrice)
+                    .set("cartItems.$.totalPrice", line.unitPrice.multiply(BigDecimal.valueOf(quantity))));
+        });
     }
 
     @Override
     public Cart removeItemFromCart(String customerId, String productId) {
-        Optional<Cart> cartOpt = cartRepository.findByCustomerId(customerId);
-        if (!cartOpt.isPresent()) {
-            throw new RuntimeException("Cart not found");
-        }
-
-        Cart cart = cartOpt.get();
-        List<CartItem> cartItems = cart.getCartItems();
-        
-        if (cartItems != null) {
-            cartItems.removeIf(item -> item.getProduct().getId().equals(productId));
+        if (hotCarts != null) {
+            return hotCart(customerId, cart -> {
+                if (!cart.getCartItems().removeIf(item -> item.getProduct() != null && productId.equals(item.getProduct().getId()))) {
+                    return false;
+                }
+                changed(cart);
+                return true;
+            });
         }
-
-        cart.setUpdatedAt(LocalDateTime.now());
-        cart = calculateCartTotals(cart);
-        return cartRepository.save(cart);
+        return changeCart(customerId, false, state -> {
+            if (!state.lines.removeIf(line -> line.productId.equals(productId))) {
+                return null;
+            }
+            return new Change(null, new Update()
+                    .pull("cartItems", query(where("product.id").is(productId)).getQueryObject()));
+        });
     }
 
     @Override
     public void clearCart(String customerId) {
+        if (hotCarts != null) {
+            hotCarts.clear(customerId);
+            return;
+        }
         cartRepository.deleteByCustomerId(customerId);
     }
 
     @Override
     public Cart mergeCart(String customerId, Cart guestCart) {
-        Optional<Cart> existingCartOpt = cartRepository.findByCustomerId(customerId);
-        
-        if (!existingCartOpt.isPresent()) {
-            // If no existing cart, create new one for customer
-            Optional<Customer> customer = customerRepository.findById(customerId);
-            if (customer.isPresent()) {
-                guestCart.setCustomer(customer.get());
-                guestCart.setUpdatedAt(LocalDateTime.now());
-                return cartRepository.save(guestCart);
-            } else {
-                throw new RuntimeException("Customer not found");
-            }
-        }
-
-        Cart existingCart = existingCartOpt.get();
-        List<CartItem> existingItems = existingCart.getCartItems();
-        List<CartItem> guestItems = guestCart.getCartItems();
-
-        if (existingItems == null) {
-            existingItems = new ArrayList<>();
-            existingCart.setCartItems(existingItems);
-        }
-
-        if (guestItems != null) {
-            for (CartItem guestItem : guestItems) {
-                boolean itemExists = false;
-                for (CartItem existingItem : existingItems) {
-                    if (existingItem.getProduct().getId().equals(guestItem.getProduct().getId())) {
-                        existingItem.setQuantity(existingItem.getQuantity() + guestItem.getQuantity());
-                        itemExists = true;
-                        break;
-                    }
-                }
-                if (!itemExists) {
-                    existingItems.add(guestItem);
-                }
+        // Each guest line is added like any other item, so lines of the same product are combined
+        Cart cart = null;
+        if (guestCart != null && guestCart.getCartItems() != null) {
+            for (CartItem guestItem : guestCart.getCartItems()) {
+                cart = addItemToCart(customerId, guestItem);
             }
         }
-
-        existingCart.setUpdatedAt(LocalDateTime.now());
-        existingCart = calculateCartTotals(existingCart);
-        return cartRepository.save(existingCart);
+        if (cart == null) {
+            cart = hotCarts != null ? hotCarts.change(customerId, true, held -> false) : findOrCreateCart(customerId);
+        }
+        return cart;
     }
 
     @Override
@@ -183,8 +329,12 @@ public class CartServiceImpl implements CartService {
         int totalItems = 0;
 
         for (CartItem item : cart.getCartItems()) {
-            if (item.getProduct() != null && item.getProduct().getPrice() != null) {
-                BigDecimal itemTotal = item.getProduct().getPrice().multiply(BigDecimal.valueOf(item.getQuantity()));
+            BigDecimal unitPrice = item.getUnitPrice();
+            if (unitPrice == null && item.getProduct() != null) {
+                unitPrice = item.getProduct().getPrice();
+            }
+            if (unitPrice != null) {
+                BigDecimal itemTotal = unitPrice.multiply(BigDecimal.valueOf(item.getQuantity()));
                 totalAmount = totalAmount.add(itemTotal);
                 totalItems += item.getQuantity();
             }
@@ -194,4 +344,289 @@ public class CartServiceImpl implements CartService {
         cart.setTotalItems(totalItems);
         return cart;
     }
+
+    // Helper methods
+
+    /**
+     * Applies a change to the customer's cart as one update conditional on the
+     * version it was computed from, re-reading the cart and recomputing the
+     * change whenever another update got there first.
+     *
+     * @param create whether to create the cart when the customer has none
+     */
+    private Cart changeCart(String customerId, boolean create, ChangeFunction changeFunction) {
+        for (int attempt = 0; attempt < maxUpdateAttempts; attempt++) {
+            CartState state = readCart(customerId);
+            if (state == null) {
+                if (!create) {
+                    throw new RuntimeException("Cart not found");
+                }
+                findOrCreateCart(customerId);
+                state = readCart(customerId);
+            }
+            if (!state.lines.isEmpty() && !Objects.equals(state.catalogVersion, catalogResponseCache.getCatalogVersion())) {
+                // Changes are computed from current prices, and legacy lines become snapshots first
+                cartRepository.findByCustomerId(customerId).ifPresent(this::refreshPrices);
+                state = readCart(customerId);
+            }
+
+            Change change = changeFunction.apply(state);
+            if (change == null) {
+                return cartRepository.findByCustomerId(customerId)
+                        .orElseThrow(() -> new RuntimeException("Cart not found"));
+            }
+
+            BigDecimal totalAmount = BigDecimal.ZERO;
+            int totalItems = 0;
+            for (Line line : state.lines) {
+                totalAmount = totalAmount.add(line.unitPrice.multiply(BigDecimal.valueOf(line.quantity)));
+                totalItems += line.quantity;
+            }
+
+            Query query = query(where("_id").is(state.id).and("version").is(state.version));
+            if (change.criteria != null) {
+                query.addCriteria(change.criteria);
+            }
+            Update update = change.update
+                    .set("totalAmount", totalAmount)
+                    .set("totalItems", totalItems)
+                    .set("updatedAt", LocalDateTime.now())
+                    .inc("version", 1);
+            Cart updated = mongoTemplate.findAndModify(query, update,
+                    FindAndModifyOptions.options().returnNew(true), Cart.class);
+            if (updated != null) {
+                return updated;
+            }
+        }
+        throw new OptimisticLockingFailureException("Cart of customer " + customerId
+                + " was changed concurrently " + maxUpdateAttempts + " times, giving up");
+    }
+
+    /**
+     * Brings the line snapshots and prices of a cart up to date when the
+     * catalog has changed since they were last refreshed: one query for all its
+     * products, one conditional update. When the cart changed in between, the
+     * refreshed cart is still returned and the next read refreshes it again.
+     */
+    private Cart refreshPrices(Cart cart) {
+        if (!applyCatalogPrices(cart)) {
+            return cart;
+        }
+
+        Query cartQuery = query(where("_id").is(cart.getId()).and("version").is(cart.getVersion()));
+        Update update = new Update()
+                .set("cartItems", cart.getCartItems())
+                .set("totalAmount", cart.getTotalAmount())
+                .set("totalItems", cart.getTotalItems())
+                .set("catalogVersion", cart.getCatalogVersion())
+                .inc("version", 1);
+        if (mongoTemplate.updateFirst(cartQuery, update, Cart.class).getModifiedCount() > 0) {
+            cart.setVersion(cart.getVersion() != null ? cart.getVersion() + 1 : 1);
+        }
+        return cart;
+    }
+
+    /**
+     * Refreshes the line snapshots and prices of a cart in memory when the
+     * catalog has changed since, returning whether it did
+     */
+    private boolean applyCatalogPrices(Cart cart) {
+        long catalogVersion = catalogResponseCache.getCatalogVersion();
+        if (Objects.equals(cart.getCatalogVersion(), catalogVersion)
+                || cart.getCartItems() == null || cart.getCartItems().isEmpty()) {
+            return false;
+        }
+
+        Set<String> productIds = new HashSet<>();
+        for (CartItem item : cart.getCartItems()) {
+            if (item.getProduct() != null && item.getProduct().getId() != null) {
+                productIds.add(item.getProduct().getId());
+            }
+        }
+        Query productQuery = query(where("id").in(productIds));
+        productQuery.fields().include("name", "price", "discountPrice", "unit", "mainImage");
+        Map<String, Product> products = new HashMap<>();
+        for (Product product : mongoTemplate.find(productQuery, Product.class)) {
+            products.put(product.getId(), product);
+        }
+
+        for (CartItem item : cart.getCartItems()) {
+            // Lines of deleted products keep their last snapshot
+            Product product = item.getProduct() != null ? products.get(item.getProduct().getId()) : null;
+            if (product != null) {
+                BigDecimal unitPrice = product.getPrice() != null ? product.getPrice() : BigDecimal.ZERO;
+                item.setProduct(ProductSnapshot.of(product));
+                item.setUnitPrice(unitPrice);
+                item.setTotalPrice(unitPrice.multiply(BigDecimal.valueOf(item.getQuantity())));
+            }
+        }
+        calculateCartTotals(cart);
+        cart.setCatalogVersion(catalogVersion);
+        return true;
+    }
+
+    /**
+     * The stored cart as a raw document, without resolving its references
+     */
+    private CartState readCart(String customerId) {
+        Query query = query(where("customer.$id").is(documentId(customerId)));
+        query.fields().include("cartItems", "version", "catalogVersion");
+        Document cart = mongoTemplate.findOne(query, Document.class, CARTS);
+        if (cart == null) {
+            return null;
+        }
+
+        List<Line> lines = new ArrayList<>();
+        List<Document> items = cart.getList("cartItems", Document.class);
+        if (items != null) {
+            for (Document item : items) {
+                Object product = item.get("product");
+                String productId;
+                if (product instanceof Document) {
+                    productId = String.valueOf(((Document) product).get("_id"));
+                } else if (product instanceof DBRef) {
+                    productId = ((DBRef) product).getId().toString();
+                } else {
+                    continue;
+                }
+                Number quantity = item.get("quantity", Number.class);
+                lines.add(new Line(productId, quantity != null ? quantity.intValue() : 0,
+                        unitPrice(productId, item.get("unitPrice"))));
+            }
+        }
+        Number version = cart.get("version", Number.class);
+        Number catalogVersion = cart.get("catalogVersion", Number.class);
+        return new CartState(cart.get("_id"), version != null ? version.longValue() : null,
+                catalogVersion != null ? catalogVersion.longValue() : null, lines);
+    }
+
+    /**
+     * The stored unit price of a line; lines written before unit prices were
+     * kept use the product's current price
+     */
+    private BigDecimal unitPrice(String productId, Object stored) {
+        if (stored instanceof Decimal128) {
+            return ((Decimal128) stored).bigDecimalValue();
+        }
+        if (stored instanceof String) {
+            return new BigDecimal((String) stored);
+        }
+        if (stored instanceof Number) {
+            return new BigDecimal(stored.toString());
+        }
+        return productService.getProductById(productId)
+                .map(Product::getPrice)
+                .orElse(BigDecimal.ZERO);
+    }
+
+    /**
+     * Creates the customer's empty cart unless it exists. A unique index on the
+     * customer makes a concurrent creation fail, which then reads the winner's cart.
+     */
+    private Cart findOrCreateCart(String customerId) {
+        Optional<Cart> existingCart = cartRepository.findByCustomerId(customerId);
+        if (existingCart.isPresent()) {
+            return existingCart.get();
+        }
+        Optional<Customer> customer = customerRepository.findById(customerId);
+        if (!customer.isPresent()) {
+            throw new RuntimeException("Customer not found");
+        }
+        Cart cart = new Cart();
+        cart.setCustomer(customer.get());
+        cart.setCartItems(new ArrayList<>());
+        cart.setCatalogVersion(catalogResponseCache.getCatalogVersion());
+        try {
+            return cartRepository.insert(cart);
+        } catch (DuplicateKeyException e) {
+            return cartRepository.findByCustomerId(customerId)
+                    .orElseThrow(() -> new RuntimeException("Cart not found"));
+        }
+    }
+
+    /**
+     * A change to a held cart that must exist, see hotCarts
+     */
+    private Cart hotCart(String customerId, HotCartStore.Mutation mutation) {
+        Cart cart = hotCarts.change(customerId, false, mutation);
+        if (cart == null) {
+            throw new RuntimeException("Cart not found");
+        }
+        return cart;
+    }
+
+    private static CartItem item(Cart cart, String productId) {
+        for (CartItem item : cart.getCartItems()) {
+            if (item.getProduct() != null && productId.equals(item.getProduct().getId())) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    private static CartItem newItem(Product product, int quantity) {
+        BigDecimal unitPrice = product.getPrice() != null ? product.getPrice() : BigDecimal.ZERO;
+        CartItem item = new CartItem();
+        item.setProduct(ProductSnapshot.of(product));
+        item.setQuantity(quantity);
+        item.setUnitPrice(unitPrice);
+        item.setTotalPrice(unitPrice.multiply(BigDecimal.valueOf(quantity)));
+        return item;
+    }
+
+    private static void setQuantity(CartItem item, int quantity) {
+        BigDecimal unitPrice = item.getUnitPrice() != null ? item.getUnitPrice() : BigDecimal.ZERO;
+        item.setQuantity(quantity);
+        item.setTotalPrice(unitPrice.multiply(BigDecimal.valueOf(quantity)));
+    }
+
+    private void changed(Cart cart) {
+        calculateCartTotals(cart);
+        cart.setUpdatedAt(LocalDateTime.now());
+    }
+
+    /**
+     * How the hot tier loads and writes carts. It owns the carts it holds, so
+     * its writes are not conditional on the version.
+     */
+    private class HotCartBackend implements HotCartStore.Backend {
+
+        @Override
+        public Cart load(String customerId, boolean create) {
+            Cart cart = create ? findOrCreateCart(customerId) : cartRepository.findByCustomerId(customerId).orElse(null);
+            if (cart != null && cart.getCartItems() == null) {
+                cart.setCartItems(new ArrayList<>());
+            }
+            return cart;
+        }
+
+        @Override
+        public boolean refresh(Cart cart) {
+            return applyCatalogPrices(cart);
+        }
+
+        @Override
+        public void write(Cart cart) {
+            // No upsert: a cart deleted meanwhile stays deleted
+            mongoTemplate.updateFirst(query(where("_id").is(cart.getId())), new Update()
+                    .set("cartItems", cart.getCartItems())
+                    .set("totalAmount", cart.getTotalAmount())
+                    .set("totalItems", cart.getTotalItems())
+                    .set("catalogVersion", cart.getCatalogVersion())
+                    .set("updatedAt", cart.getUpdatedAt())
+                    .inc("version", 1), Cart.class);
+        }
+
+        @Override
+        public void delete(String customerId) {
+            cartRepository.deleteByCustomerId(customerId);
+        }
+    }
+
+    /**
+     * An id as it is stored in references: ObjectId when it is one, the string otherwise
+     */
+    private static Object documentId(String id) {
+        return ObjectId.isValid(id) ? new ObjectId(id) : id;
+    }
 }
@@ -0,0 +1,118 @@
+package com.viha.freshmart.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.viha.freshmart.service.core.CachedResponse;
+import com.viha.freshmart.service.core.CatalogResponseCache;
+import com.viha.freshmart.service.core.CursorPage;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized responses of the hot catalog endpoints. Each response is
+ * serialized and compressed once per catalog version and then served as
+ * bytes, so a cache hit costs neither Jackson nor gzip. The key holds the
+ * catalog version, which product and category writes increase; responses of
+ * older versions are dropped at the same time.
+ *
+ * The ETag is a hash of the body rather than the version, so a client keeps
+ * its copy across catalog changes that did not alter this response.
+ */
+@Service
+public class CatalogResponseCacheImpl implements CatalogResponseCache {
+
+    // Compressing is paid once per cached response, so trade CPU for size
+    private static final int GZIP_LEVEL = Deflater.BEST_COMPRESSION;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.catalog.response-cache.max-entries:500}")
+    private int maxEntries;
+
+    @Value("${app.catalog.cache.ttl-seconds:300}")
+    private long cacheTtlSeconds;
+
+    // Starts from the clock so versions stored with carts are never reused after a restart
+    private final AtomicLong catalogVersion = new AtomicLong(System.currentTimeMillis());
+    private LruCache<String, CachedResponse> responses;
+
+    @PostConstruct
+    public void initCache() {
+        responses = new LruCache<>(maxEntries, cacheTtlSeconds * 1000);
+    }
+
+    @Override
+    public CachedResponse get(String endpoint, Map<String, ?> params, Supplier<?> loader) {
+        // Sorted, so the same parameters always make the same key
+        String key = catalogVersion.get() + " " + endpoint + "?" + new TreeMap<>(params);
+        return responses.get(key, k -> serialize(loader.get()));
+    }
+
+    @Override
+    public long getCatalogVersion() {
+        return catalogVersion.get();
+    }
+
+    @Override
+    public void catalogChanged() {
+        catalogVersion.incrementAndGet();
+        responses.invalidateAll();
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = responses.getStats();
+        stats.put("catalogVersion", catalogVersion.get());
+        return stats;
+    }
+
+    // Helper methods
+
+    private CachedResponse serialize(Object value) {
+        String nextCursor = null;
+        byte[] body;
+        try {
+            if (value instanceof byte[] json) {
+                body = json;
+            } else if (value instanceof CursorPage<?> page) {
+                body = objectMapper.writeValueAsBytes(page.getItems());
+                nextCursor = page.getNextCursor();
+            } else {
+                body = objectMapper.writeValueAsBytes(value);
+            }
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize response", e);
+        }
+        byte[] gzipBody = gzip(body);
+        String etag = "W/\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+        return new CachedResponse(body, gzipBody.length < body.length ? gzipBody : null, etag, nextCursor);
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(GZIP_LEVEL);
+            }
+        }) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
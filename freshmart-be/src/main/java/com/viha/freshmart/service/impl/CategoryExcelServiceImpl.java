@@ -2,20 +2,39 @@ package com.viha.freshmart.service.impl;
 
 import com.viha.freshmart.dao.entity.Category;
 import com.viha.freshmart.dao.repository.CategoryRepository;
+import com.mongodb.bulk.BulkWriteError;
 import com.viha.freshmart.service.core.CategoryExcelService;
+import com.viha.freshmart.service.core.CategoryService;
+import com.viha.freshmart.service.core.ImportProgressListener;
+import com.viha.freshmart.service.core.ImportResult;
+import com.viha.freshmart.service.core.ProductService;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 @Service
 public class CategoryExcelServiceImpl implements CategoryExcelService {
@@ -23,34 +42,52 @@ public class CategoryExcelServiceImpl implements CategoryExcelService {
     @Autowired
     private CategoryRepository categoryRepository;
     
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private CategoryService categoryService;
+    
+    @Autowired
+    private ProductService productService;
+    
+    @Autowired
+    @Qualifier("importExecutor")
+    private Executor importExecutor;
+    
+    @Value("${app.import.chunk-size:1000}")
+    private int importChunkSize;
+    
+    @Value("${app.import.max-in-flight-chunks:8}")
+    private int maxInFlightChunks;
+    
+    @Value("${app.import.max-errors:1000}")
+    private int maxImportErrors;
+    
     private static final String[] CATEGORY_HEADERS = {
         "Name", "Description", "Slug", "Image", "Icon", "Parent Category", 
         "Sort Order", "Meta Title", "Meta Description", "Is Active", "UID"
     };
     
     @Override
-    public List<Category> importCategoriesFromExcel(MultipartFile file) {
-        List<Category> categories = new ArrayList<>();
-        
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheetAt(0);
-            Iterator<Row> rows = sheet.iterator();
-            
-            // Skip header row
-            if (rows.hasNext()) {
-                rows.next();
-            }
-            
-            while (rows.hasNext()) {
-                Row currentRow = rows.next();
-                Category category = createCategoryFromRow(currentRow);
-                if (category != null) {
-                    categories.add(category);
-                }
-            }
+    public ImportResult importCategoriesFromExcel(MultipartFile file) {
+        Path tempFile = null;
+        try {
+            tempFile = StreamingSheetReader.copyToTempFile(file);
+            return importCategoriesFromExcel(tempFile.toFile(), ImportProgressListener.NONE);
             
-            // Save all categories
-            return categoryRepository.saveAll(categories);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse Excel file: " + e.getMessage(), e);
+        } finally {
+            deleteTempFile(tempFile);
+        }
+    }
+    
+    @Override
+    public ImportResult importCategoriesFromExcel(File file, ImportProgressListener listener) {
+        ChunkedImport chunkedImport = new ChunkedImport(importExecutor, importChunkSize, maxInFlightChunks, maxImportErrors);
+        try {
+            return chunkedImport.run(file, CATEGORY_HEADERS.length, this::writeCategoryChunk, listener);
             
         } catch (IOException e) {
             throw new RuntimeException("Failed to parse Excel file: " + e.getMessage(), e);
@@ -103,18 +140,18 @@ public class CategoryExcelServiceImpl implements CategoryExcelService {
             return false;
         }
         
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheetAt(0);
-            Row headerRow = sheet.getRow(0);
+        Path tempFile = null;
+        try {
+            tempFile = StreamingSheetReader.copyToTempFile(file);
+            String[] header = StreamingSheetReader.readHeader(tempFile.toFile(), CATEGORY_HEADERS.length);
             
-            if (headerRow == null) {
+            if (header == null) {
                 return false;
             }
             
             // Validate header columns
             for (int i = 0; i < CATEGORY_HEADERS.length; i++) {
-                Cell cell = headerRow.getCell(i);
-                if (cell == null || !CATEGORY_HEADERS[i].equals(getCellStringValue(cell))) {
+                if (!CATEGORY_HEADERS[i].equals(header[i])) {
                     return false;
                 }
             }
@@ -123,6 +160,8 @@ public class CategoryExcelServiceImpl implements CategoryExcelService {
             
         } catch (IOException e) {
             return false;
+        } finally {
+            deleteTempFile(tempFile);
         }
     }
     
@@ -194,64 +233,116 @@ public class CategoryExcelServiceImpl implements CategoryExcelService {
         row.createCell(10).setCellValue(category.getId());
     }
     
-    private Category createCategoryFromRow(Row row) {
-        try {
-            String name = getCellStringValue(row.getCell(0));
-            if (name == null || name.trim().isEmpty()) {
-                return null; // Skip rows without name
+    /**
+     * Converts and writes one chunk with a single unordered bulk. Rows with a UID
+     * replace that category, rows with a slug replace the category with that slug,
+     * and the rest are inserted.
+     */
+    private List<ImportResult.RowError> writeCategoryChunk(List<ChunkedImport.SheetRow> rows) {
+        List<ImportResult.RowError> errors = new ArrayList<>();
+        Map<String, Category> keyedCategories = new LinkedHashMap<>();
+        Map<String, Integer> keyedRows = new LinkedHashMap<>();
+        List<Category> newCategories = new ArrayList<>();
+        List<Integer> newRows = new ArrayList<>();
+        
+        for (ChunkedImport.SheetRow row : rows) {
+            Category category;
+            try {
+                category = createCategoryFromRow(row);
+            } catch (ChunkedImport.RowException e) {
+                errors.add(new ImportResult.RowError(row.getRowNumber(), e.getField(), e.getMessage()));
+                continue;
             }
             
-            Category category = new Category();
-            category.setName(name.trim());
-            category.setDescription(getCellStringValue(row.getCell(1)));
-            category.setSlug(getCellStringValue(row.getCell(2)));
-            category.setImage(getCellStringValue(row.getCell(3)));
-            category.setIcon(getCellStringValue(row.getCell(4)));
-            category.setParentCategoryId(getCellStringValue(row.getCell(5)));
-            
-            // Sort Order
-            Cell sortOrderCell = row.getCell(6);
-            if (sortOrderCell != null) {
-                category.setSortOrder((int) sortOrderCell.getNumericCellValue());
+            String key = category.getId() != null ? "id:" + category.getId()
+                    : category.getSlug() != null && !category.getSlug().trim().isEmpty() ? "slug:" + category.getSlug() : null;
+            if (key != null) {
+                keyedCategories.remove(key);
+                keyedCategories.put(key, category);
+                keyedRows.put(key, row.getRowNumber());
+            } else {
+                newCategories.add(category);
+                newRows.add(row.getRowNumber());
             }
-            
-            category.setMetaTitle(getCellStringValue(row.getCell(7)));
-            category.setMetaDescription(getCellStringValue(row.getCell(8)));
-            
-            // Is Active
-            String isActiveStr = getCellStringValue(row.getCell(9));
-            category.setIsActive(isActiveStr != null && 
-                              (isActiveStr.equalsIgnoreCase("TRUE") || isActiveStr.equalsIgnoreCase("1")));
-            
-            category.setCreatedAt(LocalDateTime.now());
-            category.setUpdatedAt(LocalDateTime.now());
-            category.setId(getCellStringValue(row.getCell(10)));
-            
-            return category;
-            
-        } catch (Exception e) {
-            // Log error and skip this row
-            System.err.println("Error processing row: " + e.getMessage());
-            return null;
         }
+        
+        if (keyedCategories.isEmpty() && newCategories.isEmpty()) {
+            return errors;
+        }
+        
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Category.class);
+        List<Integer> operationRows = new ArrayList<>();
+        for (Map.Entry<String, Category> entry : keyedCategories.entrySet()) {
+            Category category = entry.getValue();
+            if (category.getId() != null) {
+                bulkOps.replaceOne(query(where("id").is(category.getId())), category, FindAndReplaceOptions.options().upsert());
+            } else {
+                bulkOps.replaceOne(query(where("slug").is(category.getSlug())), category, FindAndReplaceOptions.options().upsert());
+            }
+            operationRows.add(keyedRows.get(entry.getKey()));
+        }
+        for (int i = 0; i < newCategories.size(); i++) {
+            bulkOps.insert(newCategories.get(i));
+            operationRows.add(newRows.get(i));
+        }
+        
+        try {
+            bulkOps.execute();
+        } catch (BulkOperationException e) {
+            // Unordered bulk: everything except the reported operations was written
+            for (BulkWriteError error : e.getErrors()) {
+                errors.add(new ImportResult.RowError(operationRows.get(error.getIndex()), null, error.getMessage()));
+            }
+        }
+        categoryService.refreshCategoryTree();
+        // Cached products embed their resolved category
+        productService.invalidateCatalogCache();
+        
+        return errors;
     }
     
-    private String getCellStringValue(Cell cell) {
-        if (cell == null) {
-            return null;
+    private Category createCategoryFromRow(ChunkedImport.SheetRow row) {
+        if (row.isBlank(0)) {
+            throw new ChunkedImport.RowException("Name", "Name is required");
+        }
+        
+        Category category = new Category();
+        category.setName(row.text(0).trim());
+        category.setDescription(row.text(1));
+        category.setSlug(row.text(2));
+        category.setImage(row.text(3));
+        category.setIcon(row.text(4));
+        category.setParentCategoryId(row.text(5));
+        
+        // Sort Order
+        Integer sortOrder = row.integer(6, "Sort Order");
+        if (sortOrder != null) {
+            category.setSortOrder(sortOrder);
+        }
+        
+        category.setMetaTitle(row.text(7));
+        category.setMetaDescription(row.text(8));
+        
+        // Is Active
+        category.setIsActive(row.flag(9));
+        
+        category.setCreatedAt(LocalDateTime.now());
+        category.setUpdatedAt(LocalDateTime.now());
+        if (!row.isBlank(10)) {
+            category.setId(row.text(10).trim());
         }
         
-        switch (cell.getCellType()) {
-            case STRING:
-                return cell.getStringCellValue();
-            case NUMERIC:
-                return String.valueOf((long) cell.getNumericCellValue());
-            case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
-            case FORMULA:
-                return cell.getCellFormula();
-            default:
-                return "";
+        return category;
+    }
+    
+    private void deleteTempFile(Path tempFile) {
+        if (tempFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            System.err.println("Could not delete temp file " + tempFile + ": " + e.getMessage());
         }
     }
 }
@@ -1,16 +1,30 @@
 package com.viha.freshmart.service.impl;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
 
 import com.viha.freshmart.dao.entity.Category;
 import com.viha.freshmart.dao.repository.CategoryRepository;
+import com.viha.freshmart.service.core.CatalogResponseCache;
 import com.viha.freshmart.service.core.CategoryService;
+import com.viha.freshmart.service.core.CategoryTree;
+import com.viha.freshmart.service.core.ProductAutocompleteService;
+import com.viha.freshmart.service.core.ProductService;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 
 @Service
 public class CategoryServiceImpl implements CategoryService {
@@ -18,17 +32,67 @@ public class CategoryServiceImpl implements CategoryService {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductAutocompleteService productAutocompleteService;
+
+    @Autowired
+    private CatalogResponseCache catalogResponseCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    @Qualifier("catalogIndexExecutor")
+    private Executor catalogIndexExecutor;
+
+    // Replaced as a whole on every category write, never modified in place
+    private volatile CategoryTree categoryTree;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildCategoryTreeOnStartup() {
+        catalogIndexExecutor.execute(() -> {
+            try {
+                getCategoryTree();
+            } catch (RuntimeException e) {
+                System.err.println("Failed to build category tree: " + e.getMessage());
+            }
+        });
+    }
+
     @Override
     public List<Category> getAllActiveCategories() {
-        List<Category> response = new ArrayList<>();
-        List<Category> categories = categoryRepository.findByIsActiveTrueOrderBySortOrderAsc();
-        for(Category cat: categories) {
-            if(cat.getParentCategoryId().isEmpty()) {
-                cat.setSubCategory(getSubCategories(cat.getId()));
-                response.add(cat);
+        return getCategoryTree().getCategories();
+    }
+
+    @Override
+    public CategoryTree getCategoryTree() {
+        CategoryTree tree = categoryTree;
+        if (tree == null) {
+            synchronized (this) {
+                tree = categoryTree;
+                if (tree == null) {
+                    tree = buildCategoryTree();
+                    categoryTree = tree;
+                }
             }
         }
-        return response;
+        return tree;
+    }
+
+    @Override
+    public synchronized void refreshCategoryTree() {
+        try {
+            categoryTree = buildCategoryTree();
+            catalogResponseCache.catalogChanged();
+        } catch (RuntimeException e) {
+            // The write itself succeeded; the next read rebuilds the tree
+            categoryTree = null;
+            catalogResponseCache.catalogChanged();
+            System.err.println("Failed to refresh category tree: " + e.getMessage());
+        }
     }
 
     @Override
@@ -60,7 +124,10 @@ public class CategoryServiceImpl implements CategoryService {
     public Category createCategory(Category category) {
         category.setCreatedAt(LocalDateTime.now());
         category.setUpdatedAt(LocalDateTime.now());
-        return categoryRepository.save(category);
+        Category savedCategory = categoryRepository.save(category);
+        refreshCategoryTree();
+        productAutocompleteService.rebuildAsync();
+        return savedCategory;
     }
 
     @Override
@@ -76,7 +143,11 @@ public class CategoryServiceImpl implements CategoryService {
             existing.setSortOrder(category.getSortOrder());
             existing.setParentCategoryId(category.getParentCategoryId());
             existing.setUpdatedAt(LocalDateTime.now());
-            return categoryRepository.save(existing);
+            Category savedCategory = categoryRepository.save(existing);
+            // Cached products embed their resolved category
+            refreshCategoryTree();
+            productService.invalidateCatalogCache();
+            return savedCategory;
         } else {
             throw new RuntimeException("Category not found with id: " + id);
         }
@@ -86,6 +157,8 @@ public class CategoryServiceImpl implements CategoryService {
     public void deleteCategory(String id) {
         if (categoryRepository.existsById(id)) {
             categoryRepository.deleteById(id);
+            refreshCategoryTree();
+            productService.invalidateCatalogCache();
         } else {
             throw new RuntimeException("Category not found with id: " + id);
         }
@@ -98,7 +171,10 @@ public class CategoryServiceImpl implements CategoryService {
             Category category = categoryOpt.get();
             category.setIsActive(true);
             category.setUpdatedAt(LocalDateTime.now());
-            return categoryRepository.save(category);
+            Category savedCategory = categoryRepository.save(category);
+            refreshCategoryTree();
+            productService.invalidateCatalogCache();
+            return savedCategory;
         } else {
             throw new RuntimeException("Category not found with id: " + id);
         }
@@ -111,9 +187,50 @@ public class CategoryServiceImpl implements CategoryService {
             Category category = categoryOpt.get();
             category.setIsActive(false);
             category.setUpdatedAt(LocalDateTime.now());
-            return categoryRepository.save(category);
+            Category savedCategory = categoryRepository.save(category);
+            refreshCategoryTree();
+            productService.invalidateCatalogCache();
+            return savedCategory;
         } else {
             throw new RuntimeException("Category not found with id: " + id);
         }
     }
+
+    // Helper methods
+
+    /**
+     * Builds the tree from one query; categories arrive in sort order, so each
+     * level keeps that order. Children of inactive or missing parents are left out.
+     */
+    CategoryTree buildCategoryTree() {
+        List<Category> categories = categoryRepository.findByIsActiveTrueOrderBySortOrderAsc();
+
+        Map<String, List<Category>> childrenByParent = new HashMap<>();
+        List<Category> topLevel = new ArrayList<>();
+        for (Category category : categories) {
+            String parentId = category.getParentCategoryId();
+            if (parentId == null || parentId.isEmpty()) {
+                topLevel.add(category);
+            } else {
+                childrenByParent.computeIfAbsent(parentId, k -> new ArrayList<>()).add(category);
+            }
+        }
+        for (Category category : categories) {
+            List<Category> children = childrenByParent.get(category.getId());
+            if (children != null) {
+                category.setSubCategory(Collections.unmodifiableList(children));
+            } else if (category.getParentCategoryId() == null || category.getParentCategoryId().isEmpty()) {
+                category.setSubCategory(List.of());
+            }
+        }
+        List<Category> roots = Collections.unmodifiableList(topLevel);
+
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(roots);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize category tree", e);
+        }
+        return new CategoryTree(roots, json, "\"" + DigestUtils.md5DigestAsHex(json) + "\"");
+    }
 }
@@ -0,0 +1,235 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.service.core.ImportProgressListener;
+import com.viha.freshmart.service.core.ImportResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs an Excel import in fixed-size chunks. The calling thread streams rows from
+ * the sheet and hands each full chunk to the executor; a semaphore caps the chunks
+ * in flight so a large sheet never sits in memory. Each chunk is converted and
+ * written independently, so one bad chunk does not lose the rest of the file.
+ */
+final class ChunkedImport {
+
+    /** Converts and writes one chunk, returning the errors of rows that were not saved */
+    interface ChunkProcessor {
+        List<ImportResult.RowError> process(List<SheetRow> rows);
+    }
+
+    private final Executor executor;
+    private final int chunkSize;
+    private final int maxInFlightChunks;
+    private final int maxErrors;
+
+    ChunkedImport(Executor executor, int chunkSize, int maxInFlightChunks, int maxErrors) {
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.maxInFlightChunks = maxInFlightChunks;
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * Imports every row after the header row of the first sheet.
+     */
+    ImportResult run(File file, int columnCount, ChunkProcessor processor, ImportProgressListener listener) throws IOException {
+        long startTime = System.currentTimeMillis();
+
+        Semaphore permits = new Semaphore(maxInFlightChunks);
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        AtomicLong processedRows = new AtomicLong();
+        AtomicLong failedRows = new AtomicLong();
+        AtomicInteger errorCount = new AtomicInteger();
+        ConcurrentLinkedQueue<ImportResult.RowError> errors = new ConcurrentLinkedQueue<>();
+
+        List<SheetRow> chunk = new ArrayList<>(chunkSize);
+        boolean[] headerSkipped = {false};
+
+        Runnable submit = () -> {
+            List<SheetRow> rows = new ArrayList<>(chunk);
+            chunk.clear();
+            acquire(permits);
+            try {
+                chunks.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        List<ImportResult.RowError> chunkErrors = processChunk(processor, rows);
+                        int failed = countFailedRows(chunkErrors);
+                        processedRows.addAndGet(rows.size());
+                        failedRows.addAndGet(failed);
+                        for (ImportResult.RowError error : chunkErrors) {
+                            if (errorCount.incrementAndGet() <= maxErrors) {
+                                errors.add(error);
+                            }
+                        }
+                        listener.onChunkCompleted(rows.size(), failed, chunkErrors);
+                    } finally {
+                        permits.release();
+                    }
+                }, executor));
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        };
+
+        try {
+            StreamingSheetReader.read(file, columnCount, (rowNum, values) -> {
+                if (!headerSkipped[0]) {
+                    headerSkipped[0] = true;
+                    return;
+                }
+                chunk.add(new SheetRow(rowNum + 1, values));
+                if (chunk.size() >= chunkSize) {
+                    submit.run();
+                }
+            });
+            if (!chunk.isEmpty()) {
+                submit.run();
+            }
+        } finally {
+            // Let chunks already handed out finish even when reading failed
+            try {
+                CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0])).join();
+            } catch (CompletionException e) {
+                System.err.println("Import chunk failed: " + e.getMessage());
+            }
+        }
+
+        List<ImportResult.RowError> sortedErrors = new ArrayList<>(errors);
+        sortedErrors.sort(Comparator.comparingInt(ImportResult.RowError::getRow));
+
+        ImportResult result = new ImportResult();
+        result.setTotalRecords(processedRows.get());
+        result.setFailedRecords(failedRows.get());
+        result.setSuccessfulRecords(processedRows.get() - failedRows.get());
+        result.setErrors(sortedErrors);
+        result.setDurationMillis(System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    private List<ImportResult.RowError> processChunk(ChunkProcessor processor, List<SheetRow> rows) {
+        try {
+            return processor.process(rows);
+        } catch (RuntimeException e) {
+            // Nothing in the chunk is known to be saved
+            List<ImportResult.RowError> errors = new ArrayList<>();
+            for (SheetRow row : rows) {
+                errors.add(new ImportResult.RowError(row.getRowNumber(), null, "Failed to save row: " + e.getMessage()));
+            }
+            return errors;
+        }
+    }
+
+    private int countFailedRows(List<ImportResult.RowError> errors) {
+        Set<Integer> rows = new HashSet<>();
+        for (ImportResult.RowError error : errors) {
+            rows.add(error.getRow());
+        }
+        return rows.size();
+    }
+
+    private void acquire(Semaphore permits) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Import interrupted", e);
+        }
+    }
+
+    /**
+     * A data row of the sheet with typed accessors. Parse failures are reported
+     * as a {@link RowException} naming the column.
+     */
+    static class SheetRow {
+        private final int rowNumber;
+        private final String[] values;
+
+        SheetRow(int rowNumber, String[] values) {
+            this.rowNumber = rowNumber;
+            this.values = values;
+        }
+
+        /** 1-based row number as shown in Excel */
+        int getRowNumber() {
+            return rowNumber;
+        }
+
+        String[] getValues() {
+            return values;
+        }
+
+        String text(int column) {
+            return column < values.length ? values[column] : null;
+        }
+
+        boolean isBlank(int column) {
+            String value = text(column);
+            return value == null || value.trim().isEmpty();
+        }
+
+        BigDecimal decimal(int column, String field) {
+            if (isBlank(column)) {
+                return null;
+            }
+            try {
+                return new BigDecimal(text(column).trim());
+            } catch (NumberFormatException e) {
+                throw new RowException(field, "Invalid number '" + text(column) + "' for " + field);
+            }
+        }
+
+        Integer integer(int column, String field) {
+            BigDecimal value = decimal(column, field);
+            if (value == null) {
+                return null;
+            }
+            try {
+                return value.intValueExact();
+            } catch (ArithmeticException e) {
+                throw new RowException(field, "Invalid whole number '" + text(column) + "' for " + field);
+            }
+        }
+
+        boolean flag(int column) {
+            String value = text(column);
+            return value != null && (value.trim().equalsIgnoreCase("TRUE") || value.trim().equals("1"));
+        }
+
+        List<String> list(int column) {
+            return isBlank(column) ? null : Arrays.asList(text(column).split(","));
+        }
+    }
+
+    /**
+     * A row that cannot be converted. The row is reported and the rest of the chunk continues.
+     */
+    static class RowException extends RuntimeException {
+        private final String field;
+
+        RowException(String field, String message) {
+            super(message);
+            this.field = field;
+        }
+
+        String getField() {
+            return field;
+        }
+    }
+}
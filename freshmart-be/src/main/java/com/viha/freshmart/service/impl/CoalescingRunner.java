@@ -0,0 +1,42 @@
+package com.viha.freshmart.service.impl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a task on an executor whenever it is requested, folding requests made
+ * while it is queued or running into a single further run. A burst of
+ * requests therefore costs at most two runs, and the last run always starts
+ * after the last request.
+ */
+final class CoalescingRunner {
+
+    private final Executor executor;
+    private final Runnable task;
+    private final AtomicBoolean requested = new AtomicBoolean();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    CoalescingRunner(Executor executor, Runnable task) {
+        this.executor = executor;
+        this.task = task;
+    }
+
+    void request() {
+        requested.set(true);
+        if (running.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    while (requested.getAndSet(false)) {
+                        task.run();
+                    }
+                } finally {
+                    running.set(false);
+                }
+                // A request that arrived between the last check and clearing the flag
+                if (requested.get()) {
+                    request();
+                }
+            });
+        }
+    }
+}
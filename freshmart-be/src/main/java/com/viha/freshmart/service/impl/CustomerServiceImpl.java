@@ -1,25 +1,33 @@
 package com.viha.freshmart.service.impl;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Service;
 
 import com.viha.freshmart.dao.entity.Customer;
 import com.viha.freshmart.dao.repository.CustomerRepository;
+import com.viha.freshmart.service.core.CursorPage;
 import com.viha.freshmart.service.core.CustomerService;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class CustomerServiceImpl implements CustomerService {
 
+    private static final Set<String> CUSTOMER_SORT_FIELDS = Set.of("createdAt", "name");
+
     @Autowired
     private CustomerRepository customerRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     @Override
-    public List<Customer> getAllCustomers() {
-        return customerRepository.findAll();
+    public CursorPage<Customer> getAllCustomers(String sort, String cursor, Integer limit) {
+        return KeysetQueries.page(mongoTemplate, Customer.class, null, sort, "id", CUSTOMER_SORT_FIELDS, cursor, limit);
     }
 
     @Override
@@ -0,0 +1,416 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.dao.entity.Product;
+import com.viha.freshmart.service.core.FacetQuery;
+import com.viha.freshmart.service.core.FacetResult;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable column-oriented index of products for faceted filtering. Each
+ * product is a slot; prices and ratings are kept in primitive arrays and
+ * every brand, category, unit, flag and stock state has a bitset of the slots
+ * that have it. A query turns each filter into a bitset of passing slots and then
+ * makes a single pass over all slots, which both collects the matches and
+ * counts the facets.
+ *
+ * Facets are disjunctive: each attribute is counted over the products that
+ * pass every other filter, so selecting a second brand still shows the counts
+ * of the brands not selected. A slot failing exactly one filter is therefore
+ * counted for that filter's attribute only.
+ *
+ * Slots are numbered in name order; price and rating orders are precomputed
+ * permutations, so results are never sorted per query.
+ */
+final class FacetIndex {
+
+    static final String FACET_BRAND = "brand";
+    static final String FACET_CATEGORY = "category";
+    static final String FACET_UNIT = "unit";
+    static final String FACET_ORGANIC = "isOrganic";
+    static final String FACET_FEATURED = "isFeatured";
+    static final String FACET_IN_STOCK = "inStock";
+    static final String FACET_PRICE = "price";
+
+    private static final int BRAND = 0;
+    private static final int CATEGORY = 1;
+    private static final int UNIT = 2;
+    private static final int ORGANIC = 3;
+    private static final int FEATURED = 4;
+    private static final int IN_STOCK = 5;
+    private static final int PRICE = 6;
+    private static final int FILTER_COUNT = 7;
+
+    /**
+     * A string attribute: the distinct values, each slot's value as an index
+     * into them (-1 when missing), and the slots of each value
+     */
+    private static final class Column {
+        private final String[] values;
+        private final int[] ordinals;
+        private final BitSet[] slots;
+        private final Map<String, Integer> ordinalByValue;
+
+        Column(String[] rawValues) {
+            ordinalByValue = new HashMap<>();
+            List<String> distinct = new ArrayList<>();
+            ordinals = new int[rawValues.length];
+            for (int slot = 0; slot < rawValues.length; slot++) {
+                String value = rawValues[slot];
+                if (value == null || value.isEmpty()) {
+                    ordinals[slot] = -1;
+                    continue;
+                }
+                Integer ordinal = ordinalByValue.get(value);
+                if (ordinal == null) {
+                    ordinal = distinct.size();
+                    ordinalByValue.put(value, ordinal);
+                    distinct.add(value);
+                }
+                ordinals[slot] = ordinal;
+            }
+            values = distinct.toArray(new String[0]);
+            slots = new BitSet[values.length];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = new BitSet(rawValues.length);
+            }
+            for (int slot = 0; slot < ordinals.length; slot++) {
+                if (ordinals[slot] >= 0) {
+                    slots[ordinals[slot]].set(slot);
+                }
+            }
+        }
+
+        /**
+         * Slots having any of the values; values not in the index match nothing
+         */
+        BitSet anyOf(Set<String> selected) {
+            BitSet mask = new BitSet();
+            for (String value : selected) {
+                Integer ordinal = ordinalByValue.get(value);
+                if (ordinal != null) {
+                    mask.or(slots[ordinal]);
+                }
+            }
+            return mask;
+        }
+    }
+
+    /**
+     * Slots in ascending order of an attribute; the first valued slots have a value, the rest do not
+     */
+    private static final class Order {
+        private final int[] slots;
+        private final int valued;
+
+        Order(int[] slots, int valued) {
+            this.slots = slots;
+            this.valued = valued;
+        }
+    }
+
+    private final int size;
+    private final String[] ids;
+    private final double[] prices;
+    private final Column brands;
+    private final Column categories;
+    private final Column units;
+    private final BitSet organic;
+    private final BitSet featured;
+    private final BitSet inStock;
+    private final Order byPrice;
+    private final Order byRating;
+
+    FacetIndex(List<Product> products) {
+        List<Product> sorted = new ArrayList<>(products);
+        sorted.sort(Comparator.comparing((Product p) -> p.getName() != null ? p.getName().toLowerCase() : null,
+                        Comparator.nullsLast(Comparator.<String>naturalOrder()))
+                .thenComparing(Product::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+
+        size = sorted.size();
+        ids = new String[size];
+        prices = new double[size];
+        double[] ratings = new double[size];
+        String[] brandValues = new String[size];
+        String[] categoryValues = new String[size];
+        String[] unitValues = new String[size];
+        organic = new BitSet(size);
+        featured = new BitSet(size);
+        inStock = new BitSet(size);
+
+        for (int slot = 0; slot < size; slot++) {
+            Product product = sorted.get(slot);
+            ids[slot] = product.getId();
+            prices[slot] = product.getPrice() != null ? product.getPrice().doubleValue() : Double.NaN;
+            ratings[slot] = product.getRating() != null ? product.getRating() : Double.NaN;
+            brandValues[slot] = product.getBrand();
+            categoryValues[slot] = product.getCategoryId();
+            unitValues[slot] = product.getUnit();
+            if (Boolean.TRUE.equals(product.getIsOrganic())) {
+                organic.set(slot);
+            }
+            if (Boolean.TRUE.equals(product.getIsFeatured())) {
+                featured.set(slot);
+            }
+            if (product.getStockQuantity() != null && product.getStockQuantity() > 0) {
+                inStock.set(slot);
+            }
+        }
+
+        brands = new Column(brandValues);
+        categories = new Column(categoryValues);
+        units = new Column(unitValues);
+        byPrice = order(prices);
+        byRating = order(ratings);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int distinctValues() {
+        return brands.values.length + categories.values.length + units.values.length;
+    }
+
+    FacetResult search(FacetQuery query, int offset, int limit) {
+        BitSet[] masks = new BitSet[FILTER_COUNT];
+        if (!query.getBrands().isEmpty()) {
+            masks[BRAND] = brands.anyOf(query.getBrands());
+        }
+        if (!query.getCategoryIds().isEmpty()) {
+            masks[CATEGORY] = categories.anyOf(query.getCategoryIds());
+        }
+        if (!query.getUnits().isEmpty()) {
+            masks[UNIT] = units.anyOf(query.getUnits());
+        }
+        masks[ORGANIC] = flagMask(organic, query.getIsOrganic());
+        masks[FEATURED] = flagMask(featured, query.getIsFeatured());
+        masks[IN_STOCK] = flagMask(inStock, query.getInStock());
+        masks[PRICE] = priceMask(query.getMinPrice(), query.getMaxPrice());
+
+        int activeCount = 0;
+        int[] activeFilters = new int[FILTER_COUNT];
+        BitSet[] activeMasks = new BitSet[FILTER_COUNT];
+        for (int filter = 0; filter < FILTER_COUNT; filter++) {
+            if (masks[filter] != null) {
+                activeFilters[activeCount] = filter;
+                activeMasks[activeCount] = masks[filter];
+                activeCount++;
+            }
+        }
+
+        int[] brandCounts = new int[brands.values.length];
+        int[] categoryCounts = new int[categories.values.length];
+        int[] unitCounts = new int[units.values.length];
+        int[] organicCounts = new int[2];
+        int[] featuredCounts = new int[2];
+        int[] inStockCounts = new int[2];
+        double minPrice = Double.POSITIVE_INFINITY;
+        double maxPrice = Double.NEGATIVE_INFINITY;
+
+        BitSet matches = new BitSet(size);
+        int total = 0;
+        for (int slot = 0; slot < size; slot++) {
+            // The one filter this slot fails, or -1; slots failing two are not counted anywhere
+            int failed = -1;
+            boolean excluded = false;
+            for (int i = 0; i < activeCount; i++) {
+                if (!activeMasks[i].get(slot)) {
+                    if (failed >= 0) {
+                        excluded = true;
+                        break;
+                    }
+                    failed = activeFilters[i];
+                }
+            }
+            if (excluded) {
+                continue;
+            }
+            if (failed < 0) {
+                matches.set(slot);
+                total++;
+            }
+            if (failed < 0 || failed == BRAND) {
+                count(brandCounts, brands.ordinals[slot]);
+            }
+            if (failed < 0 || failed == CATEGORY) {
+                count(categoryCounts, categories.ordinals[slot]);
+            }
+            if (failed < 0 || failed == UNIT) {
+                count(unitCounts, units.ordinals[slot]);
+            }
+            if (failed < 0 || failed == ORGANIC) {
+                organicCounts[organic.get(slot) ? 1 : 0]++;
+            }
+            if (failed < 0 || failed == FEATURED) {
+                featuredCounts[featured.get(slot) ? 1 : 0]++;
+            }
+            if (failed < 0 || failed == IN_STOCK) {
+                inStockCounts[inStock.get(slot) ? 1 : 0]++;
+            }
+            if ((failed < 0 || failed == PRICE) && !Double.isNaN(prices[slot])) {
+                minPrice = Math.min(minPrice, prices[slot]);
+                maxPrice = Math.max(maxPrice, prices[slot]);
+            }
+        }
+
+        Map<String, Object> facets = new LinkedHashMap<>();
+        facets.put(FACET_BRAND, valueCounts(brands, brandCounts));
+        facets.put(FACET_CATEGORY, valueCounts(categories, categoryCounts));
+        facets.put(FACET_UNIT, valueCounts(units, unitCounts));
+        facets.put(FACET_ORGANIC, flagCounts(organicCounts));
+        facets.put(FACET_FEATURED, flagCounts(featuredCounts));
+        facets.put(FACET_IN_STOCK, flagCounts(inStockCounts));
+        Map<String, Object> priceRange = new LinkedHashMap<>();
+        if (minPrice <= maxPrice) {
+            priceRange.put("min", BigDecimal.valueOf(minPrice));
+            priceRange.put("max", BigDecimal.valueOf(maxPrice));
+        }
+        facets.put(FACET_PRICE, priceRange);
+
+        return new FacetResult(total, page(matches, query.getSort(), offset, limit), facets);
+    }
+
+    // Helper methods
+
+    private BitSet flagMask(BitSet flag, Boolean wanted) {
+        if (wanted == null) {
+            return null;
+        }
+        BitSet mask = (BitSet) flag.clone();
+        if (!wanted) {
+            mask.flip(0, size);
+        }
+        return mask;
+    }
+
+    private BitSet priceMask(BigDecimal min, BigDecimal max) {
+        if (min == null && max == null) {
+            return null;
+        }
+        double low = min != null ? min.doubleValue() : Double.NEGATIVE_INFINITY;
+        double high = max != null ? max.doubleValue() : Double.POSITIVE_INFINITY;
+        BitSet mask = new BitSet(size);
+        for (int slot = 0; slot < size; slot++) {
+            // NaN, a missing price, fails both comparisons
+            if (prices[slot] >= low && prices[slot] <= high) {
+                mask.set(slot);
+            }
+        }
+        return mask;
+    }
+
+    private static void count(int[] counts, int ordinal) {
+        if (ordinal >= 0) {
+            counts[ordinal]++;
+        }
+    }
+
+    /**
+     * Values with a non-zero count, most frequent first
+     */
+    private static Map<String, Integer> valueCounts(Column column, int[] counts) {
+        List<Integer> ordinals = new ArrayList<>();
+        for (int ordinal = 0; ordinal < counts.length; ordinal++) {
+            if (counts[ordinal] > 0) {
+                ordinals.add(ordinal);
+            }
+        }
+        ordinals.sort(Comparator.comparingInt((Integer ordinal) -> -counts[ordinal])
+                .thenComparing(ordinal -> column.values[ordinal]));
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int ordinal : ordinals) {
+            result.put(column.values[ordinal], counts[ordinal]);
+        }
+        return result;
+    }
+
+    private static Map<String, Integer> flagCounts(int[] counts) {
+        Map<String, Integer> result = new LinkedHashMap<>();
+        result.put("true", counts[1]);
+        result.put("false", counts[0]);
+        return result;
+    }
+
+    private List<String> page(BitSet matches, String sort, int offset, int limit) {
+        String field = "name";
+        boolean ascending = true;
+        if (sort != null && !sort.isBlank()) {
+            String[] parts = sort.split(",");
+            field = parts[0].trim();
+            if (parts.length > 1) {
+                String direction = parts[1].trim();
+                if (direction.equalsIgnoreCase("desc")) {
+                    ascending = false;
+                } else if (!direction.equalsIgnoreCase("asc")) {
+                    throw new IllegalArgumentException("Invalid sort direction: " + direction);
+                }
+            }
+        }
+
+        Order order;
+        if (field.equals("name")) {
+            order = null;
+        } else if (field.equals("price")) {
+            order = byPrice;
+        } else if (field.equals("rating")) {
+            order = byRating;
+        } else {
+            throw new IllegalArgumentException("Cannot sort by '" + field + "'; supported: name, price, rating");
+        }
+
+        List<String> result = new ArrayList<>(Math.min(limit, size));
+        int skipped = 0;
+        for (int i = 0; i < size && result.size() < limit; i++) {
+            int slot;
+            if (order == null) {
+                slot = ascending ? i : size - 1 - i;
+            } else if (i < order.valued) {
+                slot = order.slots[ascending ? i : order.valued - 1 - i];
+            } else {
+                // Products without a value come last in both directions
+                slot = order.slots[i];
+            }
+            if (matches.get(slot)) {
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    result.add(ids[slot]);
+                }
+            }
+        }
+        return result;
+    }
+
+    private Order order(double[] values) {
+        Integer[] boxed = new Integer[size];
+        int valued = 0;
+        for (int slot = 0; slot < size; slot++) {
+            if (!Double.isNaN(values[slot])) {
+                boxed[valued++] = slot;
+            }
+        }
+        int unvalued = valued;
+        for (int slot = 0; slot < size; slot++) {
+            if (Double.isNaN(values[slot])) {
+                boxed[unvalued++] = slot;
+            }
+        }
+        // Stable, so equal values stay in name order
+        Arrays.sort(boxed, 0, valued, Comparator.comparingDouble(slot -> values[slot]));
+        int[] slots = new int[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = boxed[i];
+        }
+        return new Order(slots, valued);
+    }
+}
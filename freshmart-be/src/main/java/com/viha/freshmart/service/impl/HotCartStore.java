@@ -0,0 +1,336 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.dao.entity.Cart;
+import com.viha.freshmart.dao.entity.CartItem;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind tier for carts in active use. A cart is loaded once and then
+ * changed in memory under its own lock; every change is journaled before it
+ * returns, and a background flush writes each changed cart to the database
+ * once per interval however often it changed in between. Carts untouched for
+ * the idle time are dropped after they were written.
+ *
+ * After a crash the journal holds every change not yet written; it is
+ * replayed into the database when the store starts, before any cart is
+ * loaded. The store assumes it is the only writer of the carts it holds, so it
+ * suits a single application instance.
+ */
+final class HotCartStore implements AutoCloseable {
+
+    /**
+     * Where carts come from and go to
+     */
+    interface Backend {
+        /**
+         * The customer's stored cart; with create a new empty one when there is
+         * none, otherwise null
+         */
+        Cart load(String customerId, boolean create);
+
+        /**
+         * Brings line prices up to date with the catalog, returning whether anything changed
+         */
+        boolean refresh(Cart cart);
+
+        void write(Cart cart);
+
+        void delete(String customerId);
+    }
+
+    interface Mutation {
+        /**
+         * Changes the cart, returning whether it changed
+         */
+        boolean apply(Cart cart);
+    }
+
+    private static final class HotCart {
+        private final ReentrantLock lock = new ReentrantLock();
+        private Cart cart;
+        private boolean removed;
+        // Changes made and changes written; the cart is dirty while they differ
+        private volatile long changes;
+        private volatile long written;
+        // Journal line of the last change
+        private volatile String journaled;
+        private volatile long lastAccess;
+
+        boolean isDirty() {
+            return changes != written;
+        }
+    }
+
+    private final Backend backend;
+    private final CartJournal journal;
+    private final int maxCarts;
+    private final long idleMillis;
+    private final Map<String, HotCart> carts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService flusher;
+
+    /**
+     * Replays the journal left by the previous run into the database and
+     * starts flushing every flushIntervalMillis
+     */
+    HotCartStore(Backend backend, CartJournal journal, long flushIntervalMillis, int maxCarts, long idleMillis)
+            throws IOException {
+        this.backend = backend;
+        this.journal = journal;
+        this.maxCarts = maxCarts;
+        this.idleMillis = idleMillis;
+
+        int replayed = 0;
+        for (CartJournal.Entry entry : journal.read()) {
+            if (entry.getCart() == null) {
+                backend.delete(entry.getCustomerId());
+            } else {
+                backend.write(entry.getCart());
+            }
+            replayed++;
+        }
+        // Also drops a line torn by a crash, which later lines would otherwise follow
+        journal.compact(List::of);
+        if (replayed > 0) {
+            System.out.println("Replayed cart journal: " + replayed + " carts");
+        }
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cart-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushSafely, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A copy of the customer's cart, loading it when it is not held
+     */
+    Optional<Cart> get(String customerId) {
+        return Optional.ofNullable(change(customerId, false, cart -> false));
+    }
+
+    /**
+     * Applies a change to the customer's cart and returns a copy of the result
+     *
+     * @param create whether to create the cart when the customer has none
+     * @return null when the customer has no cart and create is false
+     */
+    Cart change(String customerId, boolean create, Mutation mutation) {
+        while (true) {
+            HotCart hot = carts.computeIfAbsent(customerId, id -> new HotCart());
+            hot.lock.lock();
+            try {
+                if (hot.removed) {
+                    continue;
+                }
+                hot.lastAccess = System.currentTimeMillis();
+                boolean changed = false;
+                if (hot.cart == null) {
+                    hot.cart = backend.load(customerId, create);
+                    if (hot.cart == null) {
+                        remove(customerId, hot);
+                        return null;
+                    }
+                }
+                changed |= backend.refresh(hot.cart);
+                changed |= mutation.apply(hot.cart);
+                if (changed) {
+                    journal(customerId, hot, hot.cart);
+                }
+                return copy(hot.cart);
+            } finally {
+                hot.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Deletes the customer's cart right away, held or not
+     */
+    void clear(String customerId) {
+        while (true) {
+            HotCart hot = carts.computeIfAbsent(customerId, id -> new HotCart());
+            hot.lock.lock();
+            try {
+                if (hot.removed) {
+                    continue;
+                }
+                // Journaled first, so a crash before the delete still deletes it on replay
+                journal(customerId, hot, null);
+                backend.delete(customerId);
+                hot.written = hot.changes;
+                remove(customerId, hot);
+                return;
+            } finally {
+                hot.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Writes every changed cart and drops the journal lines that covered them
+     */
+    void flush() {
+        boolean wrote = false;
+        for (HotCart hot : carts.values()) {
+            if (!hot.isDirty()) {
+                continue;
+            }
+            Cart snapshot;
+            long changes;
+            hot.lock.lock();
+            try {
+                if (hot.removed || hot.cart == null) {
+                    continue;
+                }
+                snapshot = copy(hot.cart);
+                changes = hot.changes;
+            } finally {
+                hot.lock.unlock();
+            }
+            try {
+                backend.write(snapshot);
+                hot.written = changes;
+                wrote = true;
+            } catch (RuntimeException e) {
+                // Stays dirty and journaled, so the next flush tries again
+                System.err.println("Could not flush cart " + snapshot.getId() + ": " + e.getMessage());
+            }
+        }
+
+        if (wrote) {
+            try {
+                journal.compact(() -> {
+                    List<String> lines = new ArrayList<>();
+                    for (HotCart hot : carts.values()) {
+                        if (hot.isDirty() && hot.journaled != null) {
+                            lines.add(hot.journaled);
+                        }
+                    }
+                    return lines;
+                });
+            } catch (IOException e) {
+                // The old journal is still in place and merely longer than needed
+                System.err.println("Could not compact cart journal: " + e.getMessage());
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Stops flushing and writes what is left
+     */
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        journal.close();
+    }
+
+    // Helper methods
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.println("Cart flush failed: " + e.getMessage());
+        }
+    }
+
+    private void journal(String customerId, HotCart hot, Cart cart) {
+        Cart journaled = null;
+        if (cart != null) {
+            journaled = copy(cart);
+            journaled.setCustomer(null);
+        }
+        String line = journal.line(customerId, journaled);
+        hot.changes++;
+        journal.append(line, () -> hot.journaled = line);
+    }
+
+    /**
+     * Drops carts that are written and idle, then the least recently used
+     * written carts beyond the maximum. Changed carts are always kept.
+     */
+    private void evict() {
+        long idleBefore = System.currentTimeMillis() - idleMillis;
+        List<Map.Entry<String, HotCart>> clean = new ArrayList<>();
+        for (Map.Entry<String, HotCart> entry : carts.entrySet()) {
+            if (!entry.getValue().isDirty()) {
+                clean.add(entry);
+            }
+        }
+        clean.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+        int excess = carts.size() - maxCarts;
+        for (Map.Entry<String, HotCart> entry : clean) {
+            HotCart hot = entry.getValue();
+            if (hot.lastAccess >= idleBefore && excess <= 0) {
+                break;
+            }
+            if (hot.lock.tryLock()) {
+                try {
+                    if (!hot.removed && !hot.isDirty()) {
+                        remove(entry.getKey(), hot);
+                        excess--;
+                    }
+                } finally {
+                    hot.lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes a cart out of the store; the caller holds its lock
+     */
+    private void remove(String customerId, HotCart hot) {
+        hot.removed = true;
+        carts.remove(customerId, hot);
+    }
+
+    /**
+     * A copy that can be handed out while the held cart keeps changing
+     */
+    private static Cart copy(Cart cart) {
+        Cart copy = new Cart();
+        copy.setId(cart.getId());
+        copy.setCustomer(cart.getCustomer());
+        copy.setTotalAmount(cart.getTotalAmount());
+        copy.setTotalItems(cart.getTotalItems());
+        copy.setCreatedAt(cart.getCreatedAt());
+        copy.setUpdatedAt(cart.getUpdatedAt());
+        copy.setVersion(cart.getVersion());
+        copy.setCatalogVersion(cart.getCatalogVersion());
+        List<CartItem> items = new ArrayList<>();
+        if (cart.getCartItems() != null) {
+            for (CartItem item : cart.getCartItems()) {
+                CartItem itemCopy = new CartItem();
+                itemCopy.setId(item.getId());
+                itemCopy.setProduct(item.getProduct());
+                itemCopy.setQuantity(item.getQuantity());
+                itemCopy.setUnitPrice(item.getUnitPrice());
+                itemCopy.setTotalPrice(item.getTotalPrice());
+                itemCopy.setAddedAt(item.getAddedAt());
+                items.add(itemCopy);
+            }
+        }
+        copy.setCartItems(items);
+        return copy;
+    }
+}
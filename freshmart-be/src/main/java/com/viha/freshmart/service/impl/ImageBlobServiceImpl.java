@@ -0,0 +1,171 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.dao.entity.ImageBlob;
+import com.viha.freshmart.service.core.ImageBlobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Content-addressed storage for uploaded images. Uploads are hashed while they
+ * are copied to a temp file, then moved to blobs/ab/cd/{hash} so no directory
+ * holds more than a few thousand files. Uploads of content that is already
+ * stored only increment the blob's reference count.
+ *
+ * Adding and dropping references to the same blob is serialized by a striped
+ * lock, so a blob whose last reference is being released can never lose its
+ * file to a concurrent upload of the same bytes. The files live on this
+ * node's disk, so an in-process lock is enough.
+ */
+@Service
+public class ImageBlobServiceImpl implements ImageBlobService {
+
+    private static final int LOCK_STRIPES = 64;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${app.image.upload.dir:uploads/images}")
+    private String uploadDir;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public ImageBlobServiceImpl() {
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public ImageBlob store(InputStream content) {
+        Path tempFile = null;
+        try {
+            Path tempDir = Paths.get(uploadDir, "tmp");
+            Files.createDirectories(tempDir);
+            tempFile = Files.createTempFile(tempDir, "upload-", ".tmp");
+
+            MessageDigest digest = newDigest();
+            long size;
+            try (InputStream in = new DigestInputStream(content, digest)) {
+                size = Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+            String blobId = toHash(digest);
+            Path blobPath = shardedPath(Paths.get(uploadDir, "blobs"), blobId, "");
+
+            synchronized (lockFor(blobId)) {
+                ImageBlob blob = mongoTemplate.findAndModify(
+                        query(where("id").is(blobId)),
+                        new Update().inc("refCount", 1)
+                                .setOnInsert("path", blobPath.toString())
+                                .setOnInsert("size", size)
+                                .setOnInsert("createdAt", LocalDateTime.now()),
+                        FindAndModifyOptions.options().upsert(true).returnNew(true),
+                        ImageBlob.class);
+
+                // Also covers a file lost after a crash between writing the blob and its file
+                Path storedPath = Paths.get(blob.getPath());
+                if (!Files.exists(storedPath)) {
+                    Files.createDirectories(storedPath.getParent());
+                    try {
+                        Files.move(tempFile, storedPath, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (FileAlreadyExistsException e) {
+                        // Same hash, same bytes; the existing file is as good as ours
+                    }
+                }
+                return blob;
+            }
+
+        } catch (IOException e) {
+            throw new RuntimeException("Could not store image content: " + e.getMessage(), e);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    @Override
+    public boolean release(String blobId) {
+        synchronized (lockFor(blobId)) {
+            ImageBlob blob = mongoTemplate.findAndModify(
+                    query(where("id").is(blobId).and("refCount").gt(0)),
+                    new Update().inc("refCount", -1),
+                    FindAndModifyOptions.options().returnNew(true),
+                    ImageBlob.class);
+            if (blob == null || blob.getRefCount() > 0) {
+                return false;
+            }
+
+            mongoTemplate.remove(query(where("id").is(blobId).and("refCount").is(0)), ImageBlob.class);
+            deleteQuietly(Paths.get(blob.getPath()));
+            return true;
+        }
+    }
+
+    @Override
+    public String hash(Path file) {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            throw new RuntimeException("File not found " + file, e);
+        }
+        return toHash(digest);
+    }
+
+    @Override
+    public Path shardedPath(Path root, String blobId, String suffix) {
+        if (blobId.length() < 4) {
+            return root.resolve(blobId + suffix);
+        }
+        return root.resolve(blobId.substring(0, 2)).resolve(blobId.substring(2, 4)).resolve(blobId + suffix);
+    }
+
+    // Helper methods
+
+    private Object lockFor(String blobId) {
+        return locks[Math.floorMod(blobId.hashCode(), LOCK_STRIPES)];
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // The first 128 bits of SHA-256 are plenty to tell image contents apart
+    private String toHash(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest(), 0, 16);
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Could not delete " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.dao.entity.Image;
+import com.viha.freshmart.dao.repository.ImageRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Caches active image documents by id so serving an image costs at most one
+ * Mongo lookup, and none on a hit. Every code path that changes an image
+ * document invalidates it here; the time to live only bounds how long changes
+ * made outside this application stay invisible.
+ */
+@Component
+public class ImageMetadataCache {
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Value("${app.image.metadata-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${app.image.metadata-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private LruCache<String, Image> cache;
+
+    @PostConstruct
+    public void init() {
+        cache = new LruCache<>(maxEntries, ttlSeconds * 1000);
+    }
+
+    /**
+     * Get an active image by id. Callers must not modify the returned instance.
+     */
+    public Optional<Image> getActiveImage(String imageId) {
+        return Optional.ofNullable(cache.get(imageId, id -> imageRepository.findByIdAndIsActiveTrue(id).orElse(null)));
+    }
+
+    public void invalidate(String imageId) {
+        cache.invalidate(imageId);
+    }
+
+    public Map<String, Object> getStats() {
+        return cache.getStats();
+    }
+}
@@ -0,0 +1,298 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.dao.entity.Image;
+import com.viha.freshmart.dao.repository.ImageRepository;
+import com.viha.freshmart.service.core.ImageBlobService;
+import com.viha.freshmart.service.core.ImageRenditionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Resizes uploaded images to fixed widths and re-encodes them. Opaque images are
+ * written as JPEG at the configured quality, images with transparency as PNG.
+ * Images are never scaled up; a rendition wider than the original points at the
+ * original file instead.
+ */
+@Service
+public class ImageRenditionServiceImpl implements ImageRenditionService {
+
+    @Autowired
+    private ImageRepository imageRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ImageMetadataCache imageMetadataCache;
+
+    @Autowired
+    private ImageBlobService imageBlobService;
+
+    @Autowired
+    @Qualifier("imageExecutor")
+    private Executor imageExecutor;
+
+    @Value("${app.image.upload.dir:uploads/images}")
+    private String uploadDir;
+
+    @Value("${app.image.renditions.thumbnail-width:150}")
+    private int thumbnailWidth;
+
+    @Value("${app.image.renditions.medium-width:600}")
+    private int mediumWidth;
+
+    @Value("${app.image.renditions.large-width:1200}")
+    private int largeWidth;
+
+    @Value("${app.image.renditions.quality:0.8}")
+    private float quality;
+
+    @Override
+    public void generateRenditionsAsync(String imageId) {
+        imageExecutor.execute(() -> {
+            try {
+                generateRenditions(imageId);
+            } catch (RuntimeException e) {
+                System.err.println("Failed to generate renditions for image " + imageId + ": " + e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public boolean generateRenditions(String imageId) {
+        Optional<Image> imageOpt = imageRepository.findByIdAndIsActiveTrue(imageId);
+        if (!imageOpt.isPresent()) {
+            return false;
+        }
+
+        Image image = imageOpt.get();
+        Path source = Paths.get(image.getFilePath());
+
+        try {
+            DecodedImage decoded = decode(source, largeWidth);
+            if (decoded == null) {
+                // No ImageIO reader for this format (e.g. WebP); the original is served for every size
+                System.err.println("Cannot decode image " + imageId + " for renditions: " + image.getContentType());
+                return false;
+            }
+
+            Path renditionRoot = Paths.get(uploadDir, "renditions");
+            boolean hasAlpha = decoded.image.getColorModel().hasAlpha();
+            String format = hasAlpha ? "png" : "jpg";
+            String baseName = stripExtension(image.getFileName());
+
+            Update update = new Update()
+                    .set("width", decoded.width)
+                    .set("height", decoded.height)
+                    .set("thumbnailPath", writeRendition(decoded, image, thumbnailWidth, format,
+                            imageBlobService.shardedPath(renditionRoot, baseName, "-thumbnail." + format)))
+                    .set("mediumPath", writeRendition(decoded, image, mediumWidth, format,
+                            imageBlobService.shardedPath(renditionRoot, baseName, "-medium." + format)))
+                    .set("largePath", writeRendition(decoded, image, largeWidth, format,
+                            imageBlobService.shardedPath(renditionRoot, baseName, "-large." + format)));
+
+            // Only the rendition fields change, so concurrent metadata edits are not overwritten
+            mongoTemplate.updateFirst(query(where("id").is(imageId)), update, Image.class);
+            imageMetadataCache.invalidate(imageId);
+            return true;
+
+        } catch (IOException e) {
+            throw new RuntimeException("Could not generate renditions for image " + imageId, e);
+        }
+    }
+
+    @Override
+    public Dimension readDimensions(Path imageFile) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(imageFile.toFile())) {
+            ImageReader reader = firstReader(in);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                reader.setInput(in, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void render(Path source, Path target, int width, String format, float quality) throws IOException {
+        DecodedImage decoded = decode(source, width);
+        if (decoded == null) {
+            throw new IOException("Unsupported image format: " + source.getFileName());
+        }
+        boolean opaque = isOpaqueFormat(format) || !decoded.image.getColorModel().hasAlpha();
+        int targetWidth = Math.min(width, decoded.image.getWidth());
+        writeImage(scaleToWidth(decoded.image, targetWidth, opaque), format, quality, target);
+    }
+
+    @Override
+    public boolean canEncode(String format) {
+        return format != null && ImageIO.getImageWritersByFormatName(format).hasNext();
+    }
+
+    // Helper methods
+
+    private static class DecodedImage {
+        private final BufferedImage image;
+        private final int width;
+        private final int height;
+
+        DecodedImage(BufferedImage image, int width, int height) {
+            this.image = image;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Decodes an image, subsampling while reading when it is far larger than
+     * needed so huge photos never have to fit in memory at full size. The
+     * result stays at least twice the requested width to keep downscaling sharp.
+     */
+    private DecodedImage decode(Path source, int maxWidth) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source.toFile())) {
+            ImageReader reader = firstReader(in);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = Math.max(1, width / (maxWidth * 2));
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                return new DecodedImage(reader.read(0, param), width, height);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private ImageReader firstReader(ImageInputStream in) {
+        if (in == null) {
+            return null;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        return readers.hasNext() ? readers.next() : null;
+    }
+
+    private String writeRendition(DecodedImage decoded, Image image, int width, String format, Path target) throws IOException {
+        if (decoded.width <= width) {
+            return image.getFilePath();
+        }
+        Files.createDirectories(target.getParent());
+        boolean opaque = !decoded.image.getColorModel().hasAlpha();
+        writeImage(scaleToWidth(decoded.image, width, opaque), format, quality, target);
+        return target.toString();
+    }
+
+    /**
+     * Scales down in halving steps with bilinear filtering, which avoids the
+     * aliasing of a single large bilinear step at a fraction of bicubic's cost.
+     * Opaque output is flattened onto white. At least one pass is always made,
+     * so the result is in a pixel layout every writer accepts.
+     */
+    private static BufferedImage scaleToWidth(BufferedImage source, int targetWidth, boolean opaque) {
+        int targetHeight = Math.max(1, (int) Math.round(source.getHeight() * (double) targetWidth / source.getWidth()));
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D g = next.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (opaque) {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, width, height);
+            }
+            g.drawImage(current, 0, 0, width, height, null);
+            g.dispose();
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+
+        return current;
+    }
+
+    /**
+     * Encodes to a temp file next to the target and moves it into place, so a
+     * reader never sees a half-written rendition.
+     */
+    private void writeImage(BufferedImage image, String format, float quality, Path target) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for format " + format);
+        }
+        ImageWriter writer = writers.next();
+
+        Path tempFile = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (ImageOutputStream out = ImageIO.createImageOutputStream(tempFile.toFile())) {
+                writer.setOutput(out);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                if (isOpaqueFormat(format)) {
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(quality);
+                }
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private boolean isOpaqueFormat(String format) {
+        return "jpg".equalsIgnoreCase(format) || "jpeg".equalsIgnoreCase(format);
+    }
+
+    private String stripExtension(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+}
@@ -0,0 +1,332 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.dao.entity.Image;
+import com.viha.freshmart.service.core.ImageRenditionService;
+import com.viha.freshmart.service.core.ImageResizeService;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Disk cache of images resized on demand. Each (image, width, format, quality)
+ * is rendered once into the cache directory, where the file name is the cache
+ * key. An in-memory index in access order tracks the files and evicts the least
+ * recently used ones once the cache grows past its size cap. Concurrent misses
+ * for the same key wait for a single render instead of each rendering.
+ */
+@Service
+public class ImageResizeServiceImpl implements ImageResizeService {
+
+    private static final String FORMAT_JPEG = "jpg";
+    private static final String FORMAT_PNG = "png";
+    private static final String FORMAT_WEBP = "webp";
+
+    @Autowired
+    private ImageRenditionService imageRenditionService;
+
+    @Value("${app.image.upload.dir:uploads/images}")
+    private String uploadDir;
+
+    @Value("${app.image.resize.cache-max-mb:512}")
+    private long cacheMaxMb;
+
+    @Value("${app.image.resize.max-width:2400}")
+    private int maxWidth;
+
+    @Value("${app.image.resize.default-quality:80}")
+    private int defaultQuality;
+
+    @Value("${app.image.resize.concurrent-renders:2}")
+    private int concurrentRenders;
+
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes;
+
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong renders = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private Path cacheDir;
+    private Semaphore renderPermits;
+
+    /**
+     * Rebuilds the index from the files already on disk, oldest first, so the
+     * size cap still holds across restarts.
+     */
+    @PostConstruct
+    public void loadIndex() {
+        cacheDir = Paths.get(uploadDir, "cache");
+        renderPermits = new Semaphore(concurrentRenders);
+
+        try {
+            Files.createDirectories(cacheDir);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(cacheDir)) {
+                files = listing.filter(Files::isRegularFile)
+                        .sorted(Comparator.comparingLong(this::lastModified))
+                        .toList();
+            }
+
+            List<Path> evicted;
+            synchronized (index) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(".tmp")) {
+                        deleteQuietly(file);
+                        continue;
+                    }
+                    long size = Files.size(file);
+                    index.put(name, size);
+                    cachedBytes += size;
+                }
+                evicted = evictOverflow();
+            }
+            evicted.forEach(this::deleteQuietly);
+
+        } catch (IOException e) {
+            System.err.println("Could not load image resize cache from " + cacheDir + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Path getResized(Image image, Integer width, String format, Integer quality) {
+        String outputFormat = resolveFormat(format, image);
+        int targetWidth = resolveWidth(width, image);
+        int targetQuality = FORMAT_JPEG.equals(outputFormat) ? resolveQuality(quality) : 0;
+
+        // Images sharing a blob share their resized copies too
+        String owner = image.getBlobId() != null ? image.getBlobId() : image.getId();
+        String key = owner + "-w" + targetWidth + "-q" + targetQuality + "." + outputFormat;
+        Path cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+
+        CompletableFuture<Path> pending = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            return await(existing, key);
+        }
+
+        try {
+            // Another request may have finished this key between the lookup and claiming it
+            Path path = lookup(key);
+            if (path == null) {
+                path = render(image, key, targetWidth, outputFormat, targetQuality);
+            }
+            pending.complete(path);
+            return path;
+        } catch (RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, pending);
+        }
+    }
+
+    @Override
+    public void evict(String ownerId) {
+        String prefix = ownerId + "-w";
+        List<Path> evicted = new ArrayList<>();
+        synchronized (index) {
+            Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Long> entry = it.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    cachedBytes -= entry.getValue();
+                    evicted.add(cacheDir.resolve(entry.getKey()));
+                    it.remove();
+                }
+            }
+        }
+        evicted.forEach(this::deleteQuietly);
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (index) {
+            stats.put("entries", index.size());
+            stats.put("bytes", cachedBytes);
+        }
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        stats.put("maxBytes", maxBytes());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("renders", renders.get());
+        stats.put("evictions", evictions.get());
+        stats.put("rendersInFlight", inFlight.size());
+        return stats;
+    }
+
+    // Helper methods
+
+    private Path lookup(String key) {
+        synchronized (index) {
+            if (!index.containsKey(key)) {
+                return null;
+            }
+            // get() also moves the entry to the most recently used end
+            index.get(key);
+        }
+        Path path = cacheDir.resolve(key);
+        if (Files.exists(path)) {
+            return path;
+        }
+        // The file was removed behind our back; forget it and render again
+        synchronized (index) {
+            Long size = index.remove(key);
+            if (size != null) {
+                cachedBytes -= size;
+            }
+        }
+        return null;
+    }
+
+    private Path render(Image image, String key, int width, String format, int quality) {
+        Path target = cacheDir.resolve(key);
+        try {
+            renderPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting to resize image " + image.getId(), e);
+        }
+
+        long size;
+        try {
+            imageRenditionService.render(Paths.get(image.getFilePath()), target, width, format, quality / 100f);
+            size = Files.size(target);
+            renders.incrementAndGet();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not resize image " + image.getId() + ": " + e.getMessage(), e);
+        } finally {
+            renderPermits.release();
+        }
+
+        List<Path> evicted;
+        synchronized (index) {
+            Long previous = index.put(key, size);
+            cachedBytes += size - (previous != null ? previous : 0);
+            evicted = evictOverflow();
+        }
+        evicted.forEach(this::deleteQuietly);
+        return target;
+    }
+
+    /**
+     * Removes least recently used entries until the cache fits its cap and
+     * returns their files for deletion outside the lock. The newest entry is
+     * always kept, even when it alone exceeds the cap.
+     */
+    private List<Path> evictOverflow() {
+        List<Path> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (cachedBytes > maxBytes() && index.size() > 1 && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            cachedBytes -= eldest.getValue();
+            evicted.add(cacheDir.resolve(eldest.getKey()));
+            it.remove();
+            evictions.incrementAndGet();
+        }
+        return evicted;
+    }
+
+    private Path await(CompletableFuture<Path> pending, String key) {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for resized image " + key, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause
+                    : new RuntimeException("Could not resize image: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Uses the requested format when an encoder for it is installed (the stock
+     * JDK has none for WebP), otherwise JPEG, or PNG for sources that may be
+     * transparent.
+     */
+    private String resolveFormat(String format, Image image) {
+        String requested = format != null ? format.toLowerCase() : null;
+        if ("jpeg".equals(requested)) {
+            requested = FORMAT_JPEG;
+        }
+        if ((FORMAT_JPEG.equals(requested) || FORMAT_PNG.equals(requested) || FORMAT_WEBP.equals(requested))
+                && imageRenditionService.canEncode(requested)) {
+            return requested;
+        }
+        String contentType = image.getContentType() != null ? image.getContentType() : "";
+        return contentType.endsWith("png") || contentType.endsWith("gif") ? FORMAT_PNG : FORMAT_JPEG;
+    }
+
+    private int resolveWidth(Integer width, Image image) {
+        if (width != null && (width < 1 || width > maxWidth)) {
+            throw new IllegalArgumentException("Width must be between 1 and " + maxWidth);
+        }
+        int target = width != null ? width : maxWidth;
+        // Widths beyond the original would only produce identical copies under different keys
+        if (image.getWidth() != null && image.getWidth() > 0) {
+            target = Math.min(target, image.getWidth());
+        }
+        return target;
+    }
+
+    private int resolveQuality(Integer quality) {
+        if (quality == null) {
+            return defaultQuality;
+        }
+        if (quality < 1 || quality > 100) {
+            throw new IllegalArgumentException("Quality must be between 1 and 100");
+        }
+        return quality;
+    }
+
+    private long maxBytes() {
+        return cacheMaxMb * 1024 * 1024;
+    }
+
+    private long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("Could not delete cached image " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -1,27 +1,38 @@
 package com.viha.freshmart.service.impl;
 
 import com.viha.freshmart.dao.entity.Image;
+import com.viha.freshmart.dao.entity.ImageBlob;
 import com.viha.freshmart.dao.repository.ImageRepository;
+import com.viha.freshmart.service.core.CursorPage;
+import com.viha.freshmart.service.core.ImageBlobService;
+import com.viha.freshmart.service.core.ImageRenditionService;
+import com.viha.freshmart.service.core.ImageResizeService;
 import com.viha.freshmart.service.core.ImageService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.UrlResource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
+import java.awt.Dimension;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
+import java.util.Set;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 @Service
 public class ImageServiceImpl implements ImageService {
@@ -29,12 +40,26 @@ public class ImageServiceImpl implements ImageService {
     @Autowired
     private ImageRepository imageRepository;
     
-    @Value("${app.image.upload.dir:uploads/images}")
-    private String uploadDir;
+    @Autowired
+    private ImageRenditionService imageRenditionService;
+    
+    @Autowired
+    private ImageResizeService imageResizeService;
+    
+    @Autowired
+    private ImageMetadataCache imageMetadataCache;
+    
+    @Autowired
+    private ImageBlobService imageBlobService;
+    
+    @Autowired
+    private MongoTemplate mongoTemplate;
     
     @Value("${app.image.base.url:http://localhost:9090/api/images}")
     private String baseImageUrl;
     
+    private static final Set<String> IMAGE_SORT_FIELDS = Set.of("uploadedAt", "fileSize");
+    
     private final String[] ALLOWED_EXTENSIONS = {"jpg", "jpeg", "png", "gif", "webp"};
     private final long MAX_FILE_SIZE = 10 * 1024 * 1024; // 10MB
     
@@ -44,84 +69,136 @@ public class ImageServiceImpl implements ImageService {
         
         validateFile(file);
         
+        String originalFilename = StringUtils.cleanPath(file.getOriginalFilename());
+        
+        // Store the content by hash; an identical earlier upload just gains a reference
+        ImageBlob blob;
+        try (InputStream in = file.getInputStream()) {
+            blob = imageBlobService.store(in);
+        } catch (IOException ex) {
+            throw new RuntimeException("Could not store file " + file.getOriginalFilename() + 
+                                     ". Please try again!", ex);
+        }
+        
         try {
-            // Create upload directory if not exists
-            Path uploadPath = Paths.get(uploadDir);
-            if (!Files.exists(uploadPath)) {
-                Files.createDirectories(uploadPath);
-            }
-            
-            // Generate unique filename
-            String originalFilename = StringUtils.cleanPath(file.getOriginalFilename());
-            String fileExtension = getFileExtension(originalFilename);
-            String uniqueFilename = UUID.randomUUID().toString() + "." + fileExtension;
-            
-            // Save the file
-            Path targetLocation = uploadPath.resolve(uniqueFilename);
-            Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
-            
-            // Set default dimensions for now
-            Integer width = null;
-            Integer height = null;
+            Path blobPath = Paths.get(blob.getPath());
             
             // Create image entity
             Image image = new Image(
-                uniqueFilename,
+                blob.getId(),
                 originalFilename,
                 category,
                 file.getSize(),
                 file.getContentType(),
-                targetLocation.toString(),
+                blobPath.toString(),
                 uploadedBy
             );
             
+            // Assign the id up front so the stored URL can contain it
+            image.setId(new ObjectId().toHexString());
             image.setDescription(description);
             image.setAltText(altText);
-            image.setWidth(width);
-            image.setHeight(height);
-            image.setUrl(baseImageUrl + "/" + image.getId());
+            image.setBlobId(blob.getId());
+            image.setContentHash(blob.getId());
+            image.setUrl(getImageUrl(image.getId()) + "?v=" + blob.getId());
+            
+            // Duplicates reuse the renditions already generated for the blob
+            Optional<Image> sibling = blob.getRefCount() > 1
+                    ? imageRepository.findFirstByBlobIdAndIsActiveTrueAndThumbnailPathNotNull(blob.getId())
+                    : Optional.empty();
+            if (sibling.isPresent()) {
+                image.setWidth(sibling.get().getWidth());
+                image.setHeight(sibling.get().getHeight());
+                image.setThumbnailPath(sibling.get().getThumbnailPath());
+                image.setMediumPath(sibling.get().getMediumPath());
+                image.setLargePath(sibling.get().getLargePath());
+            } else {
+                // Only the header is read here; the pixels are decoded later by the rendition pipeline
+                Dimension dimensions = imageRenditionService.readDimensions(blobPath);
+                image.setWidth(dimensions != null ? dimensions.width : null);
+                image.setHeight(dimensions != null ? dimensions.height : null);
+            }
             
             // Save to database
             Image savedImage = imageRepository.save(image);
             
-            // Generate thumbnails
-            generateThumbnails(savedImage.getId());
-            image.setUrl(getImageUrl(savedImage.getId()));
+            // Generate renditions in the background so the upload returns immediately
+            if (!sibling.isPresent()) {
+                imageRenditionService.generateRenditionsAsync(savedImage.getId());
+            }
             
             return savedImage;
             
-        } catch (IOException ex) {
-            throw new RuntimeException("Could not store file " + file.getOriginalFilename() + 
-                                     ". Please try again!", ex);
+        } catch (RuntimeException ex) {
+            imageBlobService.release(blob.getId());
+            throw ex;
         }
     }
     
     @Override
     public Optional<Image> getImageById(String imageId) {
-        return imageRepository.findByIdAndIsActiveTrue(imageId);
+        return imageMetadataCache.getActiveImage(imageId);
     }
     
     @Override
     public Resource getImageResource(String imageId) {
+        return getImageResourceBySize(imageId, "original");
+    }
+    
+    @Override
+    public Resource getImageResourceBySize(String imageId, String size) {
         Optional<Image> imageOpt = getImageById(imageId);
         if (imageOpt.isPresent()) {
-            Image image = imageOpt.get();
-            return loadFileAsResource(image.getFilePath());
+            return getImageResource(imageOpt.get(), size, null, null, null);
         }
         throw new RuntimeException("Image not found with id: " + imageId);
     }
     
     @Override
-    public Resource getImageResourceBySize(String imageId, String size) {
+    public Resource getImageResourceBySize(String imageId, Integer width, String format, Integer quality) {
         Optional<Image> imageOpt = getImageById(imageId);
         if (imageOpt.isPresent()) {
-            Image image = imageOpt.get();
-            String filePath = getPathBySize(image, size);
-            return loadFileAsResource(filePath);
+            return getImageResource(imageOpt.get(), null, width, format, quality);
         }
         throw new RuntimeException("Image not found with id: " + imageId);
     }
     
+    @Override
+    public Resource getImageResource(Image image, String size, Integer width, String format, Integer quality) {
+        if (isResizeRequest(width, format, quality) && isDecodable(image)) {
+            Path resized = imageResizeService.getResized(image, width, format, quality);
+            return loadFileAsResource(resized.toString());
+        }
+        return loadFileAsResource(getPathBySize(image, size));
+    }
+    
+    @Override
+    public String getImageETag(Image image, String size, Integer width, String format, Integer quality) {
+        String contentHash = getContentHash(image);
+        if (isResizeRequest(width, format, quality) && isDecodable(image)) {
+            String formatTag = format != null ? format.toLowerCase().replaceAll("[^a-z0-9]", "") : "";
+            return contentHash + "-w" + (width != null ? width : "") + "-" + formatTag
+                    + "-q" + (quality != null ? quality : "");
+        }
+        // Sizes that fall back to the original share its ETag, since the bytes are the same
+        String filePath = getPathBySize(image, size);
+        return filePath.equals(image.getFilePath()) ? contentHash : contentHash + "-" + normalizeSize(size);
+    }
+    
+    @Override
+    public boolean isRenditionReady(Image image, String size) {
+        switch (normalizeSize(size)) {
+            case "thumbnail":
+                return image.getThumbnailPath() != null;
+            case "medium":
+                return image.getMediumPath() != null;
+            case "large":
+                return image.getLargePath() != null;
+            default:
+                return true;
+        }
+    }
+    
     @Override
     public List<Image> getImagesByCategory(String category) {
         return imageRepository.findByCategoryAndIsActiveTrueOrderByUploadedAtDesc(category);
@@ -145,26 +222,31 @@ public class ImageServiceImpl implements ImageService {
     
     @Override
     public Image updateImageMetadata(String imageId, String description, String altText, String category) {
-        Optional<Image> imageOpt = getImageById(imageId);
+        // Read from the repository, never modify the shared cached instance
+        Optional<Image> imageOpt = imageRepository.findByIdAndIsActiveTrue(imageId);
         if (imageOpt.isPresent()) {
             Image image = imageOpt.get();
             if (description != null) image.setDescription(description);
             if (altText != null) image.setAltText(altText);
             if (category != null) image.setCategory(category);
             image.setUpdatedAt(LocalDateTime.now());
-            return imageRepository.save(image);
+            Image savedImage = imageRepository.save(image);
+            imageMetadataCache.invalidate(imageId);
+            return savedImage;
         }
         throw new RuntimeException("Image not found with id: " + imageId);
     }
     
     @Override
     public boolean deleteImage(String imageId) {
-        Optional<Image> imageOpt = getImageById(imageId);
+        Optional<Image> imageOpt = imageRepository.findByIdAndIsActiveTrue(imageId);
         if (imageOpt.isPresent()) {
             Image image = imageOpt.get();
             image.setActive(false);
             image.setUpdatedAt(LocalDateTime.now());
             imageRepository.save(image);
+            imageMetadataCache.invalidate(imageId);
+            releaseFiles(image);
             return true;
         }
         return false;
@@ -181,8 +263,9 @@ public class ImageServiceImpl implements ImageService {
     }
     
     @Override
-    public List<Image> getAllActiveImages() {
-        return imageRepository.findAllByIsActiveTrueOrderByUploadedAtDesc();
+    public CursorPage<Image> getActiveImages(String sort, String cursor, Integer limit) {
+        return KeysetQueries.page(mongoTemplate, Image.class, where("isActive").is(true),
+                sort, "uploadedAt,desc", IMAGE_SORT_FIELDS, cursor, limit);
     }
     
     @Override
@@ -192,18 +275,7 @@ public class ImageServiceImpl implements ImageService {
     
     @Override
     public boolean generateThumbnails(String imageId) {
-        // Simplified implementation - placeholder for future thumbnail generation
-        Optional<Image> imageOpt = getImageById(imageId);
-        if (imageOpt.isPresent()) {
-            Image image = imageOpt.get();
-            // For now, just set paths to the original file
-            image.setThumbnailPath(image.getFilePath());
-            image.setMediumPath(image.getFilePath());
-            image.setLargePath(image.getFilePath());
-            imageRepository.save(image);
-            return true;
-        }
-        return false;
+        return imageRenditionService.generateRenditions(imageId);
     }
     
     // Helper methods
@@ -252,8 +324,7 @@ public class ImageServiceImpl implements ImageService {
     }
     
     private String getPathBySize(Image image, String size) {
-        switch (size.toLowerCase()) {
-            case "thumb":
+        switch (normalizeSize(size)) {
             case "thumbnail":
                 return image.getThumbnailPath() != null ? image.getThumbnailPath() : image.getFilePath();
             case "medium":
@@ -265,5 +336,55 @@ public class ImageServiceImpl implements ImageService {
         }
     }
     
-
+    private String normalizeSize(String size) {
+        String normalized = size != null ? size.toLowerCase() : "original";
+        return "thumb".equals(normalized) ? "thumbnail" : normalized;
+    }
+    
+    private boolean isResizeRequest(Integer width, String format, Integer quality) {
+        return width != null || format != null || quality != null;
+    }
+    
+    // WebP sources cannot be decoded without an extra ImageIO plugin, so they are served as is
+    private boolean isDecodable(Image image) {
+        return !"image/webp".equalsIgnoreCase(image.getContentType());
+    }
+    
+    /**
+     * Images uploaded before hashes were recorded get theirs computed on first
+     * request and stored, so the file is read for this only once.
+     */
+    private String getContentHash(Image image) {
+        if (image.getContentHash() != null) {
+            return image.getContentHash();
+        }
+        String contentHash = imageBlobService.hash(Paths.get(image.getFilePath()));
+        mongoTemplate.updateFirst(query(where("id").is(image.getId())), new Update().set("contentHash", contentHash), Image.class);
+        imageMetadataCache.invalidate(image.getId());
+        return contentHash;
+    }
+    
+    /**
+     * Drops the deleted image's reference to its blob. Renditions and resized
+     * copies belong to the blob, so they are removed only with its last reference.
+     * Images stored before blobs own their files and only lose their resized copies.
+     */
+    private void releaseFiles(Image image) {
+        if (image.getBlobId() == null) {
+            imageResizeService.evict(image.getId());
+            return;
+        }
+        if (imageBlobService.release(image.getBlobId())) {
+            imageResizeService.evict(image.getBlobId());
+            for (String renditionPath : new String[]{image.getThumbnailPath(), image.getMediumPath(), image.getLargePath()}) {
+                if (renditionPath != null && !renditionPath.equals(image.getFilePath())) {
+                    try {
+                        Files.deleteIfExists(Paths.get(renditionPath));
+                    } catch (IOException ex) {
+                        System.err.println("Could not delete rendition " + renditionPath + ": " + ex.getMessage());
+                    }
+                }
+            }
+        }
+    }
 }
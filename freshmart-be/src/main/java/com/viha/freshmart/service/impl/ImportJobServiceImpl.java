@@ -0,0 +1,166 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.service.core.CategoryExcelService;
+import com.viha.freshmart.service.core.ImportJob;
+import com.viha.freshmart.service.core.ImportJobService;
+import com.viha.freshmart.service.core.ImportResult;
+import com.viha.freshmart.service.core.ProductExcelService;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.DeferredSXSSFSheet;
+import org.apache.poi.xssf.streaming.DeferredSXSSFWorkbook;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs Excel imports as background jobs. The upload is copied to a temp file on
+ * the request thread, then parsing and writing happen on the import job executor
+ * while the request returns the job id. Jobs are kept in memory and dropped a
+ * while after they finish.
+ */
+@Service
+public class ImportJobServiceImpl implements ImportJobService {
+
+    private static final String[] ERROR_HEADERS = {"Row", "Field", "Message"};
+
+    @Autowired
+    private ProductExcelService productExcelService;
+
+    @Autowired
+    private CategoryExcelService categoryExcelService;
+
+    @Autowired
+    @Qualifier("importJobExecutor")
+    private Executor importJobExecutor;
+
+    @Value("${app.import.jobs.retention-minutes:60}")
+    private long retentionMinutes;
+
+    @Value("${app.import.jobs.max-errors:10000}")
+    private int maxJobErrors;
+
+    @Value("${app.excel.export.row-window:100}")
+    private int rowAccessWindowSize;
+
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    @Override
+    public ImportJob submitImport(String type, MultipartFile file) {
+        if (!ImportJob.TYPE_PRODUCTS.equals(type) && !ImportJob.TYPE_CATEGORIES.equals(type)) {
+            throw new IllegalArgumentException("Unknown import type: " + type);
+        }
+        evictExpiredJobs();
+
+        Path tempFile;
+        try {
+            tempFile = StreamingSheetReader.copyToTempFile(file);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to store uploaded file: " + e.getMessage(), e);
+        }
+
+        int declaredRows = StreamingSheetReader.estimateRowCount(tempFile.toFile());
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), type, file.getOriginalFilename(),
+                declaredRows > 0 ? declaredRows - 1 : -1, maxJobErrors);
+        jobs.put(job.getId(), job);
+
+        try {
+            importJobExecutor.execute(() -> runJob(job, tempFile));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            deleteTempFile(tempFile);
+            throw new IllegalStateException("Too many imports are queued, please try again later", e);
+        }
+
+        return job;
+    }
+
+    @Override
+    public Optional<ImportJob> getJob(String type, String jobId) {
+        ImportJob job = jobs.get(jobId);
+        return job != null && job.getType().equals(type) ? Optional.of(job) : Optional.empty();
+    }
+
+    @Override
+    public void writeErrorSheet(ImportJob job, OutputStream outputStream) throws IOException {
+        List<ImportResult.RowError> errors = job.getErrors();
+
+        try (DeferredSXSSFWorkbook workbook = new DeferredSXSSFWorkbook(rowAccessWindowSize)) {
+            DeferredSXSSFSheet sheet = workbook.createSheet("Errors");
+
+            CellStyle headerStyle = workbook.createCellStyle();
+            Font headerFont = workbook.createFont();
+            headerFont.setBold(true);
+            headerStyle.setFont(headerFont);
+            sheet.setColumnWidth(0, 8 * 256);
+            sheet.setColumnWidth(1, 20 * 256);
+            sheet.setColumnWidth(2, 80 * 256);
+
+            sheet.setRowGenerator(rowSheet -> {
+                Row headerRow = rowSheet.createRow(0);
+                for (int i = 0; i < ERROR_HEADERS.length; i++) {
+                    Cell cell = headerRow.createCell(i);
+                    cell.setCellValue(ERROR_HEADERS[i]);
+                    cell.setCellStyle(headerStyle);
+                }
+
+                int rowNum = 1;
+                for (ImportResult.RowError error : errors) {
+                    Row row = rowSheet.createRow(rowNum++);
+                    row.createCell(0).setCellValue(error.getRow());
+                    row.createCell(1).setCellValue(error.getField() != null ? error.getField() : "");
+                    row.createCell(2).setCellValue(error.getMessage() != null ? error.getMessage() : "");
+                }
+            });
+
+            workbook.write(outputStream);
+        }
+    }
+
+    // Helper methods
+
+    private void runJob(ImportJob job, Path tempFile) {
+        job.markRunning();
+        try {
+            ImportResult result = ImportJob.TYPE_PRODUCTS.equals(job.getType())
+                    ? productExcelService.importProductsFromExcel(tempFile.toFile(), job)
+                    : categoryExcelService.importCategoriesFromExcel(tempFile.toFile(), job);
+
+            job.markCompleted("Imported " + result.getSuccessfulRecords() + " of " + result.getTotalRecords()
+                    + " rows in " + result.getDurationMillis() + " ms");
+
+        } catch (RuntimeException e) {
+            System.err.println("Import job " + job.getId() + " failed: " + e.getMessage());
+            job.markFailed("Import failed: " + e.getMessage());
+        } finally {
+            deleteTempFile(tempFile);
+        }
+    }
+
+    private void evictExpiredJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(retentionMinutes);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    private void deleteTempFile(Path tempFile) {
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            System.err.println("Could not delete temp file " + tempFile + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.dao.entity.Order;
+import com.viha.freshmart.dao.entity.Product;
+import com.viha.freshmart.dao.entity.StockReservation;
+import com.viha.freshmart.service.core.InventoryService;
+import com.viha.freshmart.service.core.OrderStatsService;
+import com.viha.freshmart.service.core.ProductFacetService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Stock is taken off products when an order is placed, one guarded update
+ * per line: each decrements stockQuantity only where at least the ordered
+ * quantity is left, so concurrent orders can never take more than there is.
+ * When a line's update does not match, the lines taken before it are put
+ * back, so an order reserves all its lines or none. A product whose stored
+ * stock runs out or comes back from zero queues a facet index rebuild, as the
+ * inStock filter is built from it.
+ *
+ * Products reserved more than hot-sku.min-reservations times within a window
+ * get a StockPool: stock is leased from the database in blocks and handed out
+ * from striped in-memory counters, so reservations of a hot product no longer
+ * queue up on its document. Leased units that are not sold go back when the
+ * product cools down or the application stops. A crash loses at most the
+ * units leased at that moment from the stored count; it can never oversell.
+ *
+ * Reservations of orders awaiting payment are held until committed. After
+ * reservation-ttl-minutes the order is cancelled if it is still unpaid and
+ * has not shipped, and only then is the stock released; otherwise the
+ * reservation is committed. Shipping an order fulfils its reservation, after
+ * which its stock is never put back.
+ */
+@Service
+public class InventoryServiceImpl implements InventoryService {
+
+    static final String HELD = "HELD";
+    static final String COMMITTED = "COMMITTED";
+    static final String FULFILLED = "FULFILLED";
+    static final String RELEASED = "RELEASED";
+
+    private static final int LEASE_ATTEMPTS = 5;
+    private static final long STORE_EMPTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int EXPIRY_BATCH_SIZE = 100;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OrderStatsService orderStatsService;
+
+    @Autowired
+    private ProductFacetService productFacetService;
+
+    @Value("${app.inventory.reservation-ttl-minutes:15}")
+    private long reservationTtlMinutes;
+
+    @Value("${app.inventory.expiry-check-seconds:60}")
+    private long expiryCheckSeconds;
+
+    @Value("${app.inventory.hot-sku.min-reservations:50}")
+    private long hotSkuMinReservations;
+
+    @Value("${app.inventory.hot-sku.window-seconds:10}")
+    private long hotSkuWindowSeconds;
+
+    @Value("${app.inventory.hot-sku.lease-size:20}")
+    private int leaseSize;
+
+    private final Map<String, StockPool> pools = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> demand = new ConcurrentHashMap<>();
+    private final LongAdder pooledReservations = new LongAdder();
+    private final LongAdder storedReservations = new LongAdder();
+    private final LongAdder rejectedReservations = new LongAdder();
+    private final LongAdder expiredReservations = new LongAdder();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void startScheduler() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "inventory");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::expireReservations, expiryCheckSeconds, expiryCheckSeconds, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::updateHotProducts, hotSkuWindowSeconds, hotSkuWindowSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void returnLeasedStock() {
+        scheduler.shutdownNow();
+        for (String productId : new ArrayList<>(pools.keySet())) {
+            retirePool(productId, true);
+        }
+    }
+
+    @Override
+    public void reserve(String orderId, Map<String, Integer> quantities, boolean awaitingPayment) {
+        Map<String, Integer> pooled = new HashMap<>();
+        Map<String, Integer> stored = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+            if (line.getValue() == null || line.getValue() <= 0) {
+                throw new IllegalArgumentException("Quantity must be positive for product " + line.getKey());
+            }
+            demand.computeIfAbsent(line.getKey(), id -> new LongAdder()).increment();
+            StockPool pool = pools.get(line.getKey());
+            if (pool != null && takeFromPool(line.getKey(), pool, line.getValue())) {
+                pooled.put(line.getKey(), line.getValue());
+            } else {
+                // Stock in the database decides, also when a pool ran dry
+                stored.put(line.getKey(), line.getValue());
+            }
+        }
+
+        try {
+            decrementStock(stored);
+        } catch (RuntimeException e) {
+            giveBack(pooled);
+            rejectedReservations.increment();
+            throw e;
+        }
+        pooledReservations.add(pooled.size());
+        storedReservations.add(stored.size());
+
+        LocalDateTime now = LocalDateTime.now();
+        StockReservation reservation = new StockReservation();
+        reservation.setId(orderId);
+        reservation.setQuantities(new HashMap<>(quantities));
+        reservation.setCreatedAt(now);
+        if (awaitingPayment) {
+            reservation.setStatus(HELD);
+            reservation.setExpiresAt(now.plusMinutes(reservationTtlMinutes));
+        } else {
+            reservation.setStatus(COMMITTED);
+        }
+        try {
+            mongoTemplate.insert(reservation);
+        } catch (RuntimeException e) {
+            // The order already has a reservation, or it could not be recorded
+            increaseStock(quantities);
+            throw e instanceof DuplicateKeyException
+                    ? new IllegalStateException("Stock is already reserved for order " + orderId) : e;
+        }
+    }
+
+    @Override
+    public void commit(String orderId) {
+        mongoTemplate.updateFirst(query(where("id").is(orderId).and("status").is(HELD)),
+                new Update().set("status", COMMITTED).unset("expiresAt"), StockReservation.class);
+    }
+
+    @Override
+    public void release(String orderId) {
+        StockReservation reservation = mongoTemplate.findAndModify(
+                query(where("id").is(orderId).and("status").in(HELD, COMMITTED)),
+                new Update().set("status", RELEASED).set("releasedAt", LocalDateTime.now()),
+                StockReservation.class);
+        if (reservation != null) {
+            increaseStock(reservation.getQuantities());
+        }
+    }
+
+    @Override
+    public void fulfil(Collection<String> orderIds) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        mongoTemplate.updateMulti(query(where("id").in(orderIds).and("status").in(HELD, COMMITTED)),
+                new Update().set("status", FULFILLED).unset("expiresAt"), StockReservation.class);
+    }
+
+    @Override
+    public void stockOverwritten(String productId) {
+        retirePool(productId, false);
+    }
+
+    @Override
+    public void allStockOverwritten() {
+        for (String productId : new ArrayList<>(pools.keySet())) {
+            retirePool(productId, false);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Long> leased = new LinkedHashMap<>();
+        pools.forEach((productId, pool) -> leased.put(productId, pool.available()));
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hotProducts", leased);
+        stats.put("pooledLines", pooledReservations.sum());
+        stats.put("storedLines", storedReservations.sum());
+        stats.put("rejected", rejectedReservations.sum());
+        stats.put("expired", expiredReservations.sum());
+        return stats;
+    }
+
+    // Helper methods
+
+    /**
+     * Takes stock off all lines or throws without changing any
+     */
+    private void decrementStock(Map<String, Integer> quantities) {
+        Map<String, Integer> taken = new HashMap<>();
+        boolean soldOut = false;
+        try {
+            for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+                String productId = line.getKey();
+                int quantity = line.getValue();
+                Query guarded = query(where("id").is(productId).and("stockQuantity").gte(quantity));
+                guarded.fields().include("stockQuantity");
+                Product product = mongoTemplate.findAndModify(guarded, new Update().inc("stockQuantity", -quantity),
+                        FindAndModifyOptions.options().returnNew(true), Product.class);
+                if (product == null) {
+                    throw new IllegalStateException(mongoTemplate.exists(query(where("id").is(productId)), Product.class)
+                            ? "Insufficient stock for product " + productId
+                            : "Product not found: " + productId);
+                }
+                taken.put(productId, quantity);
+                soldOut |= product.getStockQuantity() != null && product.getStockQuantity() <= 0;
+            }
+        } catch (RuntimeException e) {
+            increaseStock(taken);
+            throw e;
+        }
+        if (soldOut) {
+            productFacetService.rebuildAsync();
+        }
+    }
+
+    private void increaseStock(Map<String, Integer> quantities) {
+        if (quantities == null || quantities.isEmpty()) {
+            return;
+        }
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+            bulkOps.updateOne(query(where("id").is(line.getKey())), new Update().inc("stockQuantity", line.getValue()));
+        }
+        bulkOps.execute();
+
+        // Stock no higher than what was just added was at or below zero before
+        Query restocked = query(where("id").in(quantities.keySet()));
+        restocked.fields().include("stockQuantity");
+        for (Product product : mongoTemplate.find(restocked, Product.class)) {
+            Integer stock = product.getStockQuantity();
+            if (stock != null && stock > 0 && stock <= quantities.get(product.getId())) {
+                productFacetService.rebuildAsync();
+                return;
+            }
+        }
+    }
+
+    private void increaseStock(String productId, long quantity) {
+        if (quantity > 0) {
+            Query product = query(where("id").is(productId));
+            product.fields().include("stockQuantity");
+            Product restocked = mongoTemplate.findAndModify(product, new Update().inc("stockQuantity", quantity),
+                    FindAndModifyOptions.options().returnNew(true), Product.class);
+            if (restocked != null && restocked.getStockQuantity() != null
+                    && restocked.getStockQuantity() > 0 && restocked.getStockQuantity() <= quantity) {
+                productFacetService.rebuildAsync();
+            }
+        }
+    }
+
+    /**
+     * Takes the quantity from a hot product's pool, leasing more from the
+     * database while it has stock. False when the pool cannot supply it.
+     */
+    private boolean takeFromPool(String productId, StockPool pool, int quantity) {
+        if (pool.tryTake(quantity)) {
+            return true;
+        }
+        if (pool.storeEmptySince(STORE_EMPTY_NANOS)) {
+            return false;
+        }
+        // One lease at a time per product; the others wait for its units
+        synchronized (pool) {
+            for (int attempt = 0; attempt < LEASE_ATTEMPTS; attempt++) {
+                if (pool.tryTake(quantity)) {
+                    return true;
+                }
+                Query stockQuery = query(where("id").is(productId));
+                stockQuery.fields().include("stockQuantity");
+                Product product = mongoTemplate.findOne(stockQuery, Product.class);
+                int stock = product != null && product.getStockQuantity() != null ? product.getStockQuantity() : 0;
+                if (stock <= 0) {
+                    // Sold out: until the next check, reservations go straight to the database
+                    pool.storeEmpty();
+                    return false;
+                }
+                int lease = Math.min(stock, Math.max(leaseSize, quantity));
+                if (mongoTemplate.updateFirst(query(where("id").is(productId).and("stockQuantity").gte(lease)),
+                        new Update().inc("stockQuantity", -lease), Product.class).getModifiedCount() > 0) {
+                    pool.add(lease);
+                }
+            }
+            return pool.tryTake(quantity);
+        }
+    }
+
+    private void giveBack(Map<String, Integer> pooled) {
+        for (Map.Entry<String, Integer> line : pooled.entrySet()) {
+            StockPool pool = pools.get(line.getKey());
+            if (pool != null) {
+                pool.add(line.getValue());
+            } else {
+                increaseStock(line.getKey(), line.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param returnStock whether the leased units go back to the product;
+     *                    not when its stock was just set outright
+     */
+    private void retirePool(String productId, boolean returnStock) {
+        StockPool pool = pools.remove(productId);
+        if (pool != null) {
+            long units = pool.retire();
+            if (returnStock) {
+                increaseStock(productId, units);
+            }
+        }
+    }
+
+    /**
+     * Gives products reserved often enough in the last window a pool, and
+     * retires the pools of products that cooled down
+     */
+    private void updateHotProducts() {
+        try {
+            int stripes = Runtime.getRuntime().availableProcessors();
+            for (Map.Entry<String, LongAdder> entry : demand.entrySet()) {
+                String productId = entry.getKey();
+                long reservations = entry.getValue().sumThenReset();
+                if (reservations >= hotSkuMinReservations) {
+                    pools.computeIfAbsent(productId, id ->
+                            new StockPool(stripes, units -> increaseStock(id, units)));
+                } else {
+                    retirePool(productId, true);
+                    if (reservations == 0) {
+                        demand.remove(productId, entry.getValue());
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Failed to update hot products: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Settles held reservations past their expiry: an order still unpaid and
+     * not shipped is cancelled and its stock released, any other order keeps
+     * its stock. The cancel decides, so an order paid or shipped meanwhile is
+     * never cancelled, and several instances can sweep together.
+     */
+    private void expireReservations() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            List<StockReservation> expired;
+            do {
+                Query expiredQuery = query(where("status").is(HELD).and("expiresAt").lt(now)).limit(EXPIRY_BATCH_SIZE);
+                expiredQuery.fields().include("id");
+                expired = mongoTemplate.find(expiredQuery, StockReservation.class);
+                for (StockReservation reservation : expired) {
+                    if (cancelUnpaidOrder(reservation.getId())) {
+                        release(reservation.getId());
+                        expiredReservations.increment();
+                    } else {
+                        commit(reservation.getId());
+                    }
+                }
+            } while (expired.size() == EXPIRY_BATCH_SIZE);
+        } catch (RuntimeException e) {
+            System.err.println("Failed to expire stock reservations: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Cancels the order if it is neither paid nor shipped, returning whether it did
+     */
+    private boolean cancelUnpaidOrder(String orderId) {
+        LocalDateTime now = LocalDateTime.now();
+        return orderStatsService.recording(() -> {
+            Order order = mongoTemplate.findAndModify(
+                    query(where("id").is(orderId).and("orderStatus").in(OrderStateMachine.orderStatusesBefore("CANCELLED"))
+                            .and("paymentStatus").ne("PAID")),
+                    new Update().set("orderStatus", "CANCELLED")
+                            .set("cancelReason", "Payment not received in time")
+                            .set("updatedAt", now),
+                    FindAndModifyOptions.options().returnNew(false), Order.class);
+            if (order == null) {
+                return false;
+            }
+            String previousStatus = order.getOrderStatus();
+            order.setOrderStatus("CANCELLED");
+            order.setCancelReason("Payment not received in time");
+            order.setUpdatedAt(now);
+            orderStatsService.recordStatusChange(order, previousStatus);
+            return true;
+        });
+    }
+}
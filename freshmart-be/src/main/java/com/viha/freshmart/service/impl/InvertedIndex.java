@@ -0,0 +1,270 @@
+package com.viha.freshmart.service.impl;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Term to document index over a handful of weighted text fields. Each term maps
+ * to the documents containing it together with the summed weight of the
+ * fields it occurs in. Terms are kept sorted, so the terms starting with a
+ * prefix form one contiguous range of the dictionary.
+ *
+ * A query matches a document only if every query token matches one of its
+ * terms: exactly, as a prefix of a longer term, or within a small edit
+ * distance for tokens long enough that a typo is likely. Exact matches score
+ * highest, and rarer terms score more than common ones.
+ *
+ * Not thread-safe; callers guard access.
+ */
+final class InvertedIndex {
+
+    private static final float EXACT_MATCH = 1.0f;
+    private static final float PREFIX_MATCH = 0.7f;
+    private static final float FUZZY_MATCH = 0.5f;
+
+    // Bounds the work for one or two letter prefixes, which match a large part of the dictionary
+    private static final int MAX_PREFIX_TERMS = 256;
+
+    private static final int MIN_FUZZY_LENGTH = 4;
+    private static final int MIN_TWO_EDIT_LENGTH = 8;
+
+    private static final class Document {
+        private final String id;
+        private final float boost;
+        private final String[] terms;
+
+        Document(String id, float boost, String[] terms) {
+            this.id = id;
+            this.boost = boost;
+            this.terms = terms;
+        }
+    }
+
+    private final TreeMap<String, Map<Integer, Float>> postings = new TreeMap<>();
+    private final List<Document> documents = new ArrayList<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<Integer> freeOrdinals = new ArrayList<>();
+
+    /**
+     * Adds or replaces a document.
+     *
+     * @param fields text of each field, paired by position with fieldWeights
+     * @param boost  multiplier applied to the document's final score
+     */
+    void put(String id, String[] fields, float[] fieldWeights, float boost) {
+        remove(id);
+
+        Map<String, Float> termWeights = new HashMap<>();
+        for (int i = 0; i < fields.length; i++) {
+            for (String term : tokenize(fields[i])) {
+                termWeights.merge(term, fieldWeights[i], Float::sum);
+            }
+        }
+        if (termWeights.isEmpty()) {
+            return;
+        }
+
+        int ordinal;
+        if (freeOrdinals.isEmpty()) {
+            ordinal = documents.size();
+            documents.add(null);
+        } else {
+            ordinal = freeOrdinals.remove(freeOrdinals.size() - 1);
+        }
+        documents.set(ordinal, new Document(id, boost, termWeights.keySet().toArray(new String[0])));
+        ordinals.put(id, ordinal);
+
+        for (Map.Entry<String, Float> entry : termWeights.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), key -> new HashMap<>()).put(ordinal, entry.getValue());
+        }
+    }
+
+    void remove(String id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal == null) {
+            return;
+        }
+        for (String term : documents.get(ordinal).terms) {
+            Map<Integer, Float> docs = postings.get(term);
+            docs.remove(ordinal);
+            if (docs.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+        documents.set(ordinal, null);
+        freeOrdinals.add(ordinal);
+    }
+
+    int size() {
+        return ordinals.size();
+    }
+
+    int termCount() {
+        return postings.size();
+    }
+
+    /**
+     * Ids of the documents matching every token of the query, best first
+     */
+    List<String> search(String query, int limit) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty() || ordinals.isEmpty()) {
+            return List.of();
+        }
+
+        Map<Integer, Float> scores = null;
+        for (String token : tokens) {
+            Map<Integer, Float> tokenScores = scoreToken(token);
+            if (scores == null) {
+                scores = tokenScores;
+            } else {
+                Map<Integer, Float> combined = new HashMap<>();
+                for (Map.Entry<Integer, Float> entry : scores.entrySet()) {
+                    Float score = tokenScores.get(entry.getKey());
+                    if (score != null) {
+                        combined.put(entry.getKey(), entry.getValue() + score);
+                    }
+                }
+                scores = combined;
+            }
+            if (scores.isEmpty()) {
+                return List.of();
+            }
+        }
+
+        List<Integer> ranked = new ArrayList<>(scores.keySet());
+        float[] finalScores = new float[documents.size()];
+        for (Map.Entry<Integer, Float> entry : scores.entrySet()) {
+            int ordinal = entry.getKey();
+            finalScores[ordinal] = entry.getValue() * documents.get(ordinal).boost;
+        }
+        ranked.sort((a, b) -> {
+            int byScore = Float.compare(finalScores[b], finalScores[a]);
+            return byScore != 0 ? byScore : documents.get(a).id.compareTo(documents.get(b).id);
+        });
+
+        List<String> ids = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            ids.add(documents.get(ranked.get(i)).id);
+        }
+        return ids;
+    }
+
+    /**
+     * Lower-cased words of a text with accents removed; anything that is not a
+     * letter or digit separates words
+     */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return List.of();
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}+", "")
+                .toLowerCase(Locale.ROOT);
+
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean wordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // Helper methods
+
+    /**
+     * Best score of each document for one query token, over all the terms the
+     * token matches
+     */
+    private Map<Integer, Float> scoreToken(String token) {
+        Map<Integer, Float> scores = new HashMap<>();
+
+        addMatches(scores, token, EXACT_MATCH);
+
+        NavigableMap<String, Map<Integer, Float>> prefixed =
+                postings.subMap(token, false, token + Character.MAX_VALUE, false);
+        int expanded = 0;
+        for (String term : prefixed.keySet()) {
+            if (++expanded > MAX_PREFIX_TERMS) {
+                break;
+            }
+            // "tom" is a better match for "tomato" than for "tomatillos"
+            addMatches(scores, term, PREFIX_MATCH * token.length() / term.length());
+        }
+
+        if (token.length() >= MIN_FUZZY_LENGTH) {
+            int maxEdits = token.length() >= MIN_TWO_EDIT_LENGTH ? 2 : 1;
+            // Typos in the first letter are rare, which keeps the scan to one slice of the dictionary
+            String first = token.substring(0, 1);
+            for (String term : postings.subMap(first, true, first + Character.MAX_VALUE, false).keySet()) {
+                if (Math.abs(term.length() - token.length()) > maxEdits || term.equals(token)) {
+                    continue;
+                }
+                int edits = editDistance(token, term, maxEdits);
+                if (edits <= maxEdits) {
+                    addMatches(scores, term, FUZZY_MATCH / edits);
+                }
+            }
+        }
+        return scores;
+    }
+
+    private void addMatches(Map<Integer, Float> scores, String term, float matchWeight) {
+        Map<Integer, Float> docs = postings.get(term);
+        if (docs == null) {
+            return;
+        }
+        float idf = (float) Math.log(1.0 + (double) ordinals.size() / docs.size());
+        for (Map.Entry<Integer, Float> entry : docs.entrySet()) {
+            float score = matchWeight * entry.getValue() * idf;
+            scores.merge(entry.getKey(), score, Math::max);
+        }
+    }
+
+    /**
+     * Optimal string alignment distance (insertions, deletions, substitutions and
+     * adjacent transpositions), giving up with max + 1 once it is exceeded
+     */
+    static int editDistance(String a, String b, int max) {
+        int[] previous2 = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, previous2[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()];
+    }
+}
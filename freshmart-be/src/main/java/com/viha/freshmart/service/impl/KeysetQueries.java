@@ -0,0 +1,228 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.service.core.CursorPage;
+import org.bson.Document;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonParseException;
+import org.bson.json.JsonWriterSettings;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Keyset (cursor) pagination over a collection. A page is sorted by one field
+ * plus _id as tie-breaker, and the next page starts strictly after the last
+ * document's (field, _id) pair instead of skipping documents, so every page
+ * costs one index range scan however deep it is. With an index on the filter
+ * fields followed by (field, _id) no in-memory sort is needed.
+ *
+ * Sort specs follow Spring's "field" / "field,asc" / "field,desc" form. The
+ * cursor is the last document's raw BSON values as canonical extended JSON in
+ * base64, so dates, decimals and ObjectIds survive the round trip exactly.
+ * It records the sort it was made for and is rejected with any other.
+ *
+ * Documents are read raw and then mapped, which resolves references the same
+ * way repository queries do. Filters and sort fields therefore use document
+ * field names.
+ */
+final class KeysetQueries {
+
+    private static final String ID = "_id";
+
+    static final int DEFAULT_LIMIT = 50;
+    static final int MAX_LIMIT = 200;
+
+    private static final JsonWriterSettings CURSOR_JSON = JsonWriterSettings.builder()
+            .outputMode(JsonMode.EXTENDED)
+            .build();
+
+    private KeysetQueries() {
+    }
+
+    /**
+     * @param filter     documents to list, or null for all
+     * @param sort       requested sort spec, or null for defaultSort
+     * @param sortFields fields that may be sorted on besides id
+     * @param cursor     nextCursor of the previous page, or null for the first page
+     * @param limit      page size, or null for the default; capped at MAX_LIMIT
+     */
+    static <T> CursorPage<T> page(MongoTemplate mongoTemplate, Class<T> type, Criteria filter,
+                                  String sort, String defaultSort, Set<String> sortFields,
+                                  String cursor, Integer limit) {
+        return page(mongoTemplate, type, type, filter, sort, defaultSort, sortFields, cursor, limit);
+    }
+
+    /**
+     * Like page, reading the collection of entityClass as a projection type;
+     * only the fields the projection maps are fetched
+     */
+    static <T> CursorPage<T> page(MongoTemplate mongoTemplate, Class<?> entityClass, Class<T> type, Criteria filter,
+                                  String sort, String defaultSort, Set<String> sortFields,
+                                  String cursor, Integer limit) {
+        int pageSize = pageSize(limit);
+        SortSpec spec = SortSpec.parse(sort != null && !sort.isBlank() ? sort : defaultSort, sortFields);
+
+        List<Criteria> criteria = new ArrayList<>();
+        if (filter != null) {
+            criteria.add(filter);
+        }
+        if (cursor != null && !cursor.isBlank()) {
+            Document position = decodeCursor(cursor, spec);
+            criteria.add(after(spec, position.get("v"), position.get("id")));
+        }
+
+        Query query = new Query();
+        if (criteria.size() == 1) {
+            query.addCriteria(criteria.get(0));
+        } else if (criteria.size() > 1) {
+            query.addCriteria(new Criteria().andOperator(criteria));
+        }
+        query.with(spec.field.equals(ID)
+                ? Sort.by(spec.direction, ID)
+                : Sort.by(spec.direction, spec.field).and(Sort.by(spec.direction, ID)));
+        // One extra document tells whether there is a next page
+        query.limit(pageSize + 1);
+        if (type != entityClass) {
+            MongoPersistentEntity<?> projection = mongoTemplate.getConverter().getMappingContext()
+                    .getRequiredPersistentEntity(type);
+            projection.doWithProperties((MongoPersistentProperty property) -> query.fields().include(property.getFieldName()));
+            // The cursor is made from the sort field
+            query.fields().include(spec.field);
+        }
+
+        List<Document> documents = mongoTemplate.find(query, Document.class, mongoTemplate.getCollectionName(entityClass));
+        boolean hasNext = documents.size() > pageSize;
+        if (hasNext) {
+            documents = documents.subList(0, pageSize);
+        }
+
+        List<T> items = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            items.add(mongoTemplate.getConverter().read(type, document));
+        }
+
+        String nextCursor = null;
+        if (hasNext) {
+            Document last = documents.get(documents.size() - 1);
+            nextCursor = encodeCursor(spec, last.get(spec.field), last.get(ID));
+        }
+        return new CursorPage<>(items, nextCursor);
+    }
+
+    /**
+     * The normalized form of a sort spec, e.g. for use in cache keys
+     */
+    static String normalizeSort(String sort, String defaultSort, Set<String> sortFields) {
+        return SortSpec.parse(sort != null && !sort.isBlank() ? sort : defaultSort, sortFields).toString();
+    }
+
+    static int pageSize(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_LIMIT;
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    // Helper methods
+
+    private static final class SortSpec {
+        private final String field;
+        private final Sort.Direction direction;
+
+        private SortSpec(String field, Sort.Direction direction) {
+            this.field = field;
+            this.direction = direction;
+        }
+
+        static SortSpec parse(String spec, Set<String> sortFields) {
+            String[] parts = spec.split(",");
+            String field = parts[0].trim();
+            if (field.equals("id") || field.equals(ID)) {
+                field = ID;
+            } else if (!sortFields.contains(field)) {
+                throw new IllegalArgumentException("Cannot sort by '" + field + "'; supported: id, "
+                        + String.join(", ", new TreeSet<>(sortFields)));
+            }
+            Sort.Direction direction = Sort.Direction.ASC;
+            if (parts.length > 1) {
+                direction = Sort.Direction.fromOptionalString(parts[1].trim())
+                        .orElseThrow(() -> new IllegalArgumentException("Invalid sort direction: " + parts[1].trim()));
+            }
+            return new SortSpec(field, direction);
+        }
+
+        @Override
+        public String toString() {
+            return (field.equals(ID) ? "id" : field) + "," + direction.name().toLowerCase();
+        }
+    }
+
+    /**
+     * Documents after (value, id) in the sort order. Missing and null values
+     * sort before everything else, so they come first ascending and last
+     * descending, and need their own branch since comparisons never match null.
+     */
+    private static Criteria after(SortSpec spec, Object value, Object id) {
+        boolean ascending = spec.direction.isAscending();
+        if (spec.field.equals(ID)) {
+            return ascending ? where(ID).gt(id) : where(ID).lt(id);
+        }
+
+        String field = spec.field;
+        if (ascending) {
+            if (value == null) {
+                return new Criteria().orOperator(
+                        where(field).is(null).and(ID).gt(id),
+                        where(field).ne(null));
+            }
+            return new Criteria().orOperator(
+                    where(field).gt(value),
+                    where(field).is(value).and(ID).gt(id));
+        }
+        if (value == null) {
+            return where(field).is(null).and(ID).lt(id);
+        }
+        return new Criteria().orOperator(
+                where(field).lt(value),
+                where(field).is(value).and(ID).lt(id),
+                where(field).is(null));
+    }
+
+    private static String encodeCursor(SortSpec spec, Object value, Object id) {
+        Document position = new Document("s", spec.toString()).append("v", value).append("id", id);
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(position.toJson(CURSOR_JSON).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Document decodeCursor(String cursor, SortSpec spec) {
+        Document position;
+        try {
+            position = Document.parse(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException | JsonParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (!spec.toString().equals(position.get("s"))) {
+            throw new IllegalArgumentException("Cursor does not match sort " + spec);
+        }
+        // Only plain values; an embedded document would be read as query operators
+        if (position.get("id") == null || position.get("id") instanceof Document || position.get("v") instanceof Document) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return position;
+    }
+}
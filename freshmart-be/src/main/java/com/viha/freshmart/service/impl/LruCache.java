@@ -0,0 +1,178 @@
+package com.viha.freshmart.service.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Small in-process cache with a maximum entry count, least recently used
+ * eviction and an optional time to live. All access goes through one lock,
+ * which is fine for the short critical sections here.
+ *
+ * Loads that overlap an invalidation are not stored, so a value read from the
+ * database just before a write can never outlive that write in the cache.
+ */
+final class LruCache<K, V> {
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param ttlMillis time to live of an entry, or 0 to keep entries until evicted
+     */
+    LruCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+    }
+
+    V get(K key) {
+        synchronized (entries) {
+            return getLocked(key);
+        }
+    }
+
+    /**
+     * Returns the cached value or loads and caches it. Null results are not cached.
+     */
+    V get(K key, Function<K, V> loader) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+
+        long loadGeneration;
+        synchronized (entries) {
+            loadGeneration = generation;
+        }
+        value = loader.apply(key);
+        if (value != null) {
+            synchronized (entries) {
+                if (generation == loadGeneration) {
+                    putLocked(key, value);
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns the cached values of the given keys, loading all the missing ones
+     * with a single call. Keys the loader has no value for are left out.
+     */
+    Map<K, V> getAll(Collection<K> keys, Function<List<K>, Map<K, V>> loader) {
+        Map<K, V> values = new HashMap<>();
+        List<K> missing = new ArrayList<>();
+        long loadGeneration;
+        synchronized (entries) {
+            for (K key : keys) {
+                V value = getLocked(key);
+                if (value != null) {
+                    values.put(key, value);
+                } else {
+                    missing.add(key);
+                }
+            }
+            loadGeneration = generation;
+        }
+        if (missing.isEmpty()) {
+            return values;
+        }
+
+        Map<K, V> loaded = loader.apply(missing);
+        synchronized (entries) {
+            for (Map.Entry<K, V> entry : loaded.entrySet()) {
+                if (generation == loadGeneration) {
+                    putLocked(entry.getKey(), entry.getValue());
+                }
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return values;
+    }
+
+    void put(K key, V value) {
+        synchronized (entries) {
+            putLocked(key, value);
+        }
+    }
+
+    void invalidate(K key) {
+        synchronized (entries) {
+            generation++;
+            entries.remove(key);
+        }
+    }
+
+    void invalidateIf(Predicate<K> keyFilter) {
+        synchronized (entries) {
+            generation++;
+            entries.keySet().removeIf(keyFilter);
+        }
+    }
+
+    void invalidateAll() {
+        synchronized (entries) {
+            generation++;
+            entries.clear();
+        }
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (entries) {
+            stats.put("entries", entries.size());
+            stats.put("maxEntries", maxEntries);
+            stats.put("hits", hits);
+            stats.put("misses", misses);
+            stats.put("hitRatio", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+            stats.put("evictions", evictions);
+        }
+        return stats;
+    }
+
+    private V getLocked(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && ttlNanos > 0 && System.nanoTime() - entry.expiresAt > 0) {
+            entries.remove(key);
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    private void putLocked(K key, V value) {
+        entries.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+        Iterator<K> eldest = entries.keySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+}
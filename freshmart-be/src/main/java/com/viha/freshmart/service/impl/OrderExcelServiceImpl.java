@@ -1,26 +1,61 @@
 package com.viha.freshmart.service.impl;
 
+import com.mongodb.DBRef;
+import com.viha.freshmart.dao.entity.Customer;
 import com.viha.freshmart.dao.entity.Order;
 import com.viha.freshmart.dao.entity.OrderItem;
-import com.viha.freshmart.dao.repository.OrderRepository;
+import com.viha.freshmart.dao.entity.OrderStats;
+import com.viha.freshmart.dao.entity.Product;
 import com.viha.freshmart.service.core.OrderExcelService;
+import com.viha.freshmart.service.core.OrderStatsService;
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.DeferredSXSSFSheet;
+import org.apache.poi.xssf.streaming.DeferredSXSSFWorkbook;
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.query.BasicQuery;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
 
 @Service
 public class OrderExcelServiceImpl implements OrderExcelService {
     
     @Autowired
-    private OrderRepository orderRepository;
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OrderStatsService orderStatsService;
+
+    @Value("${app.excel.export.row-window:100}")
+    private int rowAccessWindowSize;
+
+    @Value("${app.excel.export.order-batch-size:500}")
+    private int orderBatchSize;
     
     private static final String[] ORDER_HEADERS = {
         "Order Number", "Customer ID", "Customer Name", "Order Date", "Status", 
@@ -28,30 +63,26 @@ public class OrderExcelServiceImpl implements OrderExcelService {
         "Payment Method", "Tracking Number", "Items", "Created At", "Updated At"
     };
     
+    // Column widths in characters, one per header. Fixed so exports never need autoSizeColumn.
+    private static final int[] ORDER_COLUMN_WIDTHS = {
+        20, 26, 24, 20, 12,
+        14, 14, 50, 50,
+        14, 20, 60, 20, 20
+    };
+
+    // Only the fields rendered in the export are read from Mongo
+    private static final String[] EXPORT_FIELDS = {
+        "orderNumber", "customer", "orderDate", "orderStatus", "paymentStatus", "totalAmount",
+        "shippingAddress", "billingAddress", "paymentMethod", "trackingNumber", "orderItems",
+        "createdAt", "updatedAt"
+    };
+
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     
     @Override
     public ByteArrayResource exportOrdersToExcel(List<Order> orders) {
-        try (Workbook workbook = new XSSFWorkbook();
-             ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            
-            Sheet sheet = workbook.createSheet("Orders");
-            
-            // Create header row
-            createHeaderRow(sheet);
-            
-            // Create data rows
-            int rowNum = 1;
-            for (Order order : orders) {
-                createOrderRow(sheet, order, rowNum++);
-            }
-            
-            // Auto-size columns
-            for (int i = 0; i < ORDER_HEADERS.length; i++) {
-                sheet.autoSizeColumn(i);
-            }
-            
-            workbook.write(out);
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            writeOrdersWorkbook(orders::stream, out);
             return new ByteArrayResource(out.toByteArray());
             
         } catch (IOException e) {
@@ -61,60 +92,301 @@ public class OrderExcelServiceImpl implements OrderExcelService {
     
     @Override
     public ByteArrayResource exportAllOrdersToExcel() {
-        List<Order> orders = orderRepository.findAll();
-        return exportOrdersToExcel(orders);
+        return toResource(this::writeAllOrdersToExcel);
     }
 
     @Override
     public ByteArrayResource exportOrdersByDateRangeToExcel(LocalDate startDate, LocalDate endDate) {
-        List<Order> orders = orderRepository.findByOrderDateBetween(
-            startDate.atStartOfDay(), endDate.atTime(23, 59, 59));
-        return exportOrdersToExcel(orders);
+        return toResource(out -> writeOrdersByDateRangeToExcel(startDate, endDate, out));
     }
 
     @Override
     public ByteArrayResource exportOrdersByStatusToExcel(String status) {
-        List<Order> orders = orderRepository.findByOrderStatus(status);
-        return exportOrdersToExcel(orders);
+        return toResource(out -> writeOrdersByStatusToExcel(status, out));
     }
 
     @Override
     public ByteArrayResource exportOrdersByCustomerToExcel(String customerId) {
-        List<Order> orders = orderRepository.findByCustomerIdOrderByOrderDateDesc(customerId);
-        return exportOrdersToExcel(orders);
+        return toResource(out -> writeOrdersByCustomerToExcel(customerId, out));
     }
     
     @Override
     public ByteArrayResource generateOrdersSummaryReport() {
-        try (Workbook workbook = new XSSFWorkbook();
-             ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+        return toResource(this::writeOrdersSummaryReport);
+    }
             
-            // Create Orders sheet
-            Sheet ordersSheet = workbook.createSheet("Orders");
-            List<Order> orders = orderRepository.findAll();
-            createOrdersReport(ordersSheet, orders);
+    @Override
+    public void writeAllOrdersToExcel(OutputStream outputStream) throws IOException {
+        writeOrdersWorkbook(() -> streamOrders(new Criteria(), Sort.by(Sort.Direction.ASC, "id")), outputStream);
+    }
             
-            // Create Summary sheet
-            Sheet summarySheet = workbook.createSheet("Summary");
-            createSummaryReport(summarySheet, orders);
+    @Override
+    public void writeOrdersByDateRangeToExcel(LocalDate startDate, LocalDate endDate, OutputStream outputStream) throws IOException {
+        Criteria criteria = where("orderDate").gte(startDate.atStartOfDay()).lte(endDate.atTime(23, 59, 59));
+        writeOrdersWorkbook(() -> streamOrders(criteria, Sort.by(Sort.Direction.ASC, "orderDate")), outputStream);
+    }
             
-            workbook.write(out);
-            return new ByteArrayResource(out.toByteArray());
+    @Override
+    public void writeOrdersByStatusToExcel(String status, OutputStream outputStream) throws IOException {
+        Criteria criteria = where("orderStatus").is(status);
+        writeOrdersWorkbook(() -> streamOrders(criteria, Sort.by(Sort.Direction.ASC, "id")), outputStream);
+    }
             
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to create summary report: " + e.getMessage(), e);
+    @Override
+    public void writeOrdersByCustomerToExcel(String customerId, OutputStream outputStream) throws IOException {
+        Criteria criteria = where("customer.id").is(customerId);
+        writeOrdersWorkbook(() -> streamOrders(criteria, Sort.by(Sort.Direction.DESC, "orderDate")), outputStream);
+    }
+
+    @Override
+    public void writeOrdersSummaryReport(OutputStream outputStream) throws IOException {
+        try (DeferredSXSSFWorkbook workbook = new DeferredSXSSFWorkbook(rowAccessWindowSize)) {
+            CellStyle headerStyle = createHeaderStyle(workbook);
+            CellStyle titleStyle = createTitleStyle(workbook);
+
+            DeferredSXSSFSheet ordersSheet = workbook.createSheet("Orders");
+            setColumnWidths(ordersSheet);
+            setOrderRowGenerator(ordersSheet, headerStyle, () -> streamOrders(new Criteria(), Sort.by(Sort.Direction.ASC, "id")));
+
+            DeferredSXSSFSheet summarySheet = workbook.createSheet("Summary");
+            summarySheet.setColumnWidth(0, 24 * 256);
+            summarySheet.setColumnWidth(1, 16 * 256);
+            summarySheet.setRowGenerator(sheet -> createSummaryReport(sheet, titleStyle));
+
+            workbook.write(outputStream);
         }
     }
     
     // Helper methods
     
-    private void createHeaderRow(Sheet sheet) {
-        Row headerRow = sheet.createRow(0);
-        CellStyle headerStyle = sheet.getWorkbook().createCellStyle();
-        Font headerFont = sheet.getWorkbook().createFont();
+    private interface WorkbookWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private ByteArrayResource toResource(WorkbookWriter writer) {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            writer.write(out);
+            return new ByteArrayResource(out.toByteArray());
+
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create Excel file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the orders workbook with a deferred SXSSF sheet: rows are generated
+     * while the file is being written, so only the row window is held in memory.
+     * The order source is opened inside the generator and closed when it finishes.
+     */
+    private void writeOrdersWorkbook(Supplier<Stream<Order>> orderSource, OutputStream out) throws IOException {
+        try (DeferredSXSSFWorkbook workbook = new DeferredSXSSFWorkbook(rowAccessWindowSize)) {
+            DeferredSXSSFSheet sheet = workbook.createSheet("Orders");
+
+            // Styles must exist before writing starts
+            CellStyle headerStyle = createHeaderStyle(workbook);
+            setColumnWidths(sheet);
+
+            setOrderRowGenerator(sheet, headerStyle, orderSource);
+
+            workbook.write(out);
+        }
+    }
+
+    private void setOrderRowGenerator(DeferredSXSSFSheet sheet, CellStyle headerStyle, Supplier<Stream<Order>> orderSource) {
+        sheet.setRowGenerator(rowSheet -> {
+            createHeaderRow(rowSheet, headerStyle);
+
+            try (Stream<Order> orders = orderSource.get()) {
+                Iterator<Order> iterator = orders.iterator();
+                int rowNum = 1;
+                while (iterator.hasNext()) {
+                    createOrderRow(rowSheet, iterator.next(), rowNum++);
+                }
+            }
+        });
+    }
+
+    /**
+     * Opens a cursor over the orders collection. Documents are read raw so the
+     * customer and product DBRefs are not resolved one by one; they are looked up
+     * in bulk for each batch instead.
+     */
+    private Stream<Order> streamOrders(Criteria criteria, Sort sort) {
+        QueryMapper queryMapper = new QueryMapper(mongoTemplate.getConverter());
+        var orderEntity = mongoTemplate.getConverter().getMappingContext().getRequiredPersistentEntity(Order.class);
+
+        Document fields = new Document();
+        for (String field : EXPORT_FIELDS) {
+            fields.put(field, 1);
+        }
+
+        BasicQuery query = new BasicQuery(queryMapper.getMappedObject(criteria.getCriteriaObject(), orderEntity), fields);
+        query.setSortObject(queryMapper.getMappedSort(new Query().with(sort).getSortObject(), orderEntity));
+        query.cursorBatchSize(orderBatchSize);
+
+        Stream<Document> documents = mongoTemplate.stream(query, Document.class, mongoTemplate.getCollectionName(Order.class));
+        BatchResolvingOrderIterator iterator = new BatchResolvingOrderIterator(documents.iterator());
+
+        Iterable<Order> orders = () -> iterator;
+        return StreamSupport.stream(orders.spliterator(), false).onClose(documents::close);
+    }
+
+    /**
+     * Converts raw order documents in batches, replacing each batch's customer and
+     * product references with the results of one $in query per collection.
+     */
+    private class BatchResolvingOrderIterator implements Iterator<Order> {
+
+        private final Iterator<Document> documents;
+        private final List<Order> batch = new ArrayList<>();
+        private int position;
+
+        BatchResolvingOrderIterator(Iterator<Document> documents) {
+            this.documents = documents;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (position < batch.size()) {
+                return true;
+            }
+            fillBatch();
+            return position < batch.size();
+        }
+
+        @Override
+        public Order next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return batch.get(position++);
+        }
+
+        private void fillBatch() {
+            batch.clear();
+            position = 0;
+
+            List<Object> customerIds = new ArrayList<>();
+            List<Object> productIds = new ArrayList<>();
+            List<Object> orderCustomerIds = new ArrayList<>();
+            List<List<Object>> orderProductIds = new ArrayList<>();
+
+            while (batch.size() < orderBatchSize && documents.hasNext()) {
+                Document document = documents.next();
+
+                Object customerId = detachReference(document, "customer");
+                if (customerId != null) {
+                    customerIds.add(customerId);
+                }
+                orderCustomerIds.add(customerId);
+
+                List<Object> itemProductIds = new ArrayList<>();
+                Object items = document.get("orderItems");
+                if (items instanceof List<?> itemList) {
+                    for (Object item : itemList) {
+                        Object productId = item instanceof Document itemDocument
+                                ? detachReference(itemDocument, "product") : null;
+                        if (productId != null) {
+                            productIds.add(productId);
+                        }
+                        itemProductIds.add(productId);
+                    }
+                }
+                orderProductIds.add(itemProductIds);
+
+                batch.add(mongoTemplate.getConverter().read(Order.class, document));
+            }
+
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            Map<String, Customer> customers = findCustomers(customerIds);
+            Map<String, Product> products = findProducts(productIds);
+
+            for (int i = 0; i < batch.size(); i++) {
+                Order order = batch.get(i);
+                Object customerId = orderCustomerIds.get(i);
+                if (customerId != null) {
+                    order.setCustomer(customers.getOrDefault(customerId.toString(), customerStub(customerId)));
+                }
+
+                List<OrderItem> items = order.getOrderItems();
+                List<Object> itemProductIds = orderProductIds.get(i);
+                if (items != null) {
+                    for (int j = 0; j < items.size() && j < itemProductIds.size(); j++) {
+                        Object productId = itemProductIds.get(j);
+                        if (productId != null) {
+                            items.get(j).setProduct(products.get(productId.toString()));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private Object detachReference(Document document, String field) {
+        Object reference = document.remove(field);
+        return reference instanceof DBRef dbRef ? dbRef.getId() : null;
+    }
+
+    private Map<String, Customer> findCustomers(List<Object> ids) {
+        Map<String, Customer> customers = new HashMap<>();
+        if (ids.isEmpty()) {
+            return customers;
+        }
+        Query query = new Query(where("id").in(new HashSet<>(ids)));
+        query.fields().include("firstName", "lastName");
+        for (Customer customer : mongoTemplate.find(query, Customer.class)) {
+            customers.put(customer.getId(), customer);
+        }
+        return customers;
+    }
+
+    private Map<String, Product> findProducts(List<Object> ids) {
+        Map<String, Product> products = new HashMap<>();
+        if (ids.isEmpty()) {
+            return products;
+        }
+        Query query = new Query(where("id").in(new HashSet<>(ids)));
+        query.fields().include("name");
+        for (Product product : mongoTemplate.find(query, Product.class)) {
+            products.put(product.getId(), product);
+        }
+        return products;
+    }
+
+    private Customer customerStub(Object customerId) {
+        Customer customer = new Customer();
+        customer.setId(customerId instanceof ObjectId objectId ? objectId.toHexString() : customerId.toString());
+        return customer;
+    }
+
+    private void setColumnWidths(Sheet sheet) {
+        for (int i = 0; i < ORDER_COLUMN_WIDTHS.length; i++) {
+            sheet.setColumnWidth(i, ORDER_COLUMN_WIDTHS[i] * 256);
+        }
+    }
+
+    private CellStyle createHeaderStyle(Workbook workbook) {
+        CellStyle headerStyle = workbook.createCellStyle();
+        Font headerFont = workbook.createFont();
         headerFont.setBold(true);
         headerStyle.setFont(headerFont);
+        return headerStyle;
+    }
         
+    private CellStyle createTitleStyle(Workbook workbook) {
+        CellStyle titleStyle = workbook.createCellStyle();
+        Font titleFont = workbook.createFont();
+        titleFont.setBold(true);
+        titleFont.setFontHeight((short) 16);
+        titleStyle.setFont(titleFont);
+        return titleStyle;
+    }
+
+    private void createHeaderRow(Sheet sheet, CellStyle headerStyle) {
+        Row headerRow = sheet.createRow(0);
         for (int i = 0; i < ORDER_HEADERS.length; i++) {
             Cell cell = headerRow.createCell(i);
             cell.setCellValue(ORDER_HEADERS[i]);
@@ -127,7 +399,7 @@ public class OrderExcelServiceImpl implements OrderExcelService {
 
         row.createCell(0).setCellValue(order.getOrderNumber() != null ? order.getOrderNumber() : "");
         row.createCell(1).setCellValue(order.getCustomer() != null ? order.getCustomer().getId() : "");
-        row.createCell(2).setCellValue(order.getCustomer() != null ?
+        row.createCell(2).setCellValue(order.getCustomer() != null && order.getCustomer().getFirstName() != null ?
             (order.getCustomer().getFirstName() + " " + order.getCustomer().getLastName()) : "");
         row.createCell(3).setCellValue(order.getOrderDate() != null ? order.getOrderDate().format(DATE_FORMATTER) : "");
         row.createCell(4).setCellValue(order.getOrderStatus() != null ? order.getOrderStatus() : "");
@@ -145,7 +417,7 @@ public class OrderExcelServiceImpl implements OrderExcelService {
         if (order.getOrderItems() != null) {
             for (OrderItem item : order.getOrderItems()) {
                 if (itemsStr.length() > 0) itemsStr.append("; ");
-                itemsStr.append(item.getProduct() != null ? item.getProduct().getName() : "Unknown")
+                itemsStr.append(itemName(item))
                        .append(" (").append(item.getQuantity()).append(")");
             }
         }
@@ -155,31 +427,23 @@ public class OrderExcelServiceImpl implements OrderExcelService {
         row.createCell(13).setCellValue(order.getUpdatedAt() != null ? order.getUpdatedAt().format(DATE_FORMATTER) : "");
     }
     
-    private void createOrdersReport(Sheet sheet, List<Order> orders) {
-        createHeaderRow(sheet);
-        
-        int rowNum = 1;
-        for (Order order : orders) {
-            createOrderRow(sheet, order, rowNum++);
-        }
-        
-        // Auto-size columns
-        for (int i = 0; i < ORDER_HEADERS.length; i++) {
-            sheet.autoSizeColumn(i);
+    private String itemName(OrderItem item) {
+        if (item.getProduct() != null && item.getProduct().getName() != null) {
+            return item.getProduct().getName();
         }
+        return item.getProductName() != null ? item.getProductName() : "Unknown";
     }
     
-    private void createSummaryReport(Sheet sheet, List<Order> orders) {
+    /**
+     * Summary figures come from the pre-aggregated order stats, not from the orders themselves.
+     */
+    private void createSummaryReport(Sheet sheet, CellStyle titleStyle) {
+        OrderStats total = orderStatsService.getStats(OrderStatsService.DIMENSION_TOTAL, null);
+
         // Create title
         Row titleRow = sheet.createRow(0);
         Cell titleCell = titleRow.createCell(0);
         titleCell.setCellValue("Orders Summary Report");
-        
-        CellStyle titleStyle = sheet.getWorkbook().createCellStyle();
-        Font titleFont = sheet.getWorkbook().createFont();
-        titleFont.setBold(true);
-        titleFont.setFontHeight((short) 16);
-        titleStyle.setFont(titleFont);
         titleCell.setCellStyle(titleStyle);
         
         // Summary statistics
@@ -188,48 +452,36 @@ public class OrderExcelServiceImpl implements OrderExcelService {
         // Total orders
         Row totalOrdersRow = sheet.createRow(rowNum++);
         totalOrdersRow.createCell(0).setCellValue("Total Orders:");
-        totalOrdersRow.createCell(1).setCellValue(orders.size());
-        
-        // Count by status
-        long pendingCount = orders.stream().filter(o -> "PENDING".equals(o.getOrderStatus())).count();
-        long confirmedCount = orders.stream().filter(o -> "CONFIRMED".equals(o.getOrderStatus())).count();
-        long shippedCount = orders.stream().filter(o -> "SHIPPED".equals(o.getOrderStatus())).count();
-        long deliveredCount = orders.stream().filter(o -> "DELIVERED".equals(o.getOrderStatus())).count();
-        long cancelledCount = orders.stream().filter(o -> "CANCELLED".equals(o.getOrderStatus())).count();
+        totalOrdersRow.createCell(1).setCellValue(total.getOrderCount());
         
         Row pendingRow = sheet.createRow(rowNum++);
         pendingRow.createCell(0).setCellValue("Pending Orders:");
-        pendingRow.createCell(1).setCellValue(pendingCount);
+        pendingRow.createCell(1).setCellValue(statusCount("PENDING"));
         
         Row confirmedRow = sheet.createRow(rowNum++);
         confirmedRow.createCell(0).setCellValue("Confirmed Orders:");
-        confirmedRow.createCell(1).setCellValue(confirmedCount);
+        confirmedRow.createCell(1).setCellValue(statusCount("CONFIRMED"));
         
         Row shippedRow = sheet.createRow(rowNum++);
         shippedRow.createCell(0).setCellValue("Shipped Orders:");
-        shippedRow.createCell(1).setCellValue(shippedCount);
+        shippedRow.createCell(1).setCellValue(statusCount("SHIPPED"));
         
         Row deliveredRow = sheet.createRow(rowNum++);
         deliveredRow.createCell(0).setCellValue("Delivered Orders:");
-        deliveredRow.createCell(1).setCellValue(deliveredCount);
+        deliveredRow.createCell(1).setCellValue(statusCount("DELIVERED"));
         
         Row cancelledRow = sheet.createRow(rowNum++);
         cancelledRow.createCell(0).setCellValue("Cancelled Orders:");
-        cancelledRow.createCell(1).setCellValue(cancelledCount);
+        cancelledRow.createCell(1).setCellValue(statusCount("CANCELLED"));
         
         // Total revenue
-        double totalRevenue = orders.stream()
-            .filter(o -> !"CANCELLED".equals(o.getOrderStatus()))
-            .mapToDouble(o -> o.getTotalAmount() != null ? o.getTotalAmount().doubleValue() : 0.0)
-            .sum();
-        
         Row revenueRow = sheet.createRow(rowNum++);
         revenueRow.createCell(0).setCellValue("Total Revenue:");
-        revenueRow.createCell(1).setCellValue(totalRevenue);
+        revenueRow.createCell(1).setCellValue(total.getRevenue().doubleValue());
+    }
         
-        // Auto-size columns
-        sheet.autoSizeColumn(0);
-        sheet.autoSizeColumn(1);
+    private long statusCount(String status) {
+        return orderStatsService.getStats(OrderStatsService.DIMENSION_STATUS, status).getOrderCount();
     }
 
     private String formatAddress(com.viha.freshmart.dao.entity.Address address) {
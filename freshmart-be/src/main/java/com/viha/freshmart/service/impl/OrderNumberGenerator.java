@@ -0,0 +1,100 @@
+package com.viha.freshmart.service.impl;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Order numbers that are unique across nodes at any rate, without locking:
+ * "ORD", the UTC time to the second, the node and a sequence within the
+ * second, e.g. ORD20261018093012-007-00042. Numbers from one node sort in the
+ * order they were taken.
+ *
+ * The second and the sequence share one atomic counter. Beyond 100000 numbers
+ * in a second the sequence carries into the next second, so the node runs
+ * slightly ahead of the clock instead of repeating a number; a clock stepping
+ * back is absorbed the same way. UTC keeps the hour repeated when daylight
+ * saving ends from repeating numbers.
+ */
+final class OrderNumberGenerator {
+
+    static final int MAX_NODES = 1000;
+
+    private static final long SEQUENCES = 100_000;
+    private static final int SEQUENCE_DIGITS = 5;
+    // "ORD" yyyyMMddHHmmss "-" node "-"
+    private static final int PREFIX_LENGTH = 3 + 14 + 1 + 3 + 1;
+
+    /**
+     * The number up to the sequence, shared by every number of its second
+     */
+    private static final class Prefix {
+        private final long second;
+        private final char[] chars;
+
+        Prefix(long second, int node) {
+            this.second = second;
+            this.chars = new char[PREFIX_LENGTH + SEQUENCE_DIGITS];
+            LocalDateTime time = LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC);
+            chars[0] = 'O';
+            chars[1] = 'R';
+            chars[2] = 'D';
+            int at = 3;
+            at = digits(chars, at, time.getYear(), 4);
+            at = digits(chars, at, time.getMonthValue(), 2);
+            at = digits(chars, at, time.getDayOfMonth(), 2);
+            at = digits(chars, at, time.getHour(), 2);
+            at = digits(chars, at, time.getMinute(), 2);
+            at = digits(chars, at, time.getSecond(), 2);
+            chars[at++] = '-';
+            at = digits(chars, at, node, 3);
+            chars[at] = '-';
+        }
+    }
+
+    private final int node;
+    // second * SEQUENCES + sequence of the last number taken
+    private final AtomicLong last = new AtomicLong();
+    private volatile Prefix prefix;
+
+    OrderNumberGenerator(int node) {
+        if (node < 0 || node >= MAX_NODES) {
+            throw new IllegalArgumentException("Order number node must be between 0 and " + (MAX_NODES - 1));
+        }
+        this.node = node;
+    }
+
+    String next() {
+        long now = System.currentTimeMillis() / 1000 * SEQUENCES;
+        long previous;
+        long next;
+        do {
+            previous = last.get();
+            next = Math.max(previous + 1, now);
+        } while (!last.compareAndSet(previous, next));
+
+        long second = next / SEQUENCES;
+        Prefix current = prefix;
+        if (current == null || current.second != second) {
+            current = new Prefix(second, node);
+            prefix = current;
+        }
+        char[] chars = Arrays.copyOf(current.chars, current.chars.length);
+        digits(chars, PREFIX_LENGTH, next % SEQUENCES, SEQUENCE_DIGITS);
+        return new String(chars);
+    }
+
+    // Helper methods
+
+    /**
+     * Writes the value zero-padded to width at the given position, returning the position after it
+     */
+    private static int digits(char[] chars, int at, long value, int width) {
+        for (int i = at + width - 1; i >= at; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return at + width;
+    }
+}
@@ -1,6 +1,16 @@
 package com.viha.freshmart.service.impl;
 
+import org.bson.Document;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import com.viha.freshmart.dao.entity.Cart;
@@ -8,33 +18,80 @@ import com.viha.freshmart.dao.entity.CartItem;
 import com.viha.freshmart.dao.entity.Customer;
 import com.viha.freshmart.dao.entity.Order;
 import com.viha.freshmart.dao.entity.OrderItem;
+import com.viha.freshmart.dao.entity.Product;
+import com.viha.freshmart.dao.entity.ProductSnapshot;
 import com.viha.freshmart.dao.repository.CustomerRepository;
 import com.viha.freshmart.dao.repository.OrderRepository;
+import com.viha.freshmart.exception.OrderNotFoundException;
+import com.mongodb.bulk.BulkWriteError;
+import com.viha.freshmart.service.core.BulkOrderResult;
 import com.viha.freshmart.service.core.CartService;
+import com.viha.freshmart.service.core.CursorPage;
+import com.viha.freshmart.service.core.InventoryService;
 import com.viha.freshmart.service.core.OrderService;
+import com.viha.freshmart.service.core.OrderStatsService;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 @Service
 public class OrderServiceImpl implements OrderService {
 
+    private static final Set<String> ORDER_SORT_FIELDS = Set.of("orderDate");
+    // Statuses of orders whose goods left the warehouse
+    private static final Set<String> SHIPPED_STATUSES = Set.of("SHIPPED", "DELIVERED");
+    private static final String COUNTERS_COLLECTION = "counters";
+    private static final String ORDER_NUMBER_NODE_COUNTER = "orderNumberNode";
+    private static final int MAX_ORDER_NUMBER_ATTEMPTS = 3;
+
     @Autowired
     private OrderRepository orderRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
     @Autowired
     private CustomerRepository customerRepository;
 
     @Autowired
     private CartService cartService;
 
+    @Autowired
+    private OrderStatsService orderStatsService;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    // Node part of generated order numbers; negative to lease one from the database on first use
+    @Value("${app.orders.node-id:-1}")
+    private int orderNumberNode;
+
+    private volatile OrderNumberGenerator orderNumbers;
+
+    // Orders per unordered bulk write of a bulk transition, and orders accepted per call
+    @Value("${app.orders.bulk.chunk-size:1000}")
+    private int bulkChunkSize;
+
+    @Value("${app.orders.bulk.max-orders:20000}")
+    private int bulkMaxOrders;
+
     @Override
-    public List<Order> getAllOrders() {
-        return orderRepository.findAll();
+    public <T> CursorPage<T> getAllOrders(String sort, String cursor, Integer limit, Class<T> type) {
+        return KeysetQueries.page(mongoTemplate, Order.class, type, null, sort, "id", ORDER_SORT_FIELDS, cursor, limit);
     }
 
     @Override
@@ -48,49 +105,54 @@ public class OrderServiceImpl implements OrderService {
     }
 
     @Override
-    public List<Order> getOrdersByCustomer(String customerId) {
-        return orderRepository.findByCustomerIdOrderByOrderDateDesc(customerId);
+    public <T> List<T> getOrdersByCustomer(String customerId, Class<T> type) {
+        return orderRepository.findByCustomerIdOrderByOrderDateDesc(customerId, type);
     }
 
     @Override
-    public List<Order> getOrdersByStatus(String status) {
-        return orderRepository.findByOrderStatus(status);
+    public <T> List<T> getOrdersByStatus(String status, Class<T> type) {
+        return orderRepository.findByOrderStatus(status, type);
     }
 
     @Override
-    public List<Order> getOrdersByPaymentStatus(String paymentStatus) {
-        return orderRepository.findByPaymentStatus(paymentStatus);
+    public <T> List<T> getOrdersByPaymentStatus(String paymentStatus, Class<T> type) {
+        return orderRepository.findByPaymentStatus(paymentStatus, type);
     }
 
     @Override
-    public List<Order> getOrdersByCustomerAndStatus(String customerId, String status) {
-        return orderRepository.findByCustomerIdAndOrderStatus(customerId, status);
+    public <T> List<T> getOrdersByCustomerAndStatus(String customerId, String status, Class<T> type) {
+        return orderRepository.findByCustomerIdAndOrderStatus(customerId, status, type);
     }
 
     @Override
-    public List<Order> getOrdersByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
-        return orderRepository.findByOrderDateBetween(startDate, endDate);
+    public <T> List<T> getOrdersByDateRange(LocalDateTime startDate, LocalDateTime endDate, Class<T> type) {
+        return orderRepository.findByOrderDateBetween(startDate, endDate, type);
     }
 
     @Override
     public Long getOrderCountByStatus(String status) {
-        return orderRepository.countByOrderStatus(status);
+        return orderStatsService.getStats(OrderStatsService.DIMENSION_STATUS, status).getOrderCount();
     }
 
     @Override
     public Long getOrderCountByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
-        return orderRepository.countByOrderDateBetween(startDate, endDate);
+        return orderStatsService.getOrderCountByDateRange(startDate, endDate);
     }
 
     @Override
     public Order createOrder(Order order) {
-        if (order.getOrderNumber() == null || order.getOrderNumber().isEmpty()) {
+        boolean generatedNumber = order.getOrderNumber() == null || order.getOrderNumber().isEmpty();
+        if (generatedNumber) {
             order.setOrderNumber(generateOrderNumber());
         }
         order.setCreatedAt(LocalDateTime.now());
         order.setUpdatedAt(LocalDateTime.now());
         order.setOrderDate(LocalDateTime.now());
-        return orderRepository.save(order);
+        return orderStatsService.recording(() -> {
+            Order savedOrder = saveNewOrder(order, generatedNumber);
+            orderStatsService.recordOrderCreated(savedOrder);
+            return savedOrder;
+        });
     }
 
     @Override
@@ -111,14 +173,33 @@ public class OrderServiceImpl implements OrderService {
             throw new RuntimeException("Customer not found");
         }
 
-        // Convert cart items to order items
+        // Convert cart items to order items; the products they refer to are loaded in one query
+        List<String> productIds = new ArrayList<>();
+        for (CartItem cartItem : cart.getCartItems()) {
+            productIds.add(cartItem.getProduct().getId());
+        }
+        Map<String, Product> products = new HashMap<>();
+        for (Product product : mongoTemplate.find(query(where("id").in(productIds)), Product.class)) {
+            products.put(product.getId(), product);
+        }
+
         List<OrderItem> orderItems = new ArrayList<>();
         for (CartItem cartItem : cart.getCartItems()) {
+            ProductSnapshot snapshot = cartItem.getProduct();
+            Product product = products.get(snapshot.getId());
+            if (product == null) {
+                product = new Product();
+                product.setId(snapshot.getId());
+            }
+            BigDecimal unitPrice = cartItem.getUnitPrice() != null ? cartItem.getUnitPrice() : snapshot.getPrice();
             OrderItem orderItem = new OrderItem();
-            orderItem.setProduct(cartItem.getProduct());
+            orderItem.setProduct(product);
+            orderItem.setProductName(snapshot.getName());
+            orderItem.setProductImage(snapshot.getMainImage());
+            orderItem.setUnit(snapshot.getUnit());
             orderItem.setQuantity(cartItem.getQuantity());
-            orderItem.setUnitPrice(cartItem.getProduct().getPrice());
-            orderItem.setTotalPrice(cartItem.getProduct().getPrice().multiply(BigDecimal.valueOf(cartItem.getQuantity())));
+            orderItem.setUnitPrice(unitPrice);
+            orderItem.setTotalPrice(unitPrice.multiply(BigDecimal.valueOf(cartItem.getQuantity())));
             orderItems.add(orderItem);
         }
         order.setOrderItems(orderItems);
@@ -141,8 +222,21 @@ public class OrderServiceImpl implements OrderService {
         order.setOrderNumber(generateOrderNumber());
         order.setOrderStatus("PENDING");
         order.setPaymentStatus("PENDING");
-        
-        Order savedOrder = orderRepository.save(order);
+
+        // Stock is reserved under the order's id before the order exists, and put back if it cannot be saved
+        order.setId(new ObjectId().toHexString());
+        reserveStock(order);
+        Order savedOrder = orderStatsService.recording(() -> {
+            Order saved;
+            try {
+                saved = saveNewOrder(order, true);
+            } catch (RuntimeException e) {
+                inventoryService.release(order.getId());
+                throw e;
+            }
+            orderStatsService.recordOrderCreated(saved);
+            return saved;
+        });
         
         // Clear the cart after creating order
         cartService.clearCart(customerId);
@@ -152,120 +246,396 @@ public class OrderServiceImpl implements OrderService {
 
     @Override
     public Order updateOrder(String id, Order order) {
-        Optional<Order> existingOrderOpt = orderRepository.findById(id);
-        if (!existingOrderOpt.isPresent()) {
-            throw new RuntimeException("Order not found");
-        }
-
-        Order existingOrder = existingOrderOpt.get();
-        existingOrder.setUpdatedAt(LocalDateTime.now());
-        
-        // Update allowed fields
+        // Only the edited fields are written, so a status change made meanwhile is kept
+        LocalDateTime now = LocalDateTime.now();
+        Update update = new Update().set("updatedAt", now);
         if (order.getPaymentMethod() != null) {
-            existingOrder.setPaymentMethod(order.getPaymentMethod());
+            update.set("paymentMethod", order.getPaymentMethod());
         }
         if (order.getShippingAddress() != null) {
-            existingOrder.setShippingAddress(order.getShippingAddress());
+            update.set("shippingAddress", order.getShippingAddress());
         }
         if (order.getBillingAddress() != null) {
-            existingOrder.setBillingAddress(order.getBillingAddress());
+            update.set("billingAddress", order.getBillingAddress());
         }
         if (order.getDeliveryInstructions() != null) {
-            existingOrder.setDeliveryInstructions(order.getDeliveryInstructions());
+            update.set("deliveryInstructions", order.getDeliveryInstructions());
         }
 
-        return orderRepository.save(existingOrder);
+        Order updatedOrder = orderStatsService.recording(() -> {
+            Order existingOrder = mongoTemplate.findAndModify(query(where("id").is(id)), update,
+                    FindAndModifyOptions.options().returnNew(false), Order.class);
+            if (existingOrder == null) {
+                return null;
+            }
+
+            String previousPaymentMethod = existingOrder.getPaymentMethod();
+            existingOrder.setUpdatedAt(now);
+            if (order.getPaymentMethod() != null) {
+                existingOrder.setPaymentMethod(order.getPaymentMethod());
+            }
+            if (order.getShippingAddress() != null) {
+                existingOrder.setShippingAddress(order.getShippingAddress());
+            }
+            if (order.getBillingAddress() != null) {
+                existingOrder.setBillingAddress(order.getBillingAddress());
+            }
+            if (order.getDeliveryInstructions() != null) {
+                existingOrder.setDeliveryInstructions(order.getDeliveryInstructions());
+            }
+            orderStatsService.recordPaymentMethodChange(existingOrder, previousPaymentMethod);
+            return existingOrder;
+        });
+        if (updatedOrder == null) {
+            throw new OrderNotFoundException(id);
+        }
+        return updatedOrder;
     }
 
     @Override
     public Order updateOrderStatus(String id, String status) {
-        Optional<Order> orderOpt = orderRepository.findById(id);
-        if (!orderOpt.isPresent()) {
-            throw new RuntimeException("Order not found");
+        Update update = new Update();
+        LocalDateTime now = LocalDateTime.now();
+        if ("DELIVERED".equals(status)) {
+            update.set("actualDeliveryDate", now);
         }
-
-        Order order = orderOpt.get();
-        order.setOrderStatus(status);
-        order.setUpdatedAt(LocalDateTime.now());
-        return orderRepository.save(order);
+        Order order = transition(id, status, update, now);
+        if ("DELIVERED".equals(status)) {
+            order.setActualDeliveryDate(now);
+        } else if ("CANCELLED".equals(status)) {
+            inventoryService.release(id);
+        }
+        return order;
     }
 
     @Override
     public Order updatePaymentStatus(String id, String paymentStatus) {
-        Optional<Order> orderOpt = orderRepository.findById(id);
-        if (!orderOpt.isPresent()) {
-            throw new RuntimeException("Order not found");
+        LocalDateTime now = LocalDateTime.now();
+        Set<String> before = OrderStateMachine.paymentStatusesBefore(paymentStatus);
+        Order order = orderStatsService.recording(() -> {
+            Order previous = mongoTemplate.findAndModify(
+                    query(where("id").is(id).and("paymentStatus").in(before)),
+                    new Update().set("paymentStatus", paymentStatus).set("updatedAt", now),
+                    FindAndModifyOptions.options().returnNew(false), Order.class);
+            if (previous != null) {
+                String previousPaymentStatus = previous.getPaymentStatus();
+                previous.setPaymentStatus(paymentStatus);
+                previous.setUpdatedAt(now);
+                orderStatsService.recordPaymentStatusChange(previous, previousPaymentStatus);
+            }
+            return previous;
+        });
+        if (order == null) {
+            requireOrder(id);
+            throw new IllegalStateException("Payment of order " + id + " cannot become " + paymentStatus);
         }
-
-        Order order = orderOpt.get();
-        order.setPaymentStatus(paymentStatus);
-        order.setUpdatedAt(LocalDateTime.now());
-        return orderRepository.save(order);
+        if ("PAID".equals(paymentStatus)) {
+            inventoryService.commit(id);
+        }
+        return order;
     }
 
     @Override
     public Order confirmOrder(String id) {
-        Optional<Order> orderOpt = orderRepository.findById(id);
-        if (!orderOpt.isPresent()) {
-            throw new RuntimeException("Order not found");
-        }
-
-        Order order = orderOpt.get();
-        order.setOrderStatus("CONFIRMED");
-        order.setUpdatedAt(LocalDateTime.now());
-        return orderRepository.save(order);
+        return transition(id, "CONFIRMED", new Update(), LocalDateTime.now());
     }
 
     @Override
     public Order shipOrder(String id, String trackingNumber) {
-        Optional<Order> orderOpt = orderRepository.findById(id);
-        if (!orderOpt.isPresent()) {
-            throw new RuntimeException("Order not found");
-        }
-
-        Order order = orderOpt.get();
-        order.setOrderStatus("SHIPPED");
+        Order order = transition(id, "SHIPPED", new Update().set("trackingNumber", trackingNumber), LocalDateTime.now());
         order.setTrackingNumber(trackingNumber);
-        order.setUpdatedAt(LocalDateTime.now());
-        return orderRepository.save(order);
+        return order;
     }
 
     @Override
     public Order deliverOrder(String id) {
-        Optional<Order> orderOpt = orderRepository.findById(id);
-        if (!orderOpt.isPresent()) {
-            throw new RuntimeException("Order not found");
-        }
-
-        Order order = orderOpt.get();
-        order.setOrderStatus("DELIVERED");
-        order.setActualDeliveryDate(LocalDateTime.now());
-        order.setUpdatedAt(LocalDateTime.now());
-        return orderRepository.save(order);
+        LocalDateTime now = LocalDateTime.now();
+        Order order = transition(id, "DELIVERED", new Update().set("actualDeliveryDate", now), now);
+        order.setActualDeliveryDate(now);
+        return order;
     }
 
     @Override
     public Order cancelOrder(String id, String reason) {
-        Optional<Order> orderOpt = orderRepository.findById(id);
-        if (!orderOpt.isPresent()) {
-            throw new RuntimeException("Order not found");
-        }
-
-        Order order = orderOpt.get();
-        order.setOrderStatus("CANCELLED");
+        Order order = transition(id, "CANCELLED", new Update().set("cancelReason", reason), LocalDateTime.now());
         order.setCancelReason(reason);
-        order.setUpdatedAt(LocalDateTime.now());
-        return orderRepository.save(order);
+        inventoryService.release(id);
+        return order;
+    }
+
+    @Override
+    public BulkOrderResult confirmOrders(List<String> ids) {
+        return bulkTransition(ids, "CONFIRMED", id -> new Update());
+    }
+
+    @Override
+    public BulkOrderResult shipOrders(Map<String, String> trackingNumbers) {
+        return bulkTransition(new ArrayList<>(trackingNumbers.keySet()), "SHIPPED",
+                id -> new Update().set("trackingNumber", trackingNumbers.get(id)));
+    }
+
+    @Override
+    public BulkOrderResult deliverOrders(List<String> ids) {
+        LocalDateTime now = LocalDateTime.now();
+        return bulkTransition(ids, "DELIVERED", id -> new Update().set("actualDeliveryDate", now));
+    }
+
+    @Override
+    public BulkOrderResult cancelOrders(List<String> ids, String reason) {
+        BulkOrderResult result = bulkTransition(ids, "CANCELLED", id -> new Update().set("cancelReason", reason));
+        for (BulkOrderResult.OrderResult orderResult : result.getResults()) {
+            if (BulkOrderResult.UPDATED.equals(orderResult.getOutcome())) {
+                inventoryService.release(orderResult.getOrderId());
+            }
+        }
+        return result;
     }
 
     @Override
     public void deleteOrder(String id) {
-        orderRepository.deleteById(id);
+        Order deletedOrder = orderStatsService.recording(() -> {
+            Order order = mongoTemplate.findAndRemove(query(where("id").is(id)), Order.class);
+            if (order != null) {
+                orderStatsService.recordOrderDeleted(order);
+            }
+            return order;
+        });
+        if (deletedOrder != null) {
+            // Stock comes back only for orders that never shipped
+            if (OrderStateMachine.orderStatusesBefore("CANCELLED").contains(deletedOrder.getOrderStatus())) {
+                inventoryService.release(id);
+            } else {
+                inventoryService.fulfil(List.of(id));
+            }
+        }
     }
 
     @Override
     public String generateOrderNumber() {
-        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
-        return "ORD" + timestamp;
+        OrderNumberGenerator generator = orderNumbers;
+        if (generator == null) {
+            generator = createOrderNumberGenerator();
+        }
+        return generator.next();
+    }
+
+    // Helper methods
+
+    /**
+     * Moves the order to the given status in one update that only applies
+     * while the order is in a status allowed to move there, also setting the
+     * fields in update. Returns the order as it is after the update; fields set
+     * through update besides the status and updatedAt are left to the caller.
+     *
+     * @throws IllegalArgumentException for an unknown status
+     * @throws OrderNotFoundException when the order does not exist
+     * @throws IllegalStateException when the order is not in a status that can
+     *         move to the given one, including when another transition got
+     *         there first
+     */
+    private Order transition(String id, String status, Update update, LocalDateTime now) {
+        Set<String> before = OrderStateMachine.orderStatusesBefore(status);
+        Order order = orderStatsService.recording(() -> {
+            Order previous = mongoTemplate.findAndModify(
+                    query(where("id").is(id).and("orderStatus").in(before)),
+                    update.set("orderStatus", status).set("updatedAt", now),
+                    FindAndModifyOptions.options().returnNew(false), Order.class);
+            if (previous != null) {
+                String previousStatus = previous.getOrderStatus();
+                previous.setOrderStatus(status);
+                previous.setUpdatedAt(now);
+                orderStatsService.recordStatusChange(previous, previousStatus);
+            }
+            return previous;
+        });
+        if (order == null) {
+            requireOrder(id);
+            throw new IllegalStateException("Order " + id + " cannot become " + status);
+        }
+        if (SHIPPED_STATUSES.contains(status)) {
+            inventoryService.fulfil(List.of(id));
+        }
+        return order;
+    }
+
+    /**
+     * Tells a missing order apart from one a conditional update did not match
+     */
+    private void requireOrder(String id) {
+        if (!mongoTemplate.exists(query(where("id").is(id)), Order.class)) {
+            throw new OrderNotFoundException(id);
+        }
+    }
+
+    /**
+     * Moves many orders to the given status in chunks. Each chunk is read once
+     * for the orders' current status, and the orders allowed to move are
+     * updated in one unordered bulk write, each update conditional on the
+     * status that was read. When fewer updates match than were sent, another
+     * change got to some orders in between; those are told apart by reading
+     * back which orders carry this call's update time.
+     */
+    private BulkOrderResult bulkTransition(List<String> ids, String status, Function<String, Update> fields) {
+        long start = System.currentTimeMillis();
+        Set<String> before = OrderStateMachine.orderStatusesBefore(status);
+        List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        if (distinctIds.size() > bulkMaxOrders) {
+            throw new IllegalArgumentException("At most " + bulkMaxOrders + " orders per call");
+        }
+        // Stored to the millisecond, so it can be compared with what is read back
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+        BulkOrderResult result = new BulkOrderResult(status);
+        for (int from = 0; from < distinctIds.size(); from += bulkChunkSize) {
+            List<String> chunk = distinctIds.subList(from, Math.min(from + bulkChunkSize, distinctIds.size()));
+            orderStatsService.recording(() -> {
+                bulkTransitionChunk(chunk, status, before, fields, now, result);
+                return null;
+            });
+        }
+        result.setDurationMillis(System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private void bulkTransitionChunk(List<String> ids, String status, Set<String> before,
+                                     Function<String, Update> fields, LocalDateTime now, BulkOrderResult result) {
+        Query current = query(where("id").in(ids));
+        current.fields().include("orderStatus", "paymentStatus", "paymentMethod", "orderDate", "totalAmount");
+        Map<String, Order> orders = new HashMap<>();
+        for (Order order : mongoTemplate.find(current, Order.class)) {
+            orders.put(order.getId(), order);
+        }
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Order.class);
+        List<String> operationIds = new ArrayList<>();
+        Map<String, BulkOrderResult.OrderResult> outcomes = new LinkedHashMap<>();
+        for (String id : ids) {
+            Order order = orders.get(id);
+            if (order == null) {
+                outcomes.put(id, new BulkOrderResult.OrderResult(id, BulkOrderResult.NOT_FOUND, null, "Order not found"));
+            } else if (!before.contains(order.getOrderStatus())) {
+                outcomes.put(id, new BulkOrderResult.OrderResult(id, BulkOrderResult.INVALID_STATUS, order.getOrderStatus(),
+                        "Cannot move from " + order.getOrderStatus() + " to " + status));
+            } else {
+                outcomes.put(id, new BulkOrderResult.OrderResult(id, BulkOrderResult.UPDATED, order.getOrderStatus(), null));
+                bulkOps.updateOne(query(where("id").is(id).and("orderStatus").is(order.getOrderStatus())),
+                        fields.apply(id).set("orderStatus", status).set("updatedAt", now));
+                operationIds.add(id);
+            }
+        }
+
+        if (!operationIds.isEmpty()) {
+            int failed = 0;
+            long matched;
+            try {
+                matched = bulkOps.execute().getMatchedCount();
+            } catch (BulkOperationException e) {
+                // Unordered bulk: everything except the reported operations was attempted
+                for (BulkWriteError error : e.getErrors()) {
+                    BulkOrderResult.OrderResult outcome = outcomes.get(operationIds.get(error.getIndex()));
+                    outcome.setOutcome(BulkOrderResult.FAILED);
+                    outcome.setMessage(error.getMessage());
+                    failed++;
+                }
+                matched = e.getResult().getMatchedCount();
+            }
+            if (matched < operationIds.size() - failed) {
+                markConflicts(operationIds, status, now, outcomes);
+            }
+        }
+
+        List<Order> moved = new ArrayList<>();
+        List<String> previousStatuses = new ArrayList<>();
+        for (BulkOrderResult.OrderResult outcome : outcomes.values()) {
+            result.add(outcome);
+            if (BulkOrderResult.UPDATED.equals(outcome.getOutcome())) {
+                Order order = orders.get(outcome.getOrderId());
+                order.setOrderStatus(status);
+                moved.add(order);
+                previousStatuses.add(outcome.getPreviousStatus());
+            }
+        }
+        if (!moved.isEmpty()) {
+            if (SHIPPED_STATUSES.contains(status)) {
+                List<String> movedIds = new ArrayList<>();
+                for (Order order : moved) {
+                    movedIds.add(order.getId());
+                }
+                inventoryService.fulfil(movedIds);
+            }
+            orderStatsService.recordStatusChanges(moved, previousStatuses);
+        }
+    }
+
+    /**
+     * Marks the orders that were meant to be updated but do not carry this
+     * call's status and update time as changed by someone else in between
+     */
+    private void markConflicts(List<String> operationIds, String status, LocalDateTime now,
+                               Map<String, BulkOrderResult.OrderResult> outcomes) {
+        Query applied = query(where("id").in(operationIds).and("orderStatus").is(status).and("updatedAt").is(now));
+        applied.fields().include("id");
+        Set<String> appliedIds = new HashSet<>();
+        for (Order order : mongoTemplate.find(applied, Order.class)) {
+            appliedIds.add(order.getId());
+        }
+        for (String id : operationIds) {
+            BulkOrderResult.OrderResult outcome = outcomes.get(id);
+            if (BulkOrderResult.UPDATED.equals(outcome.getOutcome()) && !appliedIds.contains(id)) {
+                outcome.setOutcome(BulkOrderResult.CONFLICT);
+                outcome.setMessage("Order changed while being updated");
+            }
+        }
+    }
+
+    /**
+     * The generator for this instance, created once. Without a configured node
+     * each start leases the next node from a counter, so instances running at
+     * the same time get different nodes.
+     */
+    private synchronized OrderNumberGenerator createOrderNumberGenerator() {
+        if (orderNumbers == null) {
+            int node = orderNumberNode;
+            if (node < 0) {
+                Document counter = mongoTemplate.findAndModify(
+                        query(where("_id").is(ORDER_NUMBER_NODE_COUNTER)),
+                        new Update().inc("value", 1),
+                        FindAndModifyOptions.options().returnNew(true).upsert(true),
+                        Document.class, COUNTERS_COLLECTION);
+                node = (int) (counter.get("value", Number.class).longValue() % OrderNumberGenerator.MAX_NODES);
+                System.out.println("Leased order number node " + node);
+            }
+            orderNumbers = new OrderNumberGenerator(node);
+        }
+        return orderNumbers;
+    }
+
+    /**
+     * Saves a new order. A generated number that is already taken, which only
+     * happens when two instances share a node, is replaced and the save retried;
+     * a number given by the caller is not.
+     */
+    private Order saveNewOrder(Order order, boolean generatedNumber) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return orderRepository.save(order);
+            } catch (DuplicateKeyException e) {
+                if (!generatedNumber || attempt == MAX_ORDER_NUMBER_ATTEMPTS) {
+                    throw e;
+                }
+                order.setOrderNumber(generateOrderNumber());
+            }
+        }
+    }
+
+    /**
+     * Reserves the order's lines; orders paid on delivery do not wait for a payment
+     */
+    private void reserveStock(Order order) {
+        Map<String, Integer> quantities = new LinkedHashMap<>();
+        for (OrderItem item : order.getOrderItems()) {
+            quantities.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
+        }
+        inventoryService.reserve(order.getId(), quantities, !"COD".equals(order.getPaymentMethod()));
     }
 }
@@ -0,0 +1,76 @@
+package com.viha.freshmart.service.impl;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The order and payment statuses and the transitions allowed between them.
+ * A transition is applied as one update conditional on the current status
+ * being one it may come from, so an illegal transition and one that lost a
+ * race are both rejected by the database.
+ */
+final class OrderStateMachine {
+
+    private static final Map<String, Set<String>> ORDER_TRANSITIONS = Map.of(
+            "PENDING", Set.of("CONFIRMED", "CANCELLED"),
+            "CONFIRMED", Set.of("PROCESSING", "SHIPPED", "CANCELLED"),
+            "PROCESSING", Set.of("SHIPPED", "CANCELLED"),
+            "SHIPPED", Set.of("DELIVERED"),
+            "DELIVERED", Set.of(),
+            "CANCELLED", Set.of());
+
+    private static final Map<String, Set<String>> PAYMENT_TRANSITIONS = Map.of(
+            "PENDING", Set.of("PAID", "FAILED"),
+            "FAILED", Set.of("PENDING", "PAID"),
+            "PAID", Set.of("REFUNDED"),
+            "REFUNDED", Set.of());
+
+    private static final Map<String, Set<String>> ORDER_SOURCES = sources(ORDER_TRANSITIONS);
+    private static final Map<String, Set<String>> PAYMENT_SOURCES = sources(PAYMENT_TRANSITIONS);
+
+    private OrderStateMachine() {
+    }
+
+    /**
+     * The order statuses that may move to the given one
+     *
+     * @throws IllegalArgumentException for an unknown status
+     */
+    static Set<String> orderStatusesBefore(String status) {
+        return lookup(ORDER_SOURCES, status, "order status");
+    }
+
+    /**
+     * The payment statuses that may move to the given one
+     *
+     * @throws IllegalArgumentException for an unknown status
+     */
+    static Set<String> paymentStatusesBefore(String status) {
+        return lookup(PAYMENT_SOURCES, status, "payment status");
+    }
+
+    // Helper methods
+
+    private static Set<String> lookup(Map<String, Set<String>> sources, String status, String kind) {
+        Set<String> before = sources.get(status);
+        if (before == null) {
+            throw new IllegalArgumentException("Unknown " + kind + ": " + status);
+        }
+        return before;
+    }
+
+    private static Map<String, Set<String>> sources(Map<String, Set<String>> transitions) {
+        Map<String, Set<String>> sources = new HashMap<>();
+        for (String status : transitions.keySet()) {
+            sources.put(status, new LinkedHashSet<>());
+        }
+        for (Map.Entry<String, Set<String>> transition : transitions.entrySet()) {
+            for (String target : transition.getValue()) {
+                sources.get(target).add(transition.getKey());
+            }
+        }
+        return sources;
+    }
+}
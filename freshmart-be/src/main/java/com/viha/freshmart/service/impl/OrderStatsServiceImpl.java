@@ -0,0 +1,396 @@
+package com.viha.freshmart.service.impl;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.model.RenameCollectionOptions;
+import com.viha.freshmart.dao.entity.Order;
+import com.viha.freshmart.dao.entity.OrderStats;
+import com.viha.freshmart.dao.repository.OrderRepository;
+import com.viha.freshmart.service.core.OrderStatsService;
+import org.bson.types.Decimal128;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Keeps the order_stats buckets in step with the orders collection. Every write
+ * is turned into per-bucket deltas that are applied with a single bulk of $inc
+ * upserts, so reads never have to scan orders.
+ *
+ * A rebuild reads the orders in _id order, one batch at a time, while order
+ * writes made through {@link #recording} wait, so every change is either
+ * before or after a batch. A change to an order the scan has already passed
+ * was missed by it and is kept for the new buckets; a change to an order it
+ * has not reached yet will be read by it. The new buckets are written to a
+ * staging collection and renamed over order_stats, so readers see either the
+ * old or the new buckets.
+ */
+@Service
+public class OrderStatsServiceImpl implements OrderStatsService {
+
+    // Written after a full rebuild; without it the counters cannot be trusted
+    private static final String META_ID = "meta";
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    // Held for reading by order writes and their recording, and for writing
+    // while a rebuild reads a batch or installs its buckets. It only orders
+    // writes made in this process: the stats assume a single application
+    // instance, and changes recorded by another one during a rebuild are lost.
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+
+    // The running rebuild, or null
+    private volatile RebuildScan rebuild;
+
+    private volatile boolean initialized;
+
+    @Override
+    public <T> T recording(Supplier<T> write) {
+        rebuildLock.readLock().lock();
+        try {
+            return write.get();
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void recordOrderCreated(Order order) {
+        record(List.of(order), List.of(diff(null, order)));
+    }
+
+    @Override
+    public void recordStatusChange(Order order, String previousStatus) {
+        Order previous = copyOf(order);
+        previous.setOrderStatus(previousStatus);
+        record(List.of(order), List.of(diff(previous, order)));
+    }
+
+    @Override
+    public void recordStatusChanges(List<Order> orders, List<String> previousStatuses) {
+        List<Map<String, OrderStats>> changes = new ArrayList<>();
+        for (int i = 0; i < orders.size(); i++) {
+            Order previous = copyOf(orders.get(i));
+            previous.setOrderStatus(previousStatuses.get(i));
+            changes.add(diff(previous, orders.get(i)));
+        }
+        record(orders, changes);
+    }
+
+    @Override
+    public void recordPaymentStatusChange(Order order, String previousPaymentStatus) {
+        Order previous = copyOf(order);
+        previous.setPaymentStatus(previousPaymentStatus);
+        record(List.of(order), List.of(diff(previous, order)));
+    }
+
+    @Override
+    public void recordPaymentMethodChange(Order order, String previousPaymentMethod) {
+        Order previous = copyOf(order);
+        previous.setPaymentMethod(previousPaymentMethod);
+        record(List.of(order), List.of(diff(previous, order)));
+    }
+
+    @Override
+    public void recordOrderDeleted(Order order) {
+        record(List.of(order), List.of(diff(order, null)));
+    }
+
+    @Override
+    public OrderStats getStats(String dimension, String key) {
+        ensureInitialized();
+        OrderStats stats = mongoTemplate.findById(OrderStats.bucketId(dimension, key), OrderStats.class);
+        return stats != null ? stats : new OrderStats(dimension, key);
+    }
+
+    @Override
+    public List<OrderStats> getStatsByDimension(String dimension) {
+        ensureInitialized();
+        return mongoTemplate.find(query(where("dimension").is(dimension)).with(Sort.by("id")), OrderStats.class);
+    }
+
+    @Override
+    public List<OrderStats> getDailyStats(LocalDate startDate, LocalDate endDate) {
+        ensureInitialized();
+        // Day bucket ids sort chronologically, so the range is an _id index scan
+        Query query = query(where("id").gte(OrderStats.bucketId(DIMENSION_DAY, startDate.toString()))
+                .lte(OrderStats.bucketId(DIMENSION_DAY, endDate.toString())))
+                .with(Sort.by("id"));
+        return mongoTemplate.find(query, OrderStats.class);
+    }
+
+    @Override
+    public Long getOrderCountByDateRange(LocalDateTime startDate, LocalDateTime endDate) {
+        if (!startDate.toLocalTime().equals(LocalTime.MIDNIGHT)) {
+            return orderRepository.countByOrderDateBetween(startDate, endDate);
+        }
+
+        LocalDate lastDay;
+        if (endDate.toLocalTime().equals(LocalTime.MIDNIGHT)) {
+            lastDay = endDate.toLocalDate().minusDays(1);
+        } else if (!endDate.toLocalTime().isBefore(LocalTime.of(23, 59, 59))) {
+            lastDay = endDate.toLocalDate();
+        } else {
+            // Partial days cannot be answered from daily buckets
+            return orderRepository.countByOrderDateBetween(startDate, endDate);
+        }
+
+        long count = 0;
+        for (OrderStats day : getDailyStats(startDate.toLocalDate(), lastDay)) {
+            count += day.getOrderCount() != null ? day.getOrderCount() : 0;
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void rebuildStats() {
+        RebuildScan scan = new RebuildScan();
+        rebuildLock.writeLock().lock();
+        try {
+            rebuild = scan;
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+
+        try {
+            Map<String, OrderStats> buckets = new LinkedHashMap<>();
+            List<Order> batch;
+            do {
+                Query query = scan.scannedThrough == null ? new Query() : query(where("id").gt(scan.scannedThrough));
+                query.with(Sort.by("id")).limit(REBUILD_BATCH_SIZE);
+                query.fields().include("orderStatus", "paymentStatus", "paymentMethod", "orderDate", "totalAmount");
+                rebuildLock.writeLock().lock();
+                try {
+                    batch = mongoTemplate.find(query, Order.class);
+                    if (!batch.isEmpty()) {
+                        scan.scannedThrough = batch.get(batch.size() - 1).getId();
+                    }
+                    scan.complete = batch.size() < REBUILD_BATCH_SIZE;
+                } finally {
+                    rebuildLock.writeLock().unlock();
+                }
+                for (Order order : batch) {
+                    merge(buckets, contributions(order));
+                }
+            } while (!scan.complete);
+
+            rebuildLock.writeLock().lock();
+            try {
+                String collection = mongoTemplate.getCollectionName(OrderStats.class);
+                String staging = collection + "_rebuild";
+                mongoTemplate.dropCollection(staging);
+                if (!buckets.isEmpty()) {
+                    mongoTemplate.insert(buckets.values(), staging);
+                }
+                mongoTemplate.save(new OrderStats(META_ID, null), staging);
+                mongoTemplate.getCollection(staging).renameCollection(
+                        new MongoNamespace(mongoTemplate.getDb().getName(), collection),
+                        new RenameCollectionOptions().dropTarget(true));
+                initialized = true;
+
+                // Changes the scan missed, recorded in the old buckets only
+                Map<String, OrderStats> missed = new LinkedHashMap<>();
+                for (Map<String, OrderStats> change : scan.missed) {
+                    merge(missed, change.values());
+                }
+                applyDeltas(missed);
+                System.out.println("Rebuilt order stats: " + buckets.size() + " buckets, "
+                        + scan.missed.size() + " changes applied after the scan");
+            } finally {
+                rebuildLock.writeLock().unlock();
+            }
+        } finally {
+            rebuild = null;
+        }
+    }
+
+    // Helper methods
+
+    private void ensureInitialized() {
+        if (initialized) {
+            return;
+        }
+        synchronized (this) {
+            if (!initialized) {
+                if (mongoTemplate.exists(query(where("id").is(META_ID)), OrderStats.class)) {
+                    initialized = true;
+                } else {
+                    rebuildStats();
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the changes of the given orders, changes lining up with orders.
+     * While a rebuild runs, the changes of orders its scan has passed are also
+     * kept for the new buckets.
+     */
+    private void record(List<Order> orders, List<Map<String, OrderStats>> changes) {
+        rebuildLock.readLock().lock();
+        try {
+            RebuildScan scan = rebuild;
+            Map<String, OrderStats> deltas = new LinkedHashMap<>();
+            for (int i = 0; i < orders.size(); i++) {
+                if (changes.get(i).isEmpty()) {
+                    continue;
+                }
+                merge(deltas, changes.get(i).values());
+                if (scan != null && scan.passed(orders.get(i).getId())) {
+                    scan.missed.add(changes.get(i));
+                }
+            }
+            deltas.values().removeIf(delta -> delta.getOrderCount() == 0 && delta.getRevenue().signum() == 0);
+            applyDeltas(deltas);
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    private void applyDeltas(Map<String, OrderStats> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, OrderStats.class);
+            for (OrderStats delta : deltas.values()) {
+                Update update = new Update()
+                        .inc("orderCount", delta.getOrderCount())
+                        .set("updatedAt", now)
+                        .setOnInsert("dimension", delta.getDimension())
+                        .setOnInsert("key", delta.getKey());
+                if (delta.getRevenue().signum() != 0) {
+                    update.inc("revenue", new Decimal128(delta.getRevenue()));
+                }
+                bulkOps.upsert(query(where("id").is(delta.getId())), update);
+            }
+            bulkOps.execute();
+
+        } catch (RuntimeException e) {
+            // The order itself is saved; drop the marker so the next read rebuilds the counters
+            System.err.println("Failed to update order stats, scheduling rebuild: " + e.getMessage());
+            initialized = false;
+            try {
+                mongoTemplate.remove(query(where("id").is(META_ID)), OrderStats.class);
+            } catch (RuntimeException ignored) {
+                // Nothing more can be done until the database is reachable again
+            }
+        }
+    }
+
+    /**
+     * Adds each change to the bucket of the same id
+     */
+    private void merge(Map<String, OrderStats> buckets, Iterable<OrderStats> changes) {
+        for (OrderStats change : changes) {
+            OrderStats bucket = buckets.computeIfAbsent(change.getId(),
+                    id -> new OrderStats(change.getDimension(), change.getKey()));
+            bucket.setOrderCount(bucket.getOrderCount() + change.getOrderCount());
+            bucket.setRevenue(bucket.getRevenue().add(change.getRevenue()));
+        }
+    }
+
+    /**
+     * Per-bucket change between two versions of an order. Either side may be null
+     * for creates and deletes. Buckets that end up unchanged are left out.
+     */
+    private Map<String, OrderStats> diff(Order before, Order after) {
+        Map<String, OrderStats> deltas = new LinkedHashMap<>();
+        if (after != null) {
+            for (OrderStats contribution : contributions(after)) {
+                deltas.put(contribution.getId(), contribution);
+            }
+        }
+        if (before != null) {
+            for (OrderStats contribution : contributions(before)) {
+                OrderStats delta = deltas.computeIfAbsent(contribution.getId(),
+                        id -> new OrderStats(contribution.getDimension(), contribution.getKey()));
+                delta.setOrderCount(delta.getOrderCount() - contribution.getOrderCount());
+                delta.setRevenue(delta.getRevenue().subtract(contribution.getRevenue()));
+            }
+        }
+        deltas.values().removeIf(delta -> delta.getOrderCount() == 0 && delta.getRevenue().signum() == 0);
+        return deltas;
+    }
+
+    private List<OrderStats> contributions(Order order) {
+        BigDecimal revenue = !"CANCELLED".equals(order.getOrderStatus()) && order.getTotalAmount() != null
+                ? order.getTotalAmount() : BigDecimal.ZERO;
+
+        List<OrderStats> contributions = new ArrayList<>();
+        contributions.add(contribution(DIMENSION_TOTAL, null, revenue));
+        if (order.getOrderStatus() != null) {
+            contributions.add(contribution(DIMENSION_STATUS, order.getOrderStatus(), revenue));
+        }
+        if (order.getPaymentStatus() != null) {
+            contributions.add(contribution(DIMENSION_PAYMENT_STATUS, order.getPaymentStatus(), revenue));
+        }
+        if (order.getPaymentMethod() != null) {
+            contributions.add(contribution(DIMENSION_PAYMENT_METHOD, order.getPaymentMethod(), revenue));
+        }
+        if (order.getOrderDate() != null) {
+            contributions.add(contribution(DIMENSION_DAY, order.getOrderDate().toLocalDate().toString(), revenue));
+        }
+        return contributions;
+    }
+
+    private OrderStats contribution(String dimension, String key, BigDecimal revenue) {
+        OrderStats contribution = new OrderStats(dimension, key);
+        contribution.setOrderCount(1L);
+        contribution.setRevenue(revenue);
+        return contribution;
+    }
+
+    private Order copyOf(Order order) {
+        Order copy = new Order();
+        copy.setOrderStatus(order.getOrderStatus());
+        copy.setPaymentStatus(order.getPaymentStatus());
+        copy.setPaymentMethod(order.getPaymentMethod());
+        copy.setOrderDate(order.getOrderDate());
+        copy.setTotalAmount(order.getTotalAmount());
+        return copy;
+    }
+
+    /**
+     * How far a rebuild has read the orders, and the changes to orders it had
+     * already read. Written under the rebuild lock's write lock and read under
+     * its read lock.
+     */
+    private static final class RebuildScan {
+        // Id of the last order read; order ids are ObjectIds, which sort as their hex strings
+        private String scannedThrough;
+        private boolean complete;
+        private final Queue<Map<String, OrderStats>> missed = new ConcurrentLinkedQueue<>();
+
+        boolean passed(String orderId) {
+            return complete || (scannedThrough != null && orderId != null && orderId.compareTo(scannedThrough) <= 0);
+        }
+    }
+}
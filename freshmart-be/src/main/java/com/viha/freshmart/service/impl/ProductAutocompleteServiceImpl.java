@@ -0,0 +1,274 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.dao.entity.Category;
+import com.viha.freshmart.dao.entity.Product;
+import com.viha.freshmart.dao.repository.CategoryRepository;
+import com.viha.freshmart.dao.repository.ProductRepository;
+import com.viha.freshmart.service.core.ProductAutocompleteService;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * Typeahead suggestions from a SuggestionTrie over active product names,
+ * brands, active category names and tags used by several products. The trie
+ * and the suggestion maps it points into are built together and published as
+ * one immutable snapshot, so lookups take no locks and allocate only the
+ * result list. Any catalog change queues a rebuild in the background; until
+ * it completes the previous snapshot keeps being served.
+ *
+ * Each suggestion is also reachable from its later words, so "tomatoes" finds
+ * "Organic Roma Tomatoes". A product weighs more when it is featured, well
+ * rated and often reviewed; brands, categories and tags weigh what their
+ * products weigh together.
+ */
+@Service
+public class ProductAutocompleteServiceImpl implements ProductAutocompleteService {
+
+    private static final String TYPE_PRODUCT = "product";
+    private static final String TYPE_BRAND = "brand";
+    private static final String TYPE_CATEGORY = "category";
+    private static final String TYPE_TAG = "tag";
+
+    // Words of a suggestion after which it can still be found, counting from the first
+    private static final int MAX_KEY_WORDS = 4;
+
+    private static final class Snapshot {
+        private final SuggestionTrie trie;
+        private final List<Map<String, Object>> suggestions;
+
+        Snapshot(SuggestionTrie trie, List<Map<String, Object>> suggestions) {
+            this.trie = trie;
+            this.suggestions = suggestions;
+        }
+    }
+
+    private static final class Candidate {
+        private final String text;
+        private final String type;
+        private String id;
+        private int products;
+        private double weight;
+
+        Candidate(String text, String type) {
+            this.text = text;
+            this.type = type;
+        }
+    }
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    @Qualifier("catalogIndexExecutor")
+    private Executor catalogIndexExecutor;
+
+    @Value("${app.search.autocomplete.max-suggestions:10}")
+    private int maxSuggestions;
+
+    @Value("${app.search.autocomplete.min-tag-products:2}")
+    private int minTagProducts;
+
+    private volatile Snapshot snapshot;
+    private CoalescingRunner rebuildRunner;
+    private volatile long lastBuildMillis;
+    private volatile long lastBuiltAt;
+
+    @PostConstruct
+    public void initRebuildRunner() {
+        snapshot = new Snapshot(new SuggestionTrie(List.of(), List.of(), new double[0], maxSuggestions), List.of());
+        rebuildRunner = new CoalescingRunner(catalogIndexExecutor, this::rebuild);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuildAsync();
+    }
+
+    @Override
+    public List<Map<String, Object>> suggest(String prefix, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        String key = normalize(prefix);
+        if (key.isEmpty()) {
+            return List.of();
+        }
+        // "red " completes to "red apples" but not to "redcurrants"
+        if (Character.isWhitespace(prefix.charAt(prefix.length() - 1))) {
+            key += " ";
+        }
+
+        Snapshot current = snapshot;
+        int[] matches = current.trie.lookup(key, Math.min(limit, maxSuggestions));
+        List<Map<String, Object>> results = new ArrayList<>(matches.length);
+        for (int match : matches) {
+            results.add(current.suggestions.get(match));
+        }
+        return results;
+    }
+
+    @Override
+    public void rebuildAsync() {
+        rebuildRunner.request();
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Snapshot current = snapshot;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("suggestions", current.suggestions.size());
+        stats.put("keys", current.trie.keyCount());
+        stats.put("nodes", current.trie.nodeCount());
+        stats.put("lastBuildMillis", lastBuildMillis);
+        stats.put("lastBuiltAt", lastBuiltAt);
+        return stats;
+    }
+
+    // Helper methods
+
+    private void rebuild() {
+        long started = System.currentTimeMillis();
+        try {
+            Map<String, Candidate> candidates = new LinkedHashMap<>();
+            Map<String, Candidate> categoriesById = new HashMap<>();
+            for (Category category : categoryRepository.findByIsActiveTrueOrderBySortOrderAsc()) {
+                Candidate candidate = candidate(candidates, category.getName(), TYPE_CATEGORY);
+                if (candidate != null) {
+                    candidate.id = category.getId();
+                    candidate.weight = Math.max(candidate.weight, 1.0);
+                    categoriesById.put(category.getId(), candidate);
+                }
+            }
+
+            try (Stream<Product> products = productRepository.streamByIsActiveTrue()) {
+                products.forEach(product -> addProduct(candidates, categoriesById, product));
+            }
+
+            List<Map<String, Object>> suggestions = new ArrayList<>();
+            List<Double> weights = new ArrayList<>();
+            List<String> keys = new ArrayList<>();
+            List<Integer> keySuggestion = new ArrayList<>();
+            for (Candidate candidate : candidates.values()) {
+                if (TYPE_TAG.equals(candidate.type) && candidate.products < minTagProducts) {
+                    continue;
+                }
+                int index = suggestions.size();
+                suggestions.add(toSuggestion(candidate));
+                weights.add(candidate.weight);
+
+                List<String> words = InvertedIndex.tokenize(candidate.text);
+                for (int start = 0; start < words.size() && start < MAX_KEY_WORDS; start++) {
+                    keys.add(String.join(" ", words.subList(start, words.size())));
+                    keySuggestion.add(index);
+                }
+            }
+
+            double[] weightArray = new double[weights.size()];
+            for (int i = 0; i < weightArray.length; i++) {
+                weightArray[i] = weights.get(i);
+            }
+            SuggestionTrie trie = new SuggestionTrie(keys, keySuggestion, weightArray, maxSuggestions);
+            snapshot = new Snapshot(trie, Collections.unmodifiableList(suggestions));
+
+            lastBuildMillis = System.currentTimeMillis() - started;
+            lastBuiltAt = System.currentTimeMillis();
+            System.out.println("Autocomplete suggestions built: " + suggestions.size() + " suggestions, "
+                    + trie.nodeCount() + " trie nodes in " + lastBuildMillis + " ms");
+
+        } catch (RuntimeException e) {
+            System.err.println("Failed to build autocomplete suggestions: " + e.getMessage());
+        }
+    }
+
+    private void addProduct(Map<String, Candidate> candidates, Map<String, Candidate> categoriesById, Product product) {
+        double weight = productWeight(product);
+
+        Candidate name = candidate(candidates, product.getName(), TYPE_PRODUCT);
+        if (name != null) {
+            // Only a name that belongs to a single product can link to it
+            name.id = name.products == 0 ? product.getId() : null;
+            name.products++;
+            name.weight += weight;
+        }
+
+        Candidate brand = candidate(candidates, product.getBrand(), TYPE_BRAND);
+        if (brand != null) {
+            brand.products++;
+            brand.weight += weight / 2;
+        }
+
+        Candidate category = categoriesById.get(product.getCategoryId());
+        if (category != null) {
+            category.products++;
+            category.weight += weight / 2;
+        }
+
+        if (product.getTags() != null) {
+            for (String tagText : product.getTags()) {
+                Candidate tag = candidate(candidates, tagText, TYPE_TAG);
+                if (tag != null) {
+                    tag.products++;
+                    tag.weight += weight / 4;
+                }
+            }
+        }
+    }
+
+    /**
+     * The candidate for a text of a type, merging texts that only differ in case,
+     * accents or punctuation. Null for texts without any words.
+     */
+    private Candidate candidate(Map<String, Candidate> candidates, String text, String type) {
+        String key = normalize(text);
+        if (key.isEmpty()) {
+            return null;
+        }
+        return candidates.computeIfAbsent(type + ":" + key, k -> new Candidate(text.trim(), type));
+    }
+
+    private double productWeight(Product product) {
+        double weight = 1.0;
+        if (Boolean.TRUE.equals(product.getIsFeatured())) {
+            weight += 1.0;
+        }
+        if (product.getRating() != null) {
+            weight += Math.max(0.0, Math.min(5.0, product.getRating())) / 5.0;
+        }
+        if (product.getReviewCount() != null && product.getReviewCount() > 0) {
+            weight += Math.log10(1 + product.getReviewCount());
+        }
+        return weight;
+    }
+
+    private Map<String, Object> toSuggestion(Candidate candidate) {
+        Map<String, Object> suggestion = new LinkedHashMap<>();
+        suggestion.put("text", candidate.text);
+        suggestion.put("type", candidate.type);
+        suggestion.put("weight", Math.round(candidate.weight * 100) / 100.0);
+        if (candidate.id != null) {
+            suggestion.put("id", candidate.id);
+        }
+        return Collections.unmodifiableMap(suggestion);
+    }
+
+    private static String normalize(String text) {
+        return String.join(" ", InvertedIndex.tokenize(text));
+    }
+}
@@ -1,23 +1,48 @@
 package com.viha.freshmart.service.impl;
 
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
 import com.viha.freshmart.dao.entity.Product;
 import com.viha.freshmart.dao.repository.ProductRepository;
+import com.viha.freshmart.service.core.ImportProgressListener;
+import com.viha.freshmart.service.core.ImportResult;
+import com.viha.freshmart.service.core.InventoryService;
 import com.viha.freshmart.service.core.ProductExcelService;
+import com.viha.freshmart.service.core.ProductService;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.DeferredSXSSFSheet;
+import org.apache.poi.xssf.streaming.DeferredSXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ByteArrayResource;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 @Service
 public class ProductExcelServiceImpl implements ProductExcelService {
@@ -25,35 +50,66 @@ public class ProductExcelServiceImpl implements ProductExcelService {
     @Autowired
     private ProductRepository productRepository;
     
+    @Autowired
+    private MongoTemplate mongoTemplate;
+    
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private InventoryService inventoryService;
+    
+    @Autowired
+    @Qualifier("importExecutor")
+    private Executor importExecutor;
+    
     private static final String[] PRODUCT_HEADERS = {
         "Name", "Description", "Price", "Discount Price", "Stock Quantity", 
         "Unit","Status","Min Stock", "Max Stock", "Brand", "Main Image", "Images","SKU","barcode", "Is Organic", 
         "Is Featured", "Nutrition Info", "Storage Instructions",  "Supplier", "Tags", "Rating", "UID", "Category ID", "Sub CategoryId"
     };
     
+    // Column widths in characters, one per header. Fixed so exports never need autoSizeColumn.
+    private static final int[] PRODUCT_COLUMN_WIDTHS = {
+        30, 50, 12, 14, 14,
+        10, 12, 10, 10, 20, 40, 50, 16, 16, 10,
+        11, 40, 40, 20, 30, 8, 26, 26, 26
+    };
+    
+    @Value("${app.excel.export.row-window:100}")
+    private int rowAccessWindowSize;
+    
+    @Value("${app.import.chunk-size:1000}")
+    private int importChunkSize;
+    
+    @Value("${app.import.max-in-flight-chunks:8}")
+    private int maxInFlightChunks;
+    
+    @Value("${app.import.max-errors:1000}")
+    private int maxImportErrors;
+    
     @Override
-    public List<Product> importProductsFromExcel(MultipartFile file) {
-        List<Product> products = new ArrayList<>();
-        
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheetAt(0);
-            Iterator<Row> rows = sheet.iterator();
-            
-            // Skip header row
-            if (rows.hasNext()) {
-                rows.next();
-            }
-            
-            while (rows.hasNext()) {
-                Row currentRow = rows.next();
-                Product product = createProductFromRow(currentRow);
-                if (product != null) {
-                    products.add(product);
-                }
-            }
+    public ImportResult importProductsFromExcel(MultipartFile file) {
+        Path tempFile = null;
+        try {
+            tempFile = StreamingSheetReader.copyToTempFile(file);
+            return importProductsFromExcel(tempFile.toFile(), ImportProgressListener.NONE);
             
-            // Save all products
-            return productRepository.saveAll(products);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse Excel file: " + e.getMessage(), e);
+        } finally {
+            deleteTempFile(tempFile);
+        }
+    }
+    
+    @Override
+    public ImportResult importProductsFromExcel(File file, ImportProgressListener listener) {
+        ChunkedImport chunkedImport = new ChunkedImport(importExecutor, importChunkSize, maxInFlightChunks, maxImportErrors);
+        try {
+            ImportResult result = chunkedImport.run(file, PRODUCT_HEADERS.length, this::writeProductChunk, listener);
+            System.out.println("Imported products: " + result.getSuccessfulRecords() + " saved, "
+                    + result.getFailedRecords() + " failed in " + result.getDurationMillis() + " ms");
+            return result;
             
         } catch (IOException e) {
             throw new RuntimeException("Failed to parse Excel file: " + e.getMessage(), e);
@@ -62,26 +118,8 @@ public class ProductExcelServiceImpl implements ProductExcelService {
     
     @Override
     public ByteArrayResource exportProductsToExcel(List<Product> products) {
-        try (Workbook workbook = new XSSFWorkbook();
-             ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            
-            Sheet sheet = workbook.createSheet("Products");
-            
-            // Create header row
-            createHeaderRow(sheet);
-            
-            // Create data rows
-            int rowNum = 1;
-            for (Product product : products) {
-                createProductRow(sheet, product, rowNum++);
-            }
-            
-            // Auto-size columns
-            for (int i = 0; i < PRODUCT_HEADERS.length; i++) {
-                sheet.autoSizeColumn(i);
-            }
-            
-            workbook.write(out);
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            writeProductsWorkbook(products::stream, out);
             return new ByteArrayResource(out.toByteArray());
             
         } catch (IOException e) {
@@ -91,8 +129,18 @@ public class ProductExcelServiceImpl implements ProductExcelService {
     
     @Override
     public ByteArrayResource exportAllProductsToExcel() {
-        List<Product> products = productRepository.findByIsActiveTrue();
-        return exportProductsToExcel(products);
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            writeAllProductsToExcel(out);
+            return new ByteArrayResource(out.toByteArray());
+            
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create Excel file: " + e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public void writeAllProductsToExcel(OutputStream outputStream) throws IOException {
+        writeProductsWorkbook(productRepository::streamByIsActiveTrue, outputStream);
     }
     
     @Override
@@ -106,18 +154,18 @@ public class ProductExcelServiceImpl implements ProductExcelService {
             return false;
         }
         
-        try (Workbook workbook = new XSSFWorkbook(file.getInputStream())) {
-            Sheet sheet = workbook.getSheetAt(0);
-            Row headerRow = sheet.getRow(0);
+        Path tempFile = null;
+        try {
+            tempFile = StreamingSheetReader.copyToTempFile(file);
+            String[] header = StreamingSheetReader.readHeader(tempFile.toFile(), PRODUCT_HEADERS.length);
             
-            if (headerRow == null) {
+            if (header == null) {
                 return false;
             }
             
             // Validate header columns
             for (int i = 0; i < PRODUCT_HEADERS.length; i++) {
-                Cell cell = headerRow.getCell(i);
-                if (cell == null || !PRODUCT_HEADERS[i].equals(getCellStringValue(cell))) {
+                if (!PRODUCT_HEADERS[i].equals(header[i])) {
                     return false;
                 }
             }
@@ -126,6 +174,8 @@ public class ProductExcelServiceImpl implements ProductExcelService {
             
         } catch (IOException e) {
             return false;
+        } finally {
+            deleteTempFile(tempFile);
         }
     }
     
@@ -173,13 +223,47 @@ public class ProductExcelServiceImpl implements ProductExcelService {
     
     // Helper methods
     
-    private void createHeaderRow(Sheet sheet) {
-        Row headerRow = sheet.createRow(0);
-        CellStyle headerStyle = sheet.getWorkbook().createCellStyle();
-        Font headerFont = sheet.getWorkbook().createFont();
+    /**
+     * Writes the products workbook with a deferred SXSSF sheet: rows are generated
+     * while the file is being written, so only the row window is held in memory and
+     * no temp files are created. The product source is opened inside the generator.
+     */
+    private void writeProductsWorkbook(Supplier<Stream<Product>> productSource, OutputStream out) throws IOException {
+        try (DeferredSXSSFWorkbook workbook = new DeferredSXSSFWorkbook(rowAccessWindowSize)) {
+            DeferredSXSSFSheet sheet = workbook.createSheet("Products");
+            
+            // Styles must exist before writing starts
+            CellStyle headerStyle = createHeaderStyle(workbook);
+            for (int i = 0; i < PRODUCT_COLUMN_WIDTHS.length; i++) {
+                sheet.setColumnWidth(i, PRODUCT_COLUMN_WIDTHS[i] * 256);
+            }
+            
+            sheet.setRowGenerator(rowSheet -> {
+                createHeaderRow(rowSheet, headerStyle);
+                
+                try (Stream<Product> products = productSource.get()) {
+                    Iterator<Product> iterator = products.iterator();
+                    int rowNum = 1;
+                    while (iterator.hasNext()) {
+                        createProductRow(rowSheet, iterator.next(), rowNum++);
+                    }
+                }
+            });
+            
+            workbook.write(out);
+        }
+    }
+    
+    private CellStyle createHeaderStyle(Workbook workbook) {
+        CellStyle headerStyle = workbook.createCellStyle();
+        Font headerFont = workbook.createFont();
         headerFont.setBold(true);
         headerStyle.setFont(headerFont);
-        
+        return headerStyle;
+    }
+    
+    private void createHeaderRow(Sheet sheet, CellStyle headerStyle) {
+        Row headerRow = sheet.createRow(0);
         for (int i = 0; i < PRODUCT_HEADERS.length; i++) {
             Cell cell = headerRow.createCell(i);
             cell.setCellValue(PRODUCT_HEADERS[i]);
@@ -187,6 +271,10 @@ public class ProductExcelServiceImpl implements ProductExcelService {
         }
     }
     
+    private void createHeaderRow(Sheet sheet) {
+        createHeaderRow(sheet, createHeaderStyle(sheet.getWorkbook()));
+    }
+    
     private void createProductRow(Sheet sheet, Product product, int rowNum) {
         Row row = sheet.createRow(rowNum);
         row.createCell(0).setCellValue(product.getName());
@@ -203,116 +291,152 @@ public class ProductExcelServiceImpl implements ProductExcelService {
         row.createCell(11).setCellValue(product.getImages() != null ? String.join(",", product.getImages()) : "");
         row.createCell(12).setCellValue(product.getSku() != null ? product.getSku() : "");
         row.createCell(13).setCellValue(product.getBarcode());
-        row.createCell(14).setCellValue(product.getIsOrganic() ? "TRUE" : "FALSE");
-        row.createCell(15).setCellValue(product.getIsFeatured() ? "TRUE" : "FALSE");
+        row.createCell(14).setCellValue(Boolean.TRUE.equals(product.getIsOrganic()) ? "TRUE" : "FALSE");
+        row.createCell(15).setCellValue(Boolean.TRUE.equals(product.getIsFeatured()) ? "TRUE" : "FALSE");
         row.createCell(16).setCellValue(product.getNutritionInfo() != null ? product.getNutritionInfo() : "");
         row.createCell(17).setCellValue(product.getStorageInstructions() != null ? product.getStorageInstructions() : "");
         row.createCell(18).setCellValue(product.getSupplier());
         row.createCell(19).setCellValue(product.getTags() != null ? String.join(",", product.getTags()) : "");
-        row.createCell(20).setCellValue(product.getRating());
+        row.createCell(20).setCellValue(product.getRating() != null ? product.getRating() : 0.0);
         row.createCell(21).setCellValue(product.getId());
         row.createCell(22).setCellValue(product.getCategoryId() != null ? product.getCategoryId() : "");
         row.createCell(23).setCellValue(product.getSubCategoryId() != null ? product.getSubCategoryId() : "1");
         
     }
     
-    private Product createProductFromRow(Row row) {
-        try {
-            String name = getCellStringValue(row.getCell(0));
-            // if (name == null || name.trim().isEmpty()) {
-            //     return null; // Skip rows without name
-            // }
-            Product product = new Product();
-            
-            product.setName(getCellStringValue(row.getCell(0)));
-            product.setDescription(getCellStringValue(row.getCell(1)));
-            // Price
-            Cell priceCell = row.getCell(2);
-            if (priceCell != null) {
-                product.setPrice(BigDecimal.valueOf(priceCell.getNumericCellValue()));
-            }
-            
-            // Discount Price
-            Cell discountPriceCell = row.getCell(3);
-            if (discountPriceCell != null && discountPriceCell.getNumericCellValue() > 0) {
-                product.setDiscountPrice(BigDecimal.valueOf(discountPriceCell.getNumericCellValue()));
-            }
-            
-            // Stock Quantity
-            Cell stockCell = row.getCell(4);
-            if (stockCell != null) {
-                product.setStockQuantity((int) stockCell.getNumericCellValue());
+    /**
+     * Converts and writes one chunk with a single unordered bulk. Rows with a UID
+     * replace that product, rows with a SKU replace the product with that SKU, and
+     * the rest are inserted. Within a chunk the last row for a key wins.
+     */
+    private List<ImportResult.RowError> writeProductChunk(List<ChunkedImport.SheetRow> rows) {
+        List<ImportResult.RowError> errors = new ArrayList<>();
+        Map<String, Product> keyedProducts = new LinkedHashMap<>();
+        Map<String, Integer> keyedRows = new LinkedHashMap<>();
+        List<Product> newProducts = new ArrayList<>();
+        List<Integer> newRows = new ArrayList<>();
+        
+        for (ChunkedImport.SheetRow row : rows) {
+            Product product;
+            try {
+                product = createProductFromRow(row);
+            } catch (ChunkedImport.RowException e) {
+                errors.add(new ImportResult.RowError(row.getRowNumber(), e.getField(), e.getMessage()));
+                continue;
             }
             
-            product.setUnit(getCellStringValue(row.getCell(5)));
-            product.setStatus(getCellStringValue(row.getCell(6)));
-            product.setMinStock(getCellStringValue(row.getCell(7)));
-            product.setMaxStock(getCellStringValue(row.getCell(8)));
-            product.setBrand(getCellStringValue(row.getCell(9)));
-            product.setMainImage(getCellStringValue(row.getCell(10)));
-            // Images (comma-separated)
-            String imagesStr = getCellStringValue(row.getCell(11));
-            if (imagesStr != null && !imagesStr.trim().isEmpty()) {
-                product.setImages(Arrays.asList(imagesStr.split(",")));
+            String key = product.getId() != null ? "id:" + product.getId()
+                    : product.getSku() != null && !product.getSku().trim().isEmpty() ? "sku:" + product.getSku() : null;
+            if (key != null) {
+                keyedProducts.remove(key);
+                keyedProducts.put(key, product);
+                keyedRows.put(key, row.getRowNumber());
+            } else {
+                newProducts.add(product);
+                newRows.add(row.getRowNumber());
             }
-            product.setSku(getCellStringValue(row.getCell(12)));
-            product.setBarcode(getCellStringValue(row.getCell(13)));
-            // Boolean fields
-            String isOrganicStr = getCellStringValue(row.getCell(14));
-            product.setIsOrganic(isOrganicStr != null && 
-                              (isOrganicStr.equalsIgnoreCase("TRUE") || isOrganicStr.equalsIgnoreCase("1")));
-            
-            String isFeaturedStr = getCellStringValue(row.getCell(15));
-            product.setIsFeatured(isFeaturedStr != null && 
-                               (isFeaturedStr.equalsIgnoreCase("TRUE") || isFeaturedStr.equalsIgnoreCase("1")));
-            
-            product.setNutritionInfo(getCellStringValue(row.getCell(16)));
-            product.setStorageInstructions(getCellStringValue(row.getCell(17)));
-            product.setSupplier(getCellStringValue(row.getCell(18)));
-            
-            String tagsStr = getCellStringValue(row.getCell(19));
-            if (tagsStr != null && !tagsStr.trim().isEmpty()) {
-                product.setTags(Arrays.asList(tagsStr.split(",")));
-            }
-            Cell ratinngCell = row.getCell(20);
-            if (ratinngCell != null) {
-                product.setRating(Double.valueOf(ratinngCell.getNumericCellValue()));
+        }
+        
+        if (keyedProducts.isEmpty() && newProducts.isEmpty()) {
+            return errors;
+        }
+        
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        List<Integer> operationRows = new ArrayList<>();
+        for (Map.Entry<String, Product> entry : keyedProducts.entrySet()) {
+            Product product = entry.getValue();
+            if (product.getId() != null) {
+                bulkOps.replaceOne(query(where("id").is(product.getId())), product, FindAndReplaceOptions.options().upsert());
+            } else {
+                bulkOps.replaceOne(query(where("sku").is(product.getSku())), product, FindAndReplaceOptions.options().upsert());
             }
-            if(getCellStringValue(row.getCell(21))!="") {
-                product.setId(getCellStringValue(row.getCell(21)));
+            operationRows.add(keyedRows.get(entry.getKey()));
+        }
+        for (int i = 0; i < newProducts.size(); i++) {
+            bulkOps.insert(newProducts.get(i));
+            operationRows.add(newRows.get(i));
+        }
+        
+        try {
+            bulkOps.execute();
+        } catch (BulkOperationException e) {
+            // Unordered bulk: everything except the reported operations was written
+            for (BulkWriteError error : e.getErrors()) {
+                if (error.getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                    // SKUs are unique; another row or product got there first
+                    errors.add(new ImportResult.RowError(operationRows.get(error.getIndex()), "SKU",
+                            "SKU is already used by another product"));
+                } else {
+                    errors.add(new ImportResult.RowError(operationRows.get(error.getIndex()), null, error.getMessage()));
+                }
             }
-            
-            product.setCategoryId(getCellStringValue(row.getCell(22)));
-            product.setSubCategoryId(getCellStringValue(row.getCell(23)));
-            
-            product.setCreatedAt(LocalDateTime.now());
-            product.setUpdatedAt(LocalDateTime.now());
-            
-            return product;
-            
-        } catch (Exception e) {
-            // Log error and skip this row
-            System.err.println("Error processing product row: " + e.getMessage());
-            return null;
         }
+        // Imported rows may touch any cached listing, and set stock outright
+        productService.invalidateCatalogCache();
+        inventoryService.allStockOverwritten();
+        
+        return errors;
     }
     
-    private String getCellStringValue(Cell cell) {
-        if (cell == null) {
-            return null;
+    private Product createProductFromRow(ChunkedImport.SheetRow row) {
+        Product product = new Product();
+        
+        product.setName(row.text(0));
+        product.setDescription(row.text(1));
+        product.setPrice(row.decimal(2, "Price"));
+        
+        // Discount Price
+        BigDecimal discountPrice = row.decimal(3, "Discount Price");
+        if (discountPrice != null && discountPrice.signum() > 0) {
+            product.setDiscountPrice(discountPrice);
         }
         
-        switch (cell.getCellType()) {
-            case STRING:
-                return cell.getStringCellValue();
-            case NUMERIC:
-                return String.valueOf((long) cell.getNumericCellValue());
-            case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
-            case FORMULA:
-                return cell.getCellFormula();
-            default:
-                return "";
+        product.setStockQuantity(row.integer(4, "Stock Quantity"));
+        product.setUnit(row.text(5));
+        product.setStatus(row.text(6));
+        product.setMinStock(row.text(7));
+        product.setMaxStock(row.text(8));
+        product.setBrand(row.text(9));
+        product.setMainImage(row.text(10));
+        // Images (comma-separated)
+        product.setImages(row.list(11));
+        // A blank SKU is left out, as SKUs are unique where present
+        product.setSku(row.isBlank(12) ? null : row.text(12).trim());
+        product.setBarcode(row.text(13));
+        // Boolean fields
+        product.setIsOrganic(row.flag(14));
+        product.setIsFeatured(row.flag(15));
+        
+        product.setNutritionInfo(row.text(16));
+        product.setStorageInstructions(row.text(17));
+        product.setSupplier(row.text(18));
+        product.setTags(row.list(19));
+        
+        BigDecimal rating = row.decimal(20, "Rating");
+        if (rating != null) {
+            product.setRating(rating.doubleValue());
+        }
+        if (!row.isBlank(21)) {
+            product.setId(row.text(21).trim());
+        }
+        
+        product.setCategoryId(row.text(22));
+        product.setSubCategoryId(row.text(23));
+        
+        product.setCreatedAt(LocalDateTime.now());
+        product.setUpdatedAt(LocalDateTime.now());
+        
+        return product;
+    }
+    
+    private void deleteTempFile(Path tempFile) {
+        if (tempFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            System.err.println("Could not delete temp file " + tempFile + ": " + e.getMessage());
         }
     }
 }
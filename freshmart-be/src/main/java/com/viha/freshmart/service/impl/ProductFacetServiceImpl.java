@@ -0,0 +1,113 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.dao.entity.Product;
+import com.viha.freshmart.dao.repository.ProductRepository;
+import com.viha.freshmart.service.core.FacetQuery;
+import com.viha.freshmart.service.core.FacetResult;
+import com.viha.freshmart.service.core.ProductFacetService;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * Faceted filtering of active products from a FacetIndex. The index is
+ * immutable and replaced as a whole, so searches take no locks. Any catalog
+ * change queues a rebuild in the background; until it completes the previous
+ * index keeps being served.
+ */
+@Service
+public class ProductFacetServiceImpl implements ProductFacetService {
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    @Qualifier("catalogIndexExecutor")
+    private Executor catalogIndexExecutor;
+
+    private volatile FacetIndex index;
+    private CoalescingRunner rebuildRunner;
+    private volatile long lastBuildMillis;
+    private volatile long lastBuiltAt;
+
+    @PostConstruct
+    public void initRebuildRunner() {
+        rebuildRunner = new CoalescingRunner(catalogIndexExecutor, this::rebuild);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuildAsync();
+    }
+
+    @Override
+    public FacetResult search(FacetQuery query) {
+        FacetIndex current = index;
+        if (current == null) {
+            throw new IllegalStateException("Facet index is not built yet");
+        }
+        int offset = query.getOffset() != null ? query.getOffset() : 0;
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must not be negative");
+        }
+        if (query.getMinPrice() != null && query.getMaxPrice() != null
+                && query.getMinPrice().compareTo(query.getMaxPrice()) > 0) {
+            throw new IllegalArgumentException("minPrice must not be greater than maxPrice");
+        }
+        return current.search(query, offset, KeysetQueries.pageSize(query.getLimit()));
+    }
+
+    @Override
+    public boolean isReady() {
+        return index != null;
+    }
+
+    @Override
+    public void rebuildAsync() {
+        rebuildRunner.request();
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        FacetIndex current = index;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("ready", current != null);
+        stats.put("products", current != null ? current.size() : 0);
+        stats.put("values", current != null ? current.distinctValues() : 0);
+        stats.put("lastBuildMillis", lastBuildMillis);
+        stats.put("lastBuiltAt", lastBuiltAt);
+        return stats;
+    }
+
+    // Helper methods
+
+    private void rebuild() {
+        long started = System.currentTimeMillis();
+        try {
+            List<Product> products = new ArrayList<>();
+            try (Stream<Product> stream = productRepository.streamByIsActiveTrue()) {
+                stream.forEach(products::add);
+            }
+            FacetIndex built = new FacetIndex(products);
+            index = built;
+
+            lastBuildMillis = System.currentTimeMillis() - started;
+            lastBuiltAt = System.currentTimeMillis();
+            System.out.println("Facet index built: " + built.size() + " products, "
+                    + built.distinctValues() + " values in " + lastBuildMillis + " ms");
+
+        } catch (RuntimeException e) {
+            System.err.println("Failed to build facet index: " + e.getMessage());
+        }
+    }
+}
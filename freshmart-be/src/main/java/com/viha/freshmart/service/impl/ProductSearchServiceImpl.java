@@ -0,0 +1,223 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.dao.entity.Category;
+import com.viha.freshmart.dao.entity.Product;
+import com.viha.freshmart.dao.repository.CategoryRepository;
+import com.viha.freshmart.dao.repository.ProductRepository;
+import com.viha.freshmart.service.core.ProductSearchService;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Keeps an in-memory inverted index of the active products' name, brand, tags,
+ * category name and description. The index is built in the background once
+ * the application is up and then kept current by ProductServiceImpl on every
+ * product write; bulk changes queue a full rebuild instead. Until the first
+ * build completes isReady is false and callers fall back to the database.
+ *
+ * A rebuild reads the catalog without holding the lock and swaps the new index
+ * in at the end. Products written in the meantime are recorded and replayed on
+ * the new index, so they are not lost to a rebuild that read them too early.
+ */
+@Service
+public class ProductSearchServiceImpl implements ProductSearchService {
+
+    private static final float[] FIELD_WEIGHTS = {3.0f, 2.0f, 1.5f, 1.5f, 1.0f};
+
+    private static final float FEATURED_BOOST = 1.25f;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    @Qualifier("catalogIndexExecutor")
+    private Executor catalogIndexExecutor;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private InvertedIndex index = new InvertedIndex();
+    private Map<String, String> categoryNames = new HashMap<>();
+
+    // Writes made while a rebuild is reading the catalog; a null value is a removal
+    private final Map<String, Product> pendingWrites = new LinkedHashMap<>();
+    private boolean rebuilding;
+    private volatile boolean ready;
+
+    private CoalescingRunner rebuildRunner;
+    private volatile long lastBuildMillis;
+    private volatile long lastBuiltAt;
+
+    @PostConstruct
+    public void initRebuildRunner() {
+        rebuildRunner = new CoalescingRunner(catalogIndexExecutor, this::rebuild);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        rebuildAsync();
+    }
+
+    @Override
+    public List<String> search(String query, int limit) {
+        lock.readLock().lock();
+        try {
+            return index.search(query, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    @Override
+    public void indexProduct(Product product) {
+        lock.writeLock().lock();
+        try {
+            if (Boolean.TRUE.equals(product.getIsActive())) {
+                put(index, product, categoryNames);
+            } else {
+                index.remove(product.getId());
+            }
+            if (rebuilding) {
+                pendingWrites.put(product.getId(), product);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeProduct(String productId) {
+        lock.writeLock().lock();
+        try {
+            index.remove(productId);
+            if (rebuilding) {
+                pendingWrites.put(productId, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Requests arriving while a rebuild runs are folded into one more rebuild
+     * afterwards, so a burst of import chunks costs at most two.
+     */
+    @Override
+    public void rebuildAsync() {
+        rebuildRunner.request();
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("ready", ready);
+            stats.put("products", index.size());
+            stats.put("terms", index.termCount());
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("lastBuildMillis", lastBuildMillis);
+        stats.put("lastBuiltAt", lastBuiltAt);
+        return stats;
+    }
+
+    // Helper methods
+
+    private void rebuild() {
+        long started = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            rebuilding = true;
+            pendingWrites.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        try {
+            Map<String, String> names = new HashMap<>();
+            for (Category category : categoryRepository.findAll()) {
+                names.put(category.getId(), category.getName());
+            }
+
+            InvertedIndex rebuilt = new InvertedIndex();
+            try (Stream<Product> products = productRepository.streamByIsActiveTrue()) {
+                products.forEach(product -> put(rebuilt, product, names));
+            }
+
+            lock.writeLock().lock();
+            try {
+                for (Map.Entry<String, Product> write : pendingWrites.entrySet()) {
+                    Product product = write.getValue();
+                    if (product != null && Boolean.TRUE.equals(product.getIsActive())) {
+                        put(rebuilt, product, names);
+                    } else {
+                        rebuilt.remove(write.getKey());
+                    }
+                }
+                index = rebuilt;
+                categoryNames = names;
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            lastBuildMillis = System.currentTimeMillis() - started;
+            lastBuiltAt = System.currentTimeMillis();
+            System.out.println("Product search index built: " + rebuilt.size() + " products, "
+                    + rebuilt.termCount() + " terms in " + lastBuildMillis + " ms");
+
+        } catch (RuntimeException e) {
+            System.err.println("Failed to build product search index: " + e.getMessage());
+        } finally {
+            lock.writeLock().lock();
+            try {
+                rebuilding = false;
+                pendingWrites.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void put(InvertedIndex target, Product product, Map<String, String> names) {
+        String categoryName = product.getCategory() != null && product.getCategory().getName() != null
+                ? product.getCategory().getName()
+                : names.get(product.getCategoryId());
+        String tags = product.getTags() != null ? String.join(" ", product.getTags()) : null;
+        String[] fields = {product.getName(), product.getBrand(), tags, categoryName, product.getDescription()};
+        target.put(product.getId(), fields, FIELD_WEIGHTS, boost(product));
+    }
+
+    /**
+     * Featured products and well rated ones rank higher among equally good matches
+     */
+    private float boost(Product product) {
+        float boost = Boolean.TRUE.equals(product.getIsFeatured()) ? FEATURED_BOOST : 1.0f;
+        if (product.getRating() != null) {
+            double rating = Math.max(0.0, Math.min(5.0, product.getRating()));
+            boost *= (float) (1.0 + rating / 10.0);
+        }
+        return boost;
+    }
+}
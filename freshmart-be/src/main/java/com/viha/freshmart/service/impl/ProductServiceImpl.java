@@ -1,30 +1,120 @@
 package com.viha.freshmart.service.impl;
 
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import com.viha.freshmart.dao.entity.Product;
 import com.viha.freshmart.dao.repository.ProductRepository;
+import com.viha.freshmart.service.core.CatalogResponseCache;
+import com.viha.freshmart.service.core.CursorPage;
+import com.viha.freshmart.service.core.FacetQuery;
+import com.viha.freshmart.service.core.FacetResult;
+import com.viha.freshmart.service.core.InventoryService;
+import com.viha.freshmart.service.core.ProductAutocompleteService;
+import com.viha.freshmart.service.core.ProductFacetService;
+import com.viha.freshmart.service.core.ProductSearchService;
 import com.viha.freshmart.service.core.ProductService;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Storefront listing pages and single products are served from an in-process
+ * cache in front of the database. Every write in this service invalidates exactly
+ * the entries the product was or becomes part of: its id, and the active,
+ * featured, organic and category listings it matched before or after the
+ * change. Bulk writes elsewhere (imports, category changes) drop the whole
+ * cache through invalidateCatalogCache. Cached products and pages are shared
+ * and must not be modified by callers.
+ *
+ * Searches are answered by ProductSearchService, which this service keeps in
+ * step with the same writes; the regex query is only used until its index has
+ * been built. Autocomplete suggestions are rebuilt in the background after
+ * every write, and so is the facet index behind searchFacets. Every write
+ * increases the catalog version, which drops the serialized responses in
+ * CatalogResponseCache.
+ *
+ * Stock is decremented by InventoryService while products are being edited,
+ * so only writes that set stock outright save the whole product; flag changes
+ * update just their field.
+ */
 @Service
 public class ProductServiceImpl implements ProductService {
 
+    private static final String LISTING_ACTIVE = "active";
+    private static final String LISTING_FEATURED = "featured";
+    private static final String LISTING_ORGANIC = "organic";
+    private static final String LISTING_CATEGORY = "category:";
+
+    private static final String DEFAULT_SORT = "id";
+    private static final Set<String> SORT_FIELDS = Set.of("price", "rating", "createdAt", "name");
+
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ProductSearchService productSearchService;
+
+    @Autowired
+    private ProductAutocompleteService productAutocompleteService;
+
+    @Autowired
+    private ProductFacetService productFacetService;
+
+    @Autowired
+    private CatalogResponseCache catalogResponseCache;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Value("${app.search.max-results:100}")
+    private int maxSearchResults;
+
+    @Value("${app.catalog.cache.max-products:10000}")
+    private int maxCachedProducts;
+
+    @Value("${app.catalog.cache.max-listings:1000}")
+    private int maxCachedListings;
+
+    @Value("${app.catalog.cache.ttl-seconds:300}")
+    private long cacheTtlSeconds;
+
+    private LruCache<String, Product> productCache;
+    private LruCache<String, CursorPage<Product>> listingCache;
+
+    @PostConstruct
+    public void initCache() {
+        productCache = new LruCache<>(maxCachedProducts, cacheTtlSeconds * 1000);
+        listingCache = new LruCache<>(maxCachedListings, cacheTtlSeconds * 1000);
+    }
+
     @Override
-    public List<Product> getAllActiveProducts() {
-        return productRepository.findByIsActiveTrue();
+    public CursorPage<Product> getAllActiveProducts(String sort, String cursor, Integer limit) {
+        return listingPage(LISTING_ACTIVE, where("isActive").is(true), sort, cursor, limit);
     }
 
     @Override
     public Optional<Product> getProductById(String id) {
-        return productRepository.findById(id);
+        return Optional.ofNullable(productCache.get(id, key -> productRepository.findById(key).orElse(null)));
     }
 
     @Override
@@ -33,28 +123,60 @@ public class ProductServiceImpl implements ProductService {
     }
 
     @Override
-    public List<Product> getProductsByCategory(String categoryId) {
-        return productRepository.findByCategoryIdAndIsActiveTrue(categoryId);
+    public CursorPage<Product> getProductsByCategory(String categoryId, String sort, String cursor, Integer limit) {
+        return listingPage(LISTING_CATEGORY + categoryId, where("categoryId").is(categoryId).and("isActive").is(true),
+                sort, cursor, limit);
     }
 
     @Override
-    public List<Product> getProductsByBrand(String brand) {
-        return productRepository.findByBrandAndIsActiveTrue(brand);
+    public CursorPage<Product> getProductsByBrand(String brand, String sort, String cursor, Integer limit) {
+        return KeysetQueries.page(mongoTemplate, Product.class, where("brand").is(brand).and("isActive").is(true),
+                sort, DEFAULT_SORT, SORT_FIELDS, cursor, limit);
     }
 
     @Override
-    public List<Product> getFeaturedProducts() {
-        return productRepository.findByIsFeaturedTrue();
+    public CursorPage<Product> getFeaturedProducts(String sort, String cursor, Integer limit) {
+        return listingPage(LISTING_FEATURED, where("isFeatured").is(true), sort, cursor, limit);
     }
 
     @Override
-    public List<Product> getOrganicProducts() {
-        return productRepository.findByIsOrganicTrueAndIsActiveTrue();
+    public CursorPage<Product> getOrganicProducts(String sort, String cursor, Integer limit) {
+        return listingPage(LISTING_ORGANIC, where("isOrganic").is(true).and("isActive").is(true), sort, cursor, limit);
     }
 
     @Override
     public List<Product> searchProducts(String query) {
-        return productRepository.searchProducts(query);
+        if (!productSearchService.isReady()) {
+            return productRepository.searchProducts(query);
+        }
+        List<String> ids = productSearchService.search(query, maxSearchResults);
+        Map<String, Product> products = productCache.getAll(ids, this::loadProducts);
+        List<Product> results = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Product product = products.get(id);
+            if (product != null) {
+                results.add(product);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public Map<String, Object> searchFacets(FacetQuery query) {
+        FacetResult result = productFacetService.search(query);
+        Map<String, Product> products = productCache.getAll(result.getProductIds(), this::loadProducts);
+        List<Product> page = new ArrayList<>(result.getProductIds().size());
+        for (String id : result.getProductIds()) {
+            // Deleted since the index was built
+            if (products.containsKey(id)) {
+                page.add(products.get(id));
+            }
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("total", result.getTotal());
+        response.put("products", page);
+        response.put("facets", result.getFacets());
+        return response;
     }
 
     @Override
@@ -64,9 +186,18 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     public Product createProduct(Product product) {
+        // SKUs are unique where present, so a blank one is left out
+        if (product.getSku() != null && product.getSku().trim().isEmpty()) {
+            product.setSku(null);
+        }
         product.setCreatedAt(LocalDateTime.now());
         product.setUpdatedAt(LocalDateTime.now());
-        return productRepository.save(product);
+        Product savedProduct = productRepository.save(product);
+        invalidate(savedProduct.getId(), listingKeys(savedProduct));
+        productSearchService.indexProduct(savedProduct);
+        productAutocompleteService.rebuildAsync();
+        productFacetService.rebuildAsync();
+        return savedProduct;
     }
 
     @Override
@@ -74,6 +205,7 @@ public class ProductServiceImpl implements ProductService {
         Optional<Product> existingProduct = productRepository.findById(id);
         if (existingProduct.isPresent()) {
             Product existing = existingProduct.get();
+            Set<String> affectedListings = listingKeys(existing);
             existing.setName(product.getName());
             existing.setDescription(product.getDescription());
             existing.setPrice(product.getPrice());
@@ -88,7 +220,14 @@ public class ProductServiceImpl implements ProductService {
             existing.setStorageInstructions(product.getStorageInstructions());
             existing.setExpiryDate(product.getExpiryDate());
             existing.setUpdatedAt(LocalDateTime.now());
-            return productRepository.save(existing);
+            inventoryService.stockOverwritten(id);
+            Product savedProduct = productRepository.save(existing);
+            affectedListings.addAll(listingKeys(savedProduct));
+            invalidate(id, affectedListings);
+            productSearchService.indexProduct(savedProduct);
+            productAutocompleteService.rebuildAsync();
+            productFacetService.rebuildAsync();
+            return savedProduct;
         } else {
             throw new RuntimeException("Product not found with id: " + id);
         }
@@ -96,8 +235,13 @@ public class ProductServiceImpl implements ProductService {
 
     @Override
     public void deleteProduct(String id) {
-        if (productRepository.existsById(id)) {
+        Optional<Product> productOpt = productRepository.findById(id);
+        if (productOpt.isPresent()) {
             productRepository.deleteById(id);
+            invalidate(id, listingKeys(productOpt.get()));
+            productSearchService.removeProduct(id);
+            productAutocompleteService.rebuildAsync();
+            productFacetService.rebuildAsync();
         } else {
             throw new RuntimeException("Product not found with id: " + id);
         }
@@ -107,10 +251,14 @@ public class ProductServiceImpl implements ProductService {
     public Product activateProduct(String id) {
         Optional<Product> productOpt = productRepository.findById(id);
         if (productOpt.isPresent()) {
-            Product product = productOpt.get();
-            product.setIsActive(true);
-            product.setUpdatedAt(LocalDateTime.now());
-            return productRepository.save(product);
+            Set<String> affectedListings = listingKeys(productOpt.get());
+            Product savedProduct = setActive(id, true);
+            affectedListings.addAll(listingKeys(savedProduct));
+            invalidate(id, affectedListings);
+            productSearchService.indexProduct(savedProduct);
+            productAutocompleteService.rebuildAsync();
+            productFacetService.rebuildAsync();
+            return savedProduct;
         } else {
             throw new RuntimeException("Product not found with id: " + id);
         }
@@ -120,10 +268,14 @@ public class ProductServiceImpl implements ProductService {
     public Product deactivateProduct(String id) {
         Optional<Product> productOpt = productRepository.findById(id);
         if (productOpt.isPresent()) {
-            Product product = productOpt.get();
-            product.setIsActive(false);
-            product.setUpdatedAt(LocalDateTime.now());
-            return productRepository.save(product);
+            Set<String> affectedListings = listingKeys(productOpt.get());
+            Product savedProduct = setActive(id, false);
+            affectedListings.addAll(listingKeys(savedProduct));
+            invalidate(id, affectedListings);
+            productSearchService.indexProduct(savedProduct);
+            productAutocompleteService.rebuildAsync();
+            productFacetService.rebuildAsync();
+            return savedProduct;
         } else {
             throw new RuntimeException("Product not found with id: " + id);
         }
@@ -134,11 +286,105 @@ public class ProductServiceImpl implements ProductService {
         Optional<Product> productOpt = productRepository.findById(id);
         if (productOpt.isPresent()) {
             Product product = productOpt.get();
+            Set<String> affectedListings = listingKeys(product);
             product.setStockQuantity(quantity);
             product.setUpdatedAt(LocalDateTime.now());
-            return productRepository.save(product);
+            inventoryService.stockOverwritten(id);
+            Product savedProduct = productRepository.save(product);
+            affectedListings.addAll(listingKeys(savedProduct));
+            invalidate(id, affectedListings);
+            // Stock decides the inStock filter
+            productFacetService.rebuildAsync();
+            return savedProduct;
         } else {
             throw new RuntimeException("Product not found with id: " + id);
         }
     }
+
+    @Override
+    public void invalidateCatalogCache() {
+        productCache.invalidateAll();
+        listingCache.invalidateAll();
+        catalogResponseCache.catalogChanged();
+        productSearchService.rebuildAsync();
+        productAutocompleteService.rebuildAsync();
+        productFacetService.rebuildAsync();
+    }
+
+    @Override
+    public Map<String, Object> getCatalogCacheStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("products", productCache.getStats());
+        stats.put("listings", listingCache.getStats());
+        stats.put("search", productSearchService.getStats());
+        stats.put("facets", productFacetService.getStats());
+        stats.put("responses", catalogResponseCache.getStats());
+        return stats;
+    }
+
+    // Helper methods
+
+    /**
+     * The cached listings a product appears in, matching the repository queries behind them
+     */
+    private Set<String> listingKeys(Product product) {
+        Set<String> keys = new HashSet<>();
+        if (Boolean.TRUE.equals(product.getIsFeatured())) {
+            keys.add(LISTING_FEATURED);
+        }
+        if (Boolean.TRUE.equals(product.getIsActive())) {
+            keys.add(LISTING_ACTIVE);
+            if (Boolean.TRUE.equals(product.getIsOrganic())) {
+                keys.add(LISTING_ORGANIC);
+            }
+            if (product.getCategoryId() != null) {
+                keys.add(LISTING_CATEGORY + product.getCategoryId());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * A page of a cached listing. Pages are cached per sort, cursor and size
+     * under the listing's key, so invalidating a listing drops all its pages.
+     */
+    private CursorPage<Product> listingPage(String listing, Criteria filter, String sort, String cursor, Integer limit) {
+        String key = listing + "?" + KeysetQueries.normalizeSort(sort, DEFAULT_SORT, SORT_FIELDS)
+                + "&" + KeysetQueries.pageSize(limit) + "&" + (cursor != null ? cursor : "");
+        return listingCache.get(key, k -> {
+            CursorPage<Product> page = KeysetQueries.page(mongoTemplate, Product.class, filter,
+                    sort, DEFAULT_SORT, SORT_FIELDS, cursor, limit);
+            return new CursorPage<>(List.copyOf(page.getItems()), page.getNextCursor());
+        });
+    }
+
+    /**
+     * Changes only the flag, so stock reserved since the product was read is not
+     * written back; a product deleted meanwhile is not found
+     */
+    private Product setActive(String id, boolean active) {
+        Product product = mongoTemplate.findAndModify(query(where("id").is(id)),
+                new Update().set("isActive", active).set("updatedAt", LocalDateTime.now()),
+                FindAndModifyOptions.options().returnNew(true), Product.class);
+        if (product == null) {
+            throw new RuntimeException("Product not found with id: " + id);
+        }
+        return product;
+    }
+
+    private Map<String, Product> loadProducts(List<String> ids) {
+        Map<String, Product> products = new HashMap<>();
+        for (Product product : productRepository.findAllById(ids)) {
+            products.put(product.getId(), product);
+        }
+        return products;
+    }
+
+    private void invalidate(String productId, Set<String> listings) {
+        productCache.invalidate(productId);
+        if (!listings.isEmpty()) {
+            listingCache.invalidateIf(key -> listings.contains(key.substring(0, key.indexOf('?'))));
+        }
+        catalogResponseCache.catalogChanged();
+    }
 }
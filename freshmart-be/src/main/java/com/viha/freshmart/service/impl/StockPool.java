@@ -0,0 +1,122 @@
+package com.viha.freshmart.service.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongConsumer;
+
+/**
+ * Units of one product's stock taken off the database ahead of demand, spread
+ * over striped counters so reservations on different cores rarely touch the
+ * same cache line. A reservation takes from its thread's stripe first and from
+ * the others when that one runs short. No counter ever goes below zero, so the
+ * pool never hands out more than it was given.
+ *
+ * A retired pool hands out nothing; units given to it afterwards go straight
+ * back to the store instead of being lost.
+ */
+final class StockPool {
+
+    // Longs per 64 byte cache line, so stripes do not share one
+    private static final int PADDING = 8;
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+    private final LongConsumer returnToStore;
+    // When a lease last found the store empty
+    private volatile long storeEmptyAt;
+
+    /**
+     * @param returnToStore takes back units given to the pool after it retired
+     */
+    StockPool(int stripes, LongConsumer returnToStore) {
+        int size = Integer.highestOneBit(Math.max(1, stripes));
+        if (size < stripes) {
+            size <<= 1;
+        }
+        this.cells = new AtomicLongArray(size * PADDING);
+        this.mask = size - 1;
+        this.returnToStore = returnToStore;
+    }
+
+    /**
+     * Takes the quantity, or nothing when the pool does not hold that many
+     */
+    boolean tryTake(long quantity) {
+        int home = home();
+        long taken = 0;
+        for (int i = 0; i <= mask && taken < quantity; i++) {
+            int cell = ((home + i) & mask) * PADDING;
+            while (taken < quantity) {
+                long units = cells.get(cell);
+                if (units <= 0) {
+                    break;
+                }
+                long take = Math.min(units, quantity - taken);
+                if (cells.compareAndSet(cell, units, units - take)) {
+                    taken += take;
+                }
+            }
+        }
+        if (taken < quantity) {
+            if (taken > 0) {
+                add(taken);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    void add(long quantity) {
+        int cell = home() * PADDING;
+        while (true) {
+            long units = cells.get(cell);
+            if (units == RETIRED) {
+                returnToStore.accept(quantity);
+                return;
+            }
+            if (cells.compareAndSet(cell, units, units + quantity)) {
+                return;
+            }
+        }
+    }
+
+    long available() {
+        long total = 0;
+        for (int i = 0; i <= mask; i++) {
+            total += Math.max(0, cells.get(i * PADDING));
+        }
+        return total;
+    }
+
+    /**
+     * Retires the pool and returns the units it held
+     */
+    long retire() {
+        long total = 0;
+        for (int i = 0; i <= mask; i++) {
+            long units = cells.getAndSet(i * PADDING, RETIRED);
+            if (units > 0) {
+                total += units;
+            }
+        }
+        return total;
+    }
+
+    void storeEmpty() {
+        storeEmptyAt = System.nanoTime();
+    }
+
+    /**
+     * Whether a lease found the store empty within the given time, so asking
+     * it again is not worth the wait
+     */
+    boolean storeEmptySince(long nanos) {
+        long at = storeEmptyAt;
+        return at != 0 && System.nanoTime() - at < nanos;
+    }
+
+    private int home() {
+        long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & mask;
+    }
+}
@@ -0,0 +1,201 @@
+package com.viha.freshmart.service.impl;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.web.multipart.MultipartFile;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+
+/**
+ * Reads the first sheet of an .xlsx file with the SAX event model, one row at a
+ * time, so memory does not grow with the number of rows. Cell values are passed
+ * on as strings; numbers are passed on as their stored value, whatever the cell's
+ * number format, and only dates are formatted.
+ */
+final class StreamingSheetReader {
+
+    /** Receives each non-blank row. Row numbers are 0-based, as in the sheet XML. */
+    interface RowHandler {
+        void handleRow(int rowNum, String[] values);
+    }
+
+    private StreamingSheetReader() {
+    }
+
+    /**
+     * Copies an upload to a temp file. Reading from a file lets POI open the
+     * package without inflating every part into memory.
+     */
+    static Path copyToTempFile(MultipartFile file) throws IOException {
+        Path tempFile = Files.createTempFile("freshmart-import-", ".xlsx");
+        try (InputStream in = file.getInputStream()) {
+            Files.copy(in, tempFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return tempFile;
+    }
+
+    static void read(File file, int columnCount, RowHandler handler) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(
+                        styles, null, strings, new RowCollector(columnCount, handler), new PlainNumberFormatter(), false));
+                parser.parse(new InputSource(sheet));
+            }
+
+        } catch (StopReading e) {
+            // Handler asked to stop early
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Failed to read Excel file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the first row of the sheet, or null when the sheet is empty.
+     */
+    static String[] readHeader(File file, int columnCount) throws IOException {
+        String[][] header = new String[1][];
+        read(file, columnCount, (rowNum, values) -> {
+            header[0] = values;
+            throw new StopReading();
+        });
+        return header[0];
+    }
+
+    /**
+     * Row count declared by the sheet's dimension element, including the header,
+     * or -1 when the sheet does not declare one. Only the start of the sheet is parsed.
+     */
+    static int estimateRowCount(File file) {
+        int[] rows = {-1};
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            Iterator<InputStream> sheets = new XSSFReader(pkg).getSheetsData();
+            if (!sheets.hasNext()) {
+                return -1;
+            }
+
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new DefaultHandler() {
+                    @Override
+                    public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                        if ("dimension".equals(localName)) {
+                            String ref = attributes.getValue("ref");
+                            if (ref != null) {
+                                String lastCell = ref.contains(":") ? ref.substring(ref.indexOf(':') + 1) : ref;
+                                rows[0] = new CellReference(lastCell).getRow() + 1;
+                            }
+                            throw new StopReading();
+                        }
+                        if ("sheetData".equals(localName)) {
+                            throw new StopReading();
+                        }
+                    }
+                });
+                parser.parse(new InputSource(sheet));
+            }
+
+        } catch (StopReading e) {
+            // Dimension found or not declared
+        } catch (Exception e) {
+            return -1;
+        }
+        return rows[0];
+    }
+
+    private static class StopReading extends RuntimeException {
+        StopReading() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final int columnCount;
+        private final RowHandler handler;
+        private String[] values;
+        private int nextColumn;
+        private boolean blank;
+
+        RowCollector(int columnCount, RowHandler handler) {
+            this.columnCount = columnCount;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            values = new String[columnCount];
+            nextColumn = 0;
+            blank = true;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (!blank) {
+                handler.handleRow(rowNum, values);
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : nextColumn;
+            nextColumn = column + 1;
+            if (column < columnCount) {
+                values[column] = formattedValue;
+                if (formattedValue != null && !formattedValue.trim().isEmpty()) {
+                    blank = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Formats numbers as plain decimals of their stored value, so prices keep their
+     * decimals, long barcodes are not turned into scientific notation, and cells
+     * formatted as #,##0, 0.00 or currency do not come out as "1,200" or "₹12.50".
+     * Date formats are left to POI.
+     */
+    private static class PlainNumberFormatter extends DataFormatter {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            if (formatString != null && DateUtil.isADateFormat(formatIndex, formatString)) {
+                return super.formatRawCellContents(value, formatIndex, formatString);
+            }
+            return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+        }
+    }
+}
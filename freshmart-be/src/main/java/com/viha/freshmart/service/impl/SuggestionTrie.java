@@ -0,0 +1,209 @@
+package com.viha.freshmart.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable prefix tree over suggestion keys, packed into int arrays. Chains
+ * of single-child nodes are merged into one edge (a radix tree), so there are
+ * at most two nodes per key, and edge labels are read from the sorted keys
+ * instead of being stored.
+ *
+ * Every node keeps the best suggestions of its subtree, chosen when the tree is
+ * built. A lookup walks the prefix down the tree and returns that list as is,
+ * so its cost depends only on the prefix length and not on how many keys
+ * share the prefix.
+ */
+final class SuggestionTrie {
+
+    private static final int[] NONE = new int[0];
+
+    private final String[] keys;
+    private final int[] keySuggestion;
+    private final double[] weights;
+    private final int maxResults;
+
+    private final int[] nodeLo;
+    private final int[] nodeDepth;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] topStart;
+    private final int[] topCount;
+    private int[] top = new int[64];
+    private int nodeCount;
+    private int topSize;
+
+    /**
+     * @param keys          normalized keys; a suggestion may have several
+     * @param keySuggestion suggestion index of each key
+     * @param weights       weight of each suggestion, higher first
+     * @param maxResults    suggestions kept per prefix
+     */
+    SuggestionTrie(List<String> keys, List<Integer> keySuggestion, double[] weights, int maxResults) {
+        this.weights = weights;
+        this.maxResults = maxResults;
+
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(keys::get));
+        this.keys = new String[order.length];
+        this.keySuggestion = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            this.keys[i] = keys.get(order[i]);
+            this.keySuggestion[i] = keySuggestion.get(order[i]);
+        }
+
+        int capacity = 2 * this.keys.length + 1;
+        nodeLo = new int[capacity];
+        nodeDepth = new int[capacity];
+        firstChild = new int[capacity];
+        childCount = new int[capacity];
+        topStart = new int[capacity];
+        topCount = new int[capacity];
+
+        nodeCount = 1;
+        build(0, 0, this.keys.length, 0);
+    }
+
+    /**
+     * Indexes of the best suggestions with a key starting with the normalized prefix
+     */
+    int[] lookup(String prefix, int limit) {
+        int node = 0;
+        int depth = 0;
+        while (depth < prefix.length()) {
+            int child = findChild(node, prefix.charAt(depth), depth);
+            if (child < 0) {
+                return NONE;
+            }
+            int end = Math.min(nodeDepth[child], prefix.length());
+            if (!keys[nodeLo[child]].regionMatches(depth, prefix, depth, end - depth)) {
+                return NONE;
+            }
+            node = child;
+            depth = nodeDepth[child];
+        }
+        int count = Math.min(limit, topCount[node]);
+        return Arrays.copyOfRange(top, topStart[node], topStart[node] + count);
+    }
+
+    int keyCount() {
+        return keys.length;
+    }
+
+    int nodeCount() {
+        return nodeCount;
+    }
+
+    // Helper methods
+
+    /**
+     * Fills in the node for keys[lo, hi), which share their first depth characters.
+     * Children get consecutive node numbers so lookups can binary search them.
+     */
+    private void build(int node, int lo, int hi, int depth) {
+        nodeLo[node] = lo;
+        nodeDepth[node] = depth;
+
+        int i = lo;
+        while (i < hi && keys[i].length() == depth) {
+            i++;
+        }
+        int terminalEnd = i;
+
+        List<int[]> groups = new ArrayList<>();
+        while (i < hi) {
+            char c = keys[i].charAt(depth);
+            int groupStart = i;
+            while (i < hi && keys[i].charAt(depth) == c) {
+                i++;
+            }
+            groups.add(new int[]{groupStart, i});
+        }
+
+        firstChild[node] = nodeCount;
+        childCount[node] = groups.size();
+        nodeCount += groups.size();
+        for (int g = 0; g < groups.size(); g++) {
+            int[] group = groups.get(g);
+            int childDepth = commonPrefixLength(keys[group[0]], keys[group[1] - 1]);
+            build(firstChild[node] + g, group[0], group[1], childDepth);
+        }
+
+        // Best of this node's own keys and its children's best lists
+        List<Integer> candidates = new ArrayList<>();
+        for (int k = lo; k < terminalEnd; k++) {
+            candidates.add(keySuggestion[k]);
+        }
+        for (int g = 0; g < groups.size(); g++) {
+            int child = firstChild[node] + g;
+            for (int t = 0; t < topCount[child]; t++) {
+                candidates.add(top[topStart[child] + t]);
+            }
+        }
+        candidates.sort((a, b) -> {
+            int byWeight = Double.compare(weights[b], weights[a]);
+            return byWeight != 0 ? byWeight : Integer.compare(a, b);
+        });
+
+        topStart[node] = topSize;
+        int previous = -1;
+        for (int candidate : candidates) {
+            if (topCount[node] == maxResults) {
+                break;
+            }
+            // The same suggestion can reach a node through several of its keys
+            if (candidate != previous && !contains(topStart[node], topCount[node], candidate)) {
+                appendTop(candidate);
+                topCount[node]++;
+            }
+            previous = candidate;
+        }
+    }
+
+    private int findChild(int node, char c, int depth) {
+        int lo = firstChild[node];
+        int hi = lo + childCount[node] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char label = keys[nodeLo[mid]].charAt(depth);
+            if (label < c) {
+                lo = mid + 1;
+            } else if (label > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private boolean contains(int start, int count, int suggestion) {
+        for (int i = start; i < start + count; i++) {
+            if (top[i] == suggestion) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void appendTop(int suggestion) {
+        if (topSize == top.length) {
+            top = Arrays.copyOf(top, top.length * 2);
+        }
+        top[topSize++] = suggestion;
+    }
+
+    private static int commonPrefixLength(String a, String b) {
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,163 @@
+package com.viha.freshmart.controller;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.UrlResource;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Throughput of serving an image through the previous path (a UrlResource
+ * copied through heap buffers) against FileResponseWriter (sendfile), on
+ * embedded Tomcat with concurrent clients on loopback. Not part of the
+ * regular test run; run it with
+ *
+ *   mvn test -Dtest=ImageStreamingBenchmark -Dbenchmark.seconds=15
+ *
+ * Reports requests per second, process CPU time and bytes allocated by all
+ * threads while each path is measured.
+ */
+class ImageStreamingBenchmark {
+
+    private static final int CLIENTS = 8;
+    private static final Map<String, Integer> IMAGE_SIZES = Map.of("small", 200 * 1024, "large", 2 * 1024 * 1024);
+
+    @Test
+    void copyAgainstZeroCopy() throws Exception {
+        long seconds = Long.getLong("benchmark.seconds", 5);
+        Path dir = Files.createTempDirectory("image-benchmark");
+        Map<String, Path> images = new LinkedHashMap<>();
+        Random random = new Random(42);
+        for (Map.Entry<String, Integer> size : IMAGE_SIZES.entrySet()) {
+            byte[] bytes = new byte[size.getValue()];
+            random.nextBytes(bytes);
+            images.put(size.getKey(), Files.write(dir.resolve(size.getKey() + ".jpg"), bytes));
+        }
+
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(dir.toString());
+        tomcat.setPort(0);
+        Context context = tomcat.addContext("", null);
+        Tomcat.addServlet(context, "copy", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                Resource resource = new UrlResource(images.get(request.getPathInfo().substring(1)).toUri());
+                response.setContentType("image/jpeg");
+                response.setContentLengthLong(resource.contentLength());
+                try (InputStream in = resource.getInputStream()) {
+                    StreamUtils.copy(in, response.getOutputStream());
+                }
+            }
+        });
+        Tomcat.addServlet(context, "zero-copy", new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.setContentType("image/jpeg");
+                FileResponseWriter.write(request, response, images.get(request.getPathInfo().substring(1)), "\"benchmark\"", -1);
+            }
+        });
+        context.addServletMappingDecoded("/copy/*", "copy");
+        context.addServletMappingDecoded("/zero-copy/*", "zero-copy");
+        tomcat.getConnector();
+        tomcat.start();
+
+        try {
+            String base = "http://localhost:" + tomcat.getConnector().getLocalPort();
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            for (String image : images.keySet()) {
+                for (String path : List.of("copy", "zero-copy")) {
+                    URI uri = URI.create(base + "/" + path + "/" + image);
+                    HttpResponse<byte[]> check = client.send(HttpRequest.newBuilder(uri).build(),
+                            HttpResponse.BodyHandlers.ofByteArray());
+                    assertEquals(IMAGE_SIZES.get(image), check.body().length);
+
+                    // Warm up, then measure
+                    run(client, uri, Math.max(1, seconds / 3));
+                    long cpuBefore = processCpuNanos();
+                    long allocatedBefore = allocatedBytes();
+                    long requests = run(client, uri, seconds);
+                    long cpu = processCpuNanos() - cpuBefore;
+                    long allocated = allocatedBytes() - allocatedBefore;
+
+                    assertTrue(requests > 0);
+                    System.out.printf("%-6s %-9s %8.0f req/s  CPU %6.1f s  allocated %6d MB%n", image, path,
+                            requests / (double) seconds, cpu / 1e9, allocated / (1024 * 1024));
+                }
+            }
+        } finally {
+            tomcat.stop();
+            tomcat.destroy();
+        }
+    }
+
+    // Helper methods
+
+    /**
+     * Requests the URI from CLIENTS threads for the given time, returning how many requests completed
+     */
+    private long run(HttpClient client, URI uri, long seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong completed = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            Thread thread = new Thread(() -> {
+                HttpRequest request = HttpRequest.newBuilder(uri).build();
+                while (System.nanoTime() < deadline) {
+                    try {
+                        client.send(request, HttpResponse.BodyHandlers.discarding());
+                        completed.incrementAndGet();
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return completed.get();
+    }
+
+    private static long processCpuNanos() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+}
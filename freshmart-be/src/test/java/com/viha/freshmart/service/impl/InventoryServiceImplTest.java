@@ -0,0 +1,188 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.dao.entity.Product;
+import com.viha.freshmart.dao.entity.StockReservation;
+import com.viha.freshmart.service.core.ProductFacetService;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Reservations against an in-memory stand-in for the products collection
+ * that applies guarded updates atomically, the way the database does
+ */
+class InventoryServiceImplTest {
+
+    private final Map<String, Integer> stock = new ConcurrentHashMap<>();
+    private final ProductFacetService productFacetService = mock(ProductFacetService.class);
+    private InventoryServiceImpl inventoryService;
+
+    @BeforeEach
+    void setUp() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.findAndModify(any(Query.class), any(UpdateDefinition.class),
+                any(FindAndModifyOptions.class), eq(Product.class)))
+                .thenAnswer(call -> update(call.getArgument(0), call.getArgument(1)));
+        when(mongoTemplate.exists(any(Query.class), eq(Product.class)))
+                .thenAnswer(call -> stock.containsKey(productId(call.getArgument(0))));
+        when(mongoTemplate.insert(any(StockReservation.class))).thenAnswer(call -> call.getArgument(0));
+
+        BulkOperations bulkOps = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(Product.class))).thenReturn(bulkOps);
+        when(bulkOps.updateOne(any(Query.class), any(UpdateDefinition.class))).thenAnswer(call -> {
+            update(call.getArgument(0), call.getArgument(1));
+            return bulkOps;
+        });
+        when(bulkOps.updateOne(any(Query.class), any(Update.class))).thenAnswer(call -> {
+            update(call.getArgument(0), call.getArgument(1));
+            return bulkOps;
+        });
+
+        inventoryService = new InventoryServiceImpl();
+        ReflectionTestUtils.setField(inventoryService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(inventoryService, "productFacetService", productFacetService);
+        ReflectionTestUtils.setField(inventoryService, "reservationTtlMinutes", 15L);
+        ReflectionTestUtils.setField(inventoryService, "hotSkuMinReservations", Long.MAX_VALUE);
+    }
+
+    @Test
+    void lastUnitsGoToAsManyOrdersAsThereAreUnits() throws InterruptedException {
+        stock.put("apple", 5);
+        int threads = 16;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger reserved = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            String orderId = "order-" + i;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    inventoryService.reserve(orderId, Map.of("apple", 1), true);
+                    reserved.incrementAndGet();
+                } catch (IllegalStateException e) {
+                    rejected.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(5, reserved.get());
+        assertEquals(threads - 5, rejected.get());
+        assertEquals(0, stock.get("apple"));
+        verify(productFacetService, atLeastOnce()).rebuildAsync();
+    }
+
+    @Test
+    void orderWithOneShortLineReservesNothing() {
+        stock.put("apple", 3);
+        stock.put("milk", 1);
+        // Apple is taken before milk turns out to be short, so it has to be given back
+        Map<String, Integer> lines = new LinkedHashMap<>();
+        lines.put("apple", 2);
+        lines.put("milk", 2);
+
+        assertThrows(IllegalStateException.class, () -> inventoryService.reserve("order-1", lines, true));
+
+        assertEquals(3, stock.get("apple"));
+        assertEquals(1, stock.get("milk"));
+        verify(productFacetService, never()).rebuildAsync();
+    }
+
+    @Test
+    void missingProductIsRejectedWithoutCreatingIt() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> inventoryService.reserve("order-1", Map.of("gone", 1), true));
+
+        assertTrue(e.getMessage().contains("Product not found"));
+        assertFalse(stock.containsKey("gone"));
+    }
+
+    @Test
+    void poolNeverHandsOutMoreThanItHolds() throws InterruptedException {
+        StockPool pool = new StockPool(4, units -> { });
+        pool.add(100);
+        AtomicInteger taken = new AtomicInteger();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread worker = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    if (pool.tryTake(1)) {
+                        taken.incrementAndGet();
+                    }
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(100, taken.get());
+        assertEquals(0, pool.available());
+    }
+
+    // Helper methods
+
+    /**
+     * Applies {$inc: {stockQuantity}} where the product exists and, when the
+     * query has one, its {stockQuantity: {$gte}} guard holds, returning the
+     * product after the update or null when nothing matched
+     */
+    private Product update(Query query, UpdateDefinition update) {
+        Document criteria = query.getQueryObject();
+        Object guard = criteria.get("stockQuantity");
+        int minimum = guard instanceof Document ? ((Document) guard).getInteger("$gte") : Integer.MIN_VALUE;
+        int delta = ((Number) ((Document) update.getUpdateObject().get("$inc")).get("stockQuantity")).intValue();
+        Product[] updated = new Product[1];
+        stock.computeIfPresent(productId(query), (id, quantity) -> {
+            if (quantity < minimum) {
+                return quantity;
+            }
+            updated[0] = new Product();
+            updated[0].setId(id);
+            updated[0].setStockQuantity(quantity + delta);
+            return quantity + delta;
+        });
+        return updated[0];
+    }
+
+    private String productId(Query query) {
+        return (String) query.getQueryObject().get("id");
+    }
+}
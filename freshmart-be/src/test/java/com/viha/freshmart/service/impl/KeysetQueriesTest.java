@@ -0,0 +1,203 @@
+package com.viha.freshmart.service.impl;
+
+import com.viha.freshmart.service.core.CursorPage;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+/**
+ * Cursor paging against an in-memory evaluator of the queries KeysetQueries
+ * builds, over rows with null, missing and duplicate sort values
+ */
+class KeysetQueriesTest {
+
+    private static final Set<String> SORT_FIELDS = Set.of("price", "name");
+
+    private final List<Document> rows = new ArrayList<>();
+    private MongoTemplate mongoTemplate;
+
+    @BeforeEach
+    void setUp() {
+        Object[][] data = {
+                {"p01", 30, "milk", true},
+                {"p02", null, "bread", true},
+                {"p03", 10, null, true},
+                {"p04", 30, "eggs", true},
+                {"p05", 20, "milk", false},
+                {"p06", null, null, true},
+                {"p07", 10, "apple", true},
+                {"p08", 30, "butter", true},
+                {"p09", 20, "milk", true},
+                {"p10", 10, "tea", false},
+        };
+        for (Object[] row : data) {
+            Document document = new Document("_id", row[0]).append("isActive", row[3]);
+            if (row[1] != null) {
+                document.append("price", row[1]);
+            } else if (((String) row[0]).compareTo("p05") < 0) {
+                // Some null values are stored, the others are missing
+                document.append("price", null);
+            }
+            document.append("name", row[2]);
+            rows.add(document);
+        }
+
+        mongoTemplate = mock(MongoTemplate.class);
+        MongoConverter converter = mock(MongoConverter.class);
+        when(mongoTemplate.getConverter()).thenReturn(converter);
+        when(converter.read(eq(Document.class), any(Bson.class))).thenAnswer(call -> call.getArgument(1));
+        when(mongoTemplate.getCollectionName(Document.class)).thenReturn("products");
+        when(mongoTemplate.find(any(Query.class), eq(Document.class), eq("products")))
+                .thenAnswer(call -> find(call.getArgument(0)));
+    }
+
+    @Test
+    void everySortReturnsEachActiveRowOnceInOrder() {
+        for (String field : List.of("id", "price", "name")) {
+            for (String direction : List.of("asc", "desc")) {
+                for (int limit = 1; limit <= 4; limit++) {
+                    String sort = field + "," + direction;
+                    assertEquals(expected(field.equals("id") ? "_id" : field, direction.equals("asc")),
+                            pageThrough(sort, limit), sort + " limit " + limit);
+                }
+            }
+        }
+    }
+
+    @Test
+    void cursorIsBoundToItsSort() {
+        String cursor = KeysetQueries.page(mongoTemplate, Document.class, where("isActive").is(true),
+                "price,asc", "id", SORT_FIELDS, null, 2).getNextCursor();
+
+        assertThrows(IllegalArgumentException.class, () -> KeysetQueries.page(mongoTemplate, Document.class,
+                where("isActive").is(true), "price,desc", "id", SORT_FIELDS, cursor, 2));
+        assertThrows(IllegalArgumentException.class, () -> KeysetQueries.page(mongoTemplate, Document.class,
+                where("isActive").is(true), "price,asc", "id", SORT_FIELDS, "not-a-cursor", 2));
+    }
+
+    @Test
+    void unknownSortFieldAndBadLimitAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> KeysetQueries.page(mongoTemplate, Document.class,
+                null, "stock", "id", SORT_FIELDS, null, 10));
+        assertThrows(IllegalArgumentException.class, () -> KeysetQueries.pageSize(0));
+        assertThrows(IllegalArgumentException.class, () -> KeysetQueries.pageSize(-5));
+        assertEquals(KeysetQueries.MAX_LIMIT, KeysetQueries.pageSize(KeysetQueries.MAX_LIMIT + 1));
+    }
+
+    // Helper methods
+
+    private List<Object> pageThrough(String sort, int limit) {
+        List<Object> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<Document> page = KeysetQueries.page(mongoTemplate, Document.class, where("isActive").is(true),
+                    sort, "id", SORT_FIELDS, cursor, limit);
+            for (Document document : page.getItems()) {
+                ids.add(document.get("_id"));
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null && ids.size() <= rows.size());
+        return ids;
+    }
+
+    /**
+     * Active rows sorted by (field, _id), nulls first ascending and last descending
+     */
+    private List<Object> expected(String field, boolean ascending) {
+        Comparator<Document> order = Comparator.comparing((Document document) -> document.get(field),
+                Comparator.nullsFirst(KeysetQueriesTest::compare));
+        order = order.thenComparing(document -> document.get("_id"), KeysetQueriesTest::compare);
+        List<Object> ids = new ArrayList<>();
+        rows.stream()
+                .filter(document -> Boolean.TRUE.equals(document.get("isActive")))
+                .sorted(ascending ? order : order.reversed())
+                .forEach(document -> ids.add(document.get("_id")));
+        return ids;
+    }
+
+    /**
+     * Filters, sorts and limits the rows as the database would for the query
+     */
+    private List<Document> find(Query query) {
+        Document sort = query.getSortObject();
+        Comparator<Document> order = (a, b) -> 0;
+        for (Map.Entry<String, Object> key : sort.entrySet()) {
+            Comparator<Document> byKey = Comparator.comparing((Document document) -> document.get(key.getKey()),
+                    Comparator.nullsFirst(KeysetQueriesTest::compare));
+            order = order.thenComparing(((Number) key.getValue()).intValue() < 0 ? byKey.reversed() : byKey);
+        }
+        return rows.stream()
+                .filter(document -> matches(document, query.getQueryObject()))
+                .sorted(order)
+                .limit(query.getLimit())
+                .toList();
+    }
+
+    private static boolean matches(Document document, Document criteria) {
+        for (Map.Entry<String, Object> entry : criteria.entrySet()) {
+            String key = entry.getKey();
+            if (key.equals("$and")) {
+                for (Object clause : (List<?>) entry.getValue()) {
+                    if (!matches(document, (Document) clause)) {
+                        return false;
+                    }
+                }
+            } else if (key.equals("$or")) {
+                boolean any = false;
+                for (Object clause : (List<?>) entry.getValue()) {
+                    any |= matches(document, (Document) clause);
+                }
+                if (!any) {
+                    return false;
+                }
+            } else if (!matchesField(document.get(key), entry.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesField(Object value, Object condition) {
+        if (!(condition instanceof Document)) {
+            // Equality; null also matches a missing field
+            return condition == null ? value == null : condition.equals(value);
+        }
+        for (Map.Entry<String, Object> operator : ((Document) condition).entrySet()) {
+            Object operand = operator.getValue();
+            boolean matched = switch (operator.getKey()) {
+                case "$ne" -> operand == null ? value != null : !operand.equals(value);
+                // Comparisons never match null or missing values
+                case "$gt" -> value != null && compare(value, operand) > 0;
+                case "$lt" -> value != null && compare(value, operand) < 0;
+                default -> throw new IllegalArgumentException("Unsupported operator " + operator.getKey());
+            };
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Object a, Object b) {
+        return ((Comparable) a).compareTo(b);
+    }
+}
@@ -0,0 +1,208 @@
+package com.viha.freshmart.service.impl;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.RenameCollectionOptions;
+import com.viha.freshmart.dao.entity.Order;
+import com.viha.freshmart.dao.entity.OrderStats;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Rebuilds against an in-memory orders collection while orders change
+ * between the rebuild's batches: every change must be counted exactly once
+ */
+class OrderStatsServiceImplTest {
+
+    private static final LocalDateTime ORDER_DATE = LocalDateTime.of(2026, 10, 1, 12, 0);
+
+    private final TreeMap<String, Order> orders = new TreeMap<>();
+    private Map<String, OrderStats> buckets = new TreeMap<>();
+    private final Map<String, OrderStats> staging = new TreeMap<>();
+    private final AtomicInteger batches = new AtomicInteger();
+    private Runnable beforeSecondBatch = () -> { };
+    private OrderStatsServiceImpl orderStatsService;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 2500; i++) {
+            orders.put(id(i), order(i, "PENDING"));
+        }
+
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.find(any(Query.class), eq(Order.class))).thenAnswer(call -> {
+            if (batches.incrementAndGet() == 2) {
+                beforeSecondBatch.run();
+            }
+            return batch(call.getArgument(0));
+        });
+        when(mongoTemplate.getCollectionName(OrderStats.class)).thenReturn("order_stats");
+        when(mongoTemplate.insert(any(Collection.class), eq("order_stats_rebuild"))).thenAnswer(call -> {
+            for (Object bucket : (Collection<?>) call.getArgument(0)) {
+                staging.put(((OrderStats) bucket).getId(), (OrderStats) bucket);
+            }
+            return call.getArgument(0);
+        });
+        when(mongoTemplate.save(any(OrderStats.class), eq("order_stats_rebuild"))).thenAnswer(call -> call.getArgument(0));
+
+        MongoDatabase database = mock(MongoDatabase.class);
+        when(database.getName()).thenReturn("freshmart");
+        when(mongoTemplate.getDb()).thenReturn(database);
+        @SuppressWarnings("unchecked")
+        MongoCollection<Document> stagingCollection = mock(MongoCollection.class);
+        when(mongoTemplate.getCollection(anyString())).thenReturn(stagingCollection);
+        doAnswer(call -> {
+            buckets = new TreeMap<>(staging);
+            staging.clear();
+            return null;
+        }).when(stagingCollection).renameCollection(any(MongoNamespace.class), any(RenameCollectionOptions.class));
+
+        BulkOperations bulkOps = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(OrderStats.class))).thenReturn(bulkOps);
+        when(bulkOps.upsert(any(Query.class), any(UpdateDefinition.class))).thenAnswer(call -> {
+            increment(call.getArgument(0), call.getArgument(1));
+            return bulkOps;
+        });
+        when(bulkOps.upsert(any(Query.class), any(Update.class))).thenAnswer(call -> {
+            increment(call.getArgument(0), call.getArgument(1));
+            return bulkOps;
+        });
+
+        orderStatsService = new OrderStatsServiceImpl();
+        ReflectionTestUtils.setField(orderStatsService, "mongoTemplate", mongoTemplate);
+    }
+
+    @Test
+    void changesDuringRebuildAreCountedOnce() {
+        // Between the first and second batch: two orders the scan has read and
+        // two it has not reach yet change or go away, and a new order arrives
+        beforeSecondBatch = () -> {
+            changeStatus(10, "CONFIRMED");
+            changeStatus(2000, "CONFIRMED");
+            delete(20);
+            delete(2100);
+            create(2600);
+        };
+
+        orderStatsService.rebuildStats();
+        Map<String, String> afterRace = counts(buckets);
+
+        beforeSecondBatch = () -> { };
+        batches.set(0);
+        orderStatsService.rebuildStats();
+
+        assertEquals(counts(buckets), afterRace);
+        assertEquals(2499L, buckets.get("total").getOrderCount());
+        assertEquals(2L, buckets.get("status:CONFIRMED").getOrderCount());
+    }
+
+    // Helper methods
+
+    private void changeStatus(int i, String status) {
+        orderStatsService.recording(() -> {
+            Order order = orders.get(id(i));
+            String previousStatus = order.getOrderStatus();
+            order.setOrderStatus(status);
+            orderStatsService.recordStatusChange(order, previousStatus);
+            return null;
+        });
+    }
+
+    private void delete(int i) {
+        orderStatsService.recording(() -> {
+            orderStatsService.recordOrderDeleted(orders.remove(id(i)));
+            return null;
+        });
+    }
+
+    private void create(int i) {
+        orderStatsService.recording(() -> {
+            orders.put(id(i), order(i, "PENDING"));
+            orderStatsService.recordOrderCreated(orders.get(id(i)));
+            return null;
+        });
+    }
+
+    /**
+     * Orders after the query's {id: {$gt}}, in id order, up to its limit
+     */
+    private List<Order> batch(Query query) {
+        Object after = query.getQueryObject().get("id");
+        Map<String, Order> rest = after == null ? orders : orders.tailMap((String) ((Document) after).get("$gt"), false);
+        return rest.values().stream().limit(query.getLimit()).map(this::copy).toList();
+    }
+
+    private void increment(Query query, UpdateDefinition update) {
+        String id = (String) query.getQueryObject().get("id");
+        Document inc = (Document) update.getUpdateObject().get("$inc");
+        OrderStats bucket = buckets.computeIfAbsent(id, key -> new OrderStats(key, null));
+        bucket.setOrderCount(bucket.getOrderCount() + ((Number) inc.get("orderCount")).longValue());
+        if (inc.get("revenue") != null) {
+            bucket.setRevenue(bucket.getRevenue().add(((Decimal128) inc.get("revenue")).bigDecimalValue()));
+        }
+    }
+
+    /**
+     * Bucket id to "count / revenue", leaving out empty buckets
+     */
+    private Map<String, String> counts(Map<String, OrderStats> source) {
+        Map<String, String> counts = new TreeMap<>();
+        for (OrderStats bucket : source.values()) {
+            if (bucket.getOrderCount() != 0) {
+                counts.put(bucket.getId(), bucket.getOrderCount() + " / " + bucket.getRevenue().stripTrailingZeros().toPlainString());
+            }
+        }
+        return counts;
+    }
+
+    private static String id(int i) {
+        return String.format("%024x", i);
+    }
+
+    private static Order order(int i, String status) {
+        Order order = new Order();
+        order.setId(id(i));
+        order.setOrderStatus(status);
+        order.setPaymentStatus("PENDING");
+        order.setPaymentMethod("UPI");
+        order.setOrderDate(ORDER_DATE);
+        order.setTotalAmount(BigDecimal.valueOf(100 + i % 7));
+        return order;
+    }
+
+    private Order copy(Order order) {
+        Order copy = new Order();
+        copy.setId(order.getId());
+        copy.setOrderStatus(order.getOrderStatus());
+        copy.setPaymentStatus(order.getPaymentStatus());
+        copy.setPaymentMethod(order.getPaymentMethod());
+        copy.setOrderDate(order.getOrderDate());
+        copy.setTotalAmount(order.getTotalAmount());
+        return copy;
+    }
+}